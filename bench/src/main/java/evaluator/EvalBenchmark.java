@@ -0,0 +1,42 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Funl.eval on functions of the predefined library,
+ * including the higher-order for in factorial2 and sum_of_squares,
+ * with and without loop fusion.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+    @Param({ "factorial(20)", "fibonacci(15)", "sqrt(2)", "sum_of_squares(1, 100)", "factorial2(20)" })
+    public String expression;
+
+    @Param({ "true", "false" })
+    public boolean fusion;
+
+    private Funl funl;
+    private Tree<Token> expr;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave());
+        funl.setLoopFusion(fusion);
+        funl.reset();
+        expr = funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> eval() {
+        return funl.eval(expr);
+    }
+}
@@ -0,0 +1,57 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of calls to functions of the predefined library and of a
+ * generated program of 10000 functions, evaluated on the trees by
+ * Funl.call, on the arrays of a FlatProgram, and by the Bytecode VM.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatBenchmark {
+    /* function name and arguments, separated by spaces */
+    @Param({ "factorial 20", "fibonacci 15", "sum_of_squares 1 100", "f9999 1 3" })
+    public String call;
+
+    @Param({ "tree", "flat", "bytecode" })
+    public String form;
+
+    private Funl funl;
+    private FlatProgram program;
+    private Bytecode bytecode;
+    private Tree<Token> func;
+    private String funcName;
+    private double[] args;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave() + " " + Programs.synthetic(10000));
+        funl.reset();
+        program = funl.compact();
+        bytecode = Bytecode.compile(program);
+        String[] parts = call.split(" ");
+        funcName = parts[0];
+        func = funl.function(funcName);
+        args = new double[parts.length - 1];
+        for (int i = 1; i < parts.length; ++i)
+            args[i - 1] = Double.parseDouble(parts[i]);
+    }
+
+    @Benchmark
+    public Tree<Token> call() {
+        switch (form) {
+            case "flat": return program.call(funcName, args);
+            case "bytecode": return bytecode.call(funcName, args);
+            default: return funl.call(func, args);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package evaluator;
+
+import java.util.HashMap;
+
+/**
+ * Measures the heap retained by a generated program of function
+ * definitions, as parsed trees, as a FlatProgram and as Bytecode
+ * compiled from it, by the used heap
+ * after garbage collection before and after building each form.
+ * Usage: java -cp target/benchmarks.jar evaluator.FlatFootprint [defs]
+ * @version Oct 19, 2026
+ */
+public class FlatFootprint {
+    public static void main(String[] args) {
+        int defs = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String source = Programs.synthetic(defs);
+
+        long before = usedHeap();
+        Parser parser = new Parser(source);
+        parser.program();
+        HashMap<String, Tree<Token>> trees = parser.functions;
+        long treeBytes = usedHeap() - before;
+
+        before = usedHeap();
+        FlatProgram program = FlatProgram.of(trees);
+        long flatBytes = usedHeap() - before;
+
+        before = usedHeap();
+        Bytecode bytecode = Bytecode.compile(program);
+        long bytecodeBytes = usedHeap() - before;
+
+        System.out.println(defs + " defs, " + program.getNodeCount() + " nodes");
+        System.out.println("tree: " + treeBytes + " bytes (" + treeBytes / program.getNodeCount() + " per node)");
+        System.out.println("flat: " + flatBytes + " bytes (" + flatBytes / program.getNodeCount() + " per node)");
+        System.out.println("bytecode: " + bytecodeBytes + " bytes (" + bytecode.getCodeLength() + " code ints)");
+        // keep all forms reachable until measured
+        if (trees.size() + program.size() + bytecode.size() < 0)
+            System.out.println();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; ++i) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
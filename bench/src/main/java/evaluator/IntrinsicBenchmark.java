@@ -0,0 +1,42 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Funl.eval on functions of the predefined library
+ * evaluated in Funl, and with the standard math intrinsics bound.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntrinsicBenchmark {
+    @Param({ "sqrt(2)", "nearly_equal(2, 2.000001)", "power(2, 10)" })
+    public String expression;
+
+    @Param({ "true", "false" })
+    public boolean intrinsics;
+
+    private Funl funl;
+    private Tree<Token> expr;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        if (intrinsics)
+            funl.bindIntrinsics(Intrinsics.math());
+        funl.define(Programs.funlByDave());
+        funl.reset();
+        expr = funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> eval() {
+        return funl.eval(expr);
+    }
+}
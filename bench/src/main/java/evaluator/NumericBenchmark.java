@@ -0,0 +1,44 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Funl.eval on functions of the predefined library
+ * computing with doubles, exact integers, and 34-digit decimals.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericBenchmark {
+    @Param({ "factorial(20)", "fibonacci(15)", "sqrt(2)", "sum_of_squares(1, 100)" })
+    public String expression;
+
+    @Param({ "double", "exact", "decimal" })
+    public String mode;
+
+    private Funl funl;
+    private Tree<Token> expr;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave());
+        if (mode.equals("exact"))
+            funl.setNumericMode(NumericMode.EXACT);
+        else if (mode.equals("decimal"))
+            funl.setNumericMode(NumericMode.decimal(java.math.MathContext.DECIMAL128));
+        funl.reset();
+        expr = funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> eval() {
+        return funl.eval(expr);
+    }
+}
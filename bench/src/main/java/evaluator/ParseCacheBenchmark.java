@@ -0,0 +1,61 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of parsing, and of parsing and evaluating, expressions
+ * that repeat with few or many distinct literals: without a parse
+ * cache, with a cache of 256 trees keyed by exact text, and with one
+ * sharing templates between literals.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseCacheBenchmark {
+    private static final int LITERALS = 1000;
+
+    @Param({ "sqrt(%d)", "sqrt(%1$d) / (1 + sqrt(%1$d))" })
+    public String template;
+
+    @Param({ "20", "1000" })
+    public int distinct;
+
+    @Param({ "none", "exact", "parameterized" })
+    public String cache;
+
+    private Funl funl;
+    private String[] expressions;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave());
+        if (!cache.equals("none"))
+            funl.setParseCache(new ParseCache(256, cache.equals("parameterized")));
+        funl.reset();
+        expressions = new String[LITERALS];
+        for (int i = 0; i < LITERALS; ++i)
+            expressions[i] = String.format(template, i % distinct + 1);
+    }
+
+    @Benchmark
+    public Tree<Token> parse() {
+        String expression = expressions[next];
+        next = (next + 1) % LITERALS;
+        return funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> parseAndEval() {
+        String expression = expressions[next];
+        next = (next + 1) % LITERALS;
+        return funl.eval(funl.parseInput(expression));
+    }
+}
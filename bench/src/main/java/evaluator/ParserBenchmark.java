@@ -0,0 +1,41 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Parser.program on the predefined functions and
+ * on a synthetic program of 10k defs.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    private String funlByDave;
+    private String synthetic;
+
+    @Setup
+    public void setUp() {
+        funlByDave = Programs.funlByDave();
+        synthetic = Programs.synthetic(10000);
+    }
+
+    @Benchmark
+    public Object programFunlByDave() {
+        Parser parser = new Parser(funlByDave);
+        parser.program();
+        return parser.functions;
+    }
+
+    @Benchmark
+    public Object programSynthetic10k() {
+        Parser parser = new Parser(synthetic);
+        parser.program();
+        return parser.functions;
+    }
+}
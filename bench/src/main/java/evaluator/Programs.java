@@ -0,0 +1,52 @@
+package evaluator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Funl sources shared by the benchmarks.
+ * @version Oct 19, 2026
+ */
+final class Programs {
+    private Programs() { }
+
+    /**
+     * Reads the predefined functions, joined into one line as the
+     * REPL does when loading a file.
+     * @return Source of funlByDave.txt.
+     */
+    static String funlByDave() {
+        try (InputStream in = Programs.class.getResourceAsStream("funlByDave.txt")) {
+            if (in == null)
+                throw new IllegalStateException("funlByDave.txt not on the class path");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                out.write(buffer, 0, n);
+            return out.toString("UTF-8").replace("\r\n", " ").replace("\n", " ");
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read funlByDave.txt", e);
+        }
+    }
+
+    /**
+     * Generates a program of distinct functions calling each other,
+     * each with parameters, vals, arithmetic and an if expression.
+     * @param defs Number of function definitions.
+     * @return Source of the program.
+     */
+    static String synthetic(int defs) {
+        StringBuilder sb = new StringBuilder(defs * 96);
+        for (int i = 0; i < defs; ++i) {
+            sb.append("def f").append(i).append(" x y = ")
+              .append("val t = x * ").append(i % 17 + 1).append(" + y, ")
+              .append("if t - 100 then t / 2 else ")
+              .append(i == 0 ? "t" : "f" + (i - 1) + "(t, y - 1)")
+              .append(" end end ");
+        }
+        return sb.toString();
+    }
+}
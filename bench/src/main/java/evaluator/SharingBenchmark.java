@@ -0,0 +1,46 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of functions repeating pure subexpressions, evaluated as
+ * written and with common subexpressions eliminated.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharingBenchmark {
+    private static final String FUNCTIONS =
+            "def close x y = if nearly_equal(x, y) then 0 else abs(x - y) / max(abs(x - y), 1) end end " +
+            "def norm x y = sqrt(square(x) + square(y)) / (sqrt(square(x) + square(y)) + 1) end " +
+            "def max x y = if gt(x, y) then x else y end end";
+
+    @Param({ "close(3, 7.5)", "norm(3, 4)" })
+    public String expression;
+
+    @Param({ "false", "true" })
+    public boolean sharing;
+
+    private Funl funl;
+    private Tree<Token> expr;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave() + " " + FUNCTIONS);
+        funl.setCommonSubexpressionElimination(sharing);
+        funl.reset();
+        expr = funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> eval() {
+        return funl.eval(expr);
+    }
+}
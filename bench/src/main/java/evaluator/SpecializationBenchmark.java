@@ -0,0 +1,46 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of calls passing constants to functions of the predefined
+ * library, generic and specialized on the constants.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecializationBenchmark {
+    private static final String FUNCTIONS =
+            "def poly x = power(x, 6) + power(x, 3) + x end " +
+            "def root x = sqrt_helper(x, 1) end " +
+            "def twice f x = f(f(x)) end def quad x = twice(square, x) + twice(abs, x) end";
+
+    @Param({ "poly", "root", "quad" })
+    public String function;
+
+    @Param({ "0", "256" })
+    public int budget;
+
+    private Funl funl;
+    private Tree<Token> func;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave() + " " + FUNCTIONS);
+        funl.setSpecializationBudget(budget);
+        funl.reset();
+        func = funl.function(function);
+    }
+
+    @Benchmark
+    public Tree<Token> call() {
+        return funl.call(func, 1.5);
+    }
+}
@@ -0,0 +1,41 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Funl.eval on functions of the predefined library,
+ * interpreted only, and with hot functions compiled to their tier.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TierBenchmark {
+    @Param({ "factorial(20)", "fibonacci(15)", "sum_of_squares(1, 100)" })
+    public String expression;
+
+    @Param({ "0", "100" })
+    public int threshold;
+
+    private Funl funl;
+    private Tree<Token> expr;
+
+    @Setup
+    public void setUp() {
+        funl = new Funl();
+        funl.define(Programs.funlByDave());
+        funl.setTierThreshold(threshold);
+        funl.reset();
+        expr = funl.parseInput(expression);
+    }
+
+    @Benchmark
+    public Tree<Token> eval() {
+        return funl.eval(expr);
+    }
+}
@@ -0,0 +1,48 @@
+package evaluator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of Tokenizer.next over large sources.
+ * @version Oct 19, 2026
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+    @Param({ "funlByDave", "synthetic" })
+    public String source;
+
+    private String input;
+
+    @Setup
+    public void setUp() {
+        // about 10k defs either way
+        if (source.equals("funlByDave")) {
+            String program = Programs.funlByDave();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 400; ++i)
+                sb.append(program).append(' ');
+            input = sb.toString();
+        }
+        else input = Programs.synthetic(10000);
+    }
+
+    /**
+     * Drains all tokens of the source.
+     * @return Number of tokens, to keep the work alive.
+     */
+    @Benchmark
+    public int next() {
+        Tokenizer tokenizer = new Tokenizer(input);
+        int count = 0;
+        while (tokenizer.next().getType() != TokenType.EOI)
+            ++count;
+        return count;
+    }
+}
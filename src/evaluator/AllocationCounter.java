@@ -0,0 +1,158 @@
+package evaluator;
+
+/**
+ * Class for counting allocations made by the Funl evaluator.
+ * Counts are kept for the latest evaluation (reset whenever a
+ * new evaluation starts) as well as for all evaluations so far,
+ * and an optional cap aborts any evaluation that exceeds it.
+ * @version Oct 19, 2026
+ */
+public class AllocationCounter {
+    /* counts for the latest evaluation */
+    private long frames;
+    private long values;
+    private long nodes;
+    /* counts for all evaluations */
+    private long totalFrames;
+    private long totalValues;
+    private long totalNodes;
+    private long evaluations;
+    private long limit = 0; // 0 for unlimited
+
+    /**
+     * Starts counting for a new evaluation.
+     */
+    void reset() {
+        frames = values = nodes = 0;
+        ++evaluations;
+    }
+
+    /**
+     * Counts a scope frame (HashMap) allocation.
+     */
+    void frame() {
+        ++frames;
+        ++totalFrames;
+        check();
+    }
+
+    /**
+     * Counts a value (Token) allocation.
+     */
+    void value() {
+        ++values;
+        ++totalValues;
+        check();
+    }
+
+    /**
+     * Counts a tree node allocation.
+     */
+    void node() {
+        ++nodes;
+        ++totalNodes;
+        check();
+    }
+
+    /**
+     * Throws a RuntimeException if the latest evaluation
+     * exceeded the allocation cap.
+     */
+    private void check() {
+        if (limit > 0 && frames + values + nodes > limit)
+            throw new RuntimeException(
+                    "Runtime Exception: exceeded allocation budget of " + limit);
+    }
+
+    /**
+     * Sets the maximum number of allocations per evaluation.
+     * @param limit Allocation cap; 0 for unlimited.
+     */
+    public void setLimit(long limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Allocation limit must not be negative: " + limit);
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the maximum number of allocations per evaluation.
+     * @return Allocation cap; 0 for unlimited.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the number of frames allocated by the latest evaluation.
+     * @return Number of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gets the number of values allocated by the latest evaluation.
+     * @return Number of values.
+     */
+    public long getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the number of nodes allocated by the latest evaluation.
+     * @return Number of nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of all allocations made by the latest evaluation.
+     * @return Number of allocations.
+     */
+    public long getTotal() {
+        return frames + values + nodes;
+    }
+
+    /**
+     * Gets the number of frames allocated by all evaluations.
+     * @return Number of frames.
+     */
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    /**
+     * Gets the number of values allocated by all evaluations.
+     * @return Number of values.
+     */
+    public long getTotalValues() {
+        return totalValues;
+    }
+
+    /**
+     * Gets the number of nodes allocated by all evaluations.
+     * @return Number of nodes.
+     */
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    /**
+     * Gets the number of evaluations counted so far.
+     * @return Number of evaluations.
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns a string of the allocation counts of the latest evaluation.
+     * @return A representation of this counter.
+     */
+    @Override
+    public String toString() {
+        return "frames=" + frames + ", values=" + values + ", nodes=" + nodes +
+                (limit > 0 ? " (limit " + limit + ")" : "");
+    }
+}
@@ -0,0 +1,87 @@
+package evaluator;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Input provider fed asynchronously by another thread. A read
+ * expression that finds no number available parks its thread
+ * until one is offered, the provider is closed, or the timeout
+ * elapses; no thread is held spinning on a console. Combined
+ * with Funl.evalAsync on an executor of lightweight threads, an
+ * evaluation waiting on input costs no platform thread.
+ * @version Oct 19, 2026
+ */
+public class AsyncInputProvider implements InputProvider {
+    /* marks the end of input in the queue */
+    private static final Double END = Double.valueOf(Double.NaN);
+    private final LinkedBlockingQueue<Double> queue = new LinkedBlockingQueue<Double>();
+    private final long timeoutMillis;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for AsyncInputProvider that waits for input
+     * without time limit.
+     */
+    public AsyncInputProvider() {
+        this(0);
+    }
+
+    /**
+     * Constructor for AsyncInputProvider.
+     * @param timeoutMillis Maximum time a read expression waits
+     * for input, in milliseconds; 0 for no limit.
+     */
+    public AsyncInputProvider(long timeoutMillis) {
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("Timeout must not be negative: " + timeoutMillis);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Supplies a number to a pending or future read expression.
+     * @param value Number to be supplied.
+     * @throws IllegalStateException If this provider is closed.
+     */
+    public void offer(double value) {
+        if (closed)
+            throw new IllegalStateException("Input provider is closed");
+        queue.add(value);
+    }
+
+    /**
+     * Marks the end of input; read expressions waiting for
+     * more input fail once the supplied numbers run out.
+     */
+    public void close() {
+        closed = true;
+        queue.add(END);
+    }
+
+    /**
+     * Returns the next supplied number, parking until one arrives.
+     * @param prompt Prompt string of the read expression.
+     * @return The next number.
+     */
+    @Override
+    public double read(String prompt) {
+        Double value;
+        try {
+            value = timeoutMillis == 0 ? queue.take() :
+                queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Runtime Exception: interrupted while waiting for input.");
+        }
+        if (value == null)
+            throw new RuntimeException(
+                    "Runtime Exception: timed out waiting for input after " + timeoutMillis + " ms.");
+        if (value == END) {
+            queue.add(END); // keep end of input visible to later reads
+            throw new RuntimeException(
+                    "Runtime Exception: no more input for read expressions.");
+        }
+        return value;
+    }
+}
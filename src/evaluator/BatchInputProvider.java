@@ -0,0 +1,49 @@
+package evaluator;
+
+/**
+ * Input provider backed by a pre-supplied array of numbers,
+ * for replaying recorded input without any I/O.
+ * @version Oct 19, 2026
+ */
+public class BatchInputProvider implements InputProvider {
+    private final double[] values;
+    private int next = 0;
+
+    /**
+     * Constructor for BatchInputProvider.
+     * @param values Numbers to be handed out in order.
+     */
+    public BatchInputProvider(double... values) {
+        if (values == null)
+            throw new IllegalArgumentException("Input values must not be null");
+        this.values = values;
+    }
+
+    /**
+     * Returns the next pre-supplied number; the prompt is ignored.
+     * @param prompt Prompt string of the read expression.
+     * @return The next number.
+     */
+    @Override
+    public double read(String prompt) {
+        if (next >= values.length)
+            throw new RuntimeException(
+                    "Runtime Exception: no more input for read expressions.");
+        return values[next++];
+    }
+
+    /**
+     * Gets the number of values not read yet.
+     * @return Number of remaining values.
+     */
+    public int remaining() {
+        return values.length - next;
+    }
+
+    /**
+     * Rewinds to the first value, so that the batch can be replayed.
+     */
+    public void reset() {
+        next = 0;
+    }
+}
@@ -0,0 +1,483 @@
+package evaluator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Class for a Funl program compiled to register-based bytecode, and
+ * the virtual machine running it. All functions share one int[] code
+ * stream, one pool of number constants and one pool of strings (names,
+ * prompts and error messages). An instruction is an opcode followed by
+ * its operands; operands name registers of the frame of the function,
+ * whose first registers are its parameters, then its vals, then the
+ * temporaries of its expressions, so that reading a parameter needs no
+ * instruction of its own. The arguments of a call are computed into
+ * consecutive temporaries, which become the first registers of the
+ * frame of the callee.
+ * <p>
+ * Besides the plain instructions there are superinstructions for the
+ * most common pairs: an arithmetic operation with a constant operand,
+ * as in n - 1, and a comparison with the branch of the if it decides.
+ * A call to a bound intrinsic runs the Java function in place.
+ * <p>
+ * The VM keeps its frames in arrays rather than on the Java stack, and
+ * a call in tail position reuses the frame of its caller. Values, the
+ * results and runtime errors are those of FlatProgram; a function
+ * returned by a call is given by its name. A program is immutable, and
+ * can be written to a stream and read back, binding its intrinsics by
+ * name.
+ * @version Oct 19, 2026
+ */
+public final class Bytecode {
+    /* opcodes, with their operands; d, a, b and s are registers */
+    static final int CONST = 0;          // d k: d = constants[k]
+    static final int FUNC = 1;           // d f: d = function f
+    static final int MOVE = 2;           // d a: d = a
+    static final int LOAD = 3;           // d s sym: d = s, a val named sym that must be assigned
+    static final int ADD = 4;            // d a b: d = a + b
+    static final int SUB = 5;
+    static final int MUL = 6;
+    static final int DIV = 7;
+    static final int ADDK = 8;           // d a k: d = a + constants[k]
+    static final int SUBK = 9;
+    static final int MULK = 10;
+    static final int DIVK = 11;
+    static final int EQ = 12;            // d a b: d = a == b ? 1 : 0
+    static final int NE = 13;
+    static final int LT = 14;
+    static final int GT = 15;
+    static final int LE = 16;
+    static final int GE = 17;
+    static final int NOT = 18;           // d a: d = a > 0 ? 0 : 1
+    static final int CHECK_LOGICAL = 19; // a: a must be a number
+    static final int JUMP = 20;          // t: go to t
+    static final int JUMP_POS = 21;      // a t: go to t if a > 0
+    static final int JUMP_NONPOS = 22;   // a t: go to t unless a > 0
+    static final int JUMP_UNLESS = 23;   // op a b t: go to t unless a op b
+    static final int VAL_CHECK = 24;     // s sym: val s named sym must not be assigned yet
+    static final int RESOLVE = 25;       // d s f sym n: d = function in s, or f if s is unassigned
+    static final int CALL = 26;          // d f a: d = f(a, a + 1, ...)
+    static final int CALL_REG = 27;      // d r a: d = function in r (a, a + 1, ...)
+    static final int TAIL_CALL = 28;     // f a: return f(a, a + 1, ...)
+    static final int TAIL_CALL_REG = 29; // r a: return function in r (a, a + 1, ...)
+    static final int NATIVE = 30;        // d n a b: d = natives[n](a, b); b is -1 if unary
+    static final int READ = 31;          // d sym: d = number read with prompt sym
+    static final int RETURN = 32;        // a: return a
+    static final int ERROR = 33;         // sym: fail with message sym
+
+    /* names and lengths of the instructions */
+    static final String[] OPCODES = { "CONST", "FUNC", "MOVE", "LOAD", "ADD", "SUB", "MUL", "DIV",
+        "ADDK", "SUBK", "MULK", "DIVK", "EQ", "NE", "LT", "GT", "LE", "GE", "NOT", "CHECK_LOGICAL",
+        "JUMP", "JUMP_POS", "JUMP_NONPOS", "JUMP_UNLESS", "VAL_CHECK", "RESOLVE", "CALL", "CALL_REG",
+        "TAIL_CALL", "TAIL_CALL_REG", "NATIVE", "READ", "RETURN", "ERROR" };
+    static final int[] LENGTHS = { 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 4, 3, 2,
+        2, 3, 3, 5, 3, 6, 4, 4, 3, 3, 5, 3, 2, 2 };
+
+    private static final int MAGIC = 0x46554e42; // "FUNB"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FRAME = 5;          // ints saved per caller
+
+    final int[] code;
+    final double[] constants;
+    final String[] symbols;
+    final Intrinsic[] natives;
+    /* functions */
+    final String[] names;
+    final int[] arities;
+    final int[] slots;      // parameters and vals
+    final int[] registers;  // slots and temporaries
+    final int[] entries;    // offset of the first instruction
+    private final HashMap<String, Integer> index = new HashMap<String, Integer>();
+
+    Bytecode(int[] code, double[] constants, String[] symbols, Intrinsic[] natives,
+            String[] names, int[] arities, int[] slots, int[] registers, int[] entries) {
+        this.code = code;
+        this.constants = constants;
+        this.symbols = symbols;
+        this.natives = natives;
+        this.names = names;
+        this.arities = arities;
+        this.slots = slots;
+        this.registers = registers;
+        this.entries = entries;
+        for (int i = 0; i < names.length; ++i)
+            index.put(names[i], i);
+    }
+
+    /**
+     * Compiles a compact program.
+     * @param program The program.
+     * @return The compiled program.
+     */
+    public static Bytecode compile(FlatProgram program) {
+        return new BytecodeCompiler(program).compile();
+    }
+
+    /**
+     * Gets the number of functions.
+     * @return Number of functions.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the length of the code of all functions.
+     * @return Number of ints of the code stream.
+     */
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /**
+     * Calls a function with numbers as arguments. Read expressions
+     * fail for lack of input.
+     * @param funcName Name of the function.
+     * @param args Arguments of the call.
+     * @return A number, or the name of a function.
+     */
+    public Tree<Token> call(String funcName, double... args) {
+        return call(new BatchInputProvider(), funcName, args);
+    }
+
+    /**
+     * Calls a function with numbers as arguments.
+     * @param input Provider of the numbers of read expressions.
+     * @param funcName Name of the function.
+     * @param args Arguments of the call.
+     * @return A number, or the name of a function.
+     */
+    public Tree<Token> call(InputProvider input, String funcName, double... args) {
+        if (input == null)
+            throw new IllegalArgumentException("Input provider must not be null");
+        int fn = functionIndex(funcName);
+        if (args.length != arities[fn])
+            throw FlatProgram.argNumMismatch(funcName, arities[fn], args.length);
+        double result = run(input, fn, args);
+        if (FlatProgram.isFunction(result))
+            return new Tree<Token>(new Token(TokenType.NAME, names[FlatProgram.functionOf(result)]));
+        return new Tree<Token>(new Numeral(result));
+    }
+
+    /**
+     * Gets the index of a function.
+     * @param funcName Name of the function.
+     * @return The index.
+     * @throws RuntimeException If no such function is defined.
+     */
+    int functionIndex(String funcName) {
+        Integer fn = index.get(funcName);
+        if (fn == null)
+            throw new RuntimeException(
+                    "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
+        return fn;
+    }
+
+    /**
+     * Runs a function to its return.
+     * @param input Provider of the numbers of read expressions.
+     * @param fn Function.
+     * @param args Arguments.
+     * @return The value of the function; a function is a NaN carrying
+     * its index, as FlatProgram.functionOf() reads it.
+     */
+    double run(InputProvider input, int fn, double[] args) {
+        final int[] code = this.code;
+        double[] r = new double[Math.max(64, 4 * registers[fn])];
+        int[] frames = new int[FRAME * 16]; // function, return pc, base, result register, tail calls
+        int depth = 1;
+        int base = 0;
+        int pc = entries[fn];
+        int tails = 0;
+        for (int i = 0; i < args.length; ++i)
+            r[i] = FlatProgram.number(args[i]);
+        Arrays.fill(r, args.length, slots[fn], FlatProgram.UNSET);
+        for (;;) {
+            switch (code[pc]) {
+                case CONST:
+                    r[base + code[pc + 1]] = constants[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case FUNC:
+                    r[base + code[pc + 1]] = Double.longBitsToDouble(FlatProgram.FUNCTION_TAG | code[pc + 2]);
+                    pc += 3;
+                    break;
+                case MOVE:
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]];
+                    pc += 3;
+                    break;
+                case LOAD: {
+                    double v = r[base + code[pc + 2]];
+                    if (Double.doubleToRawLongBits(v) == FlatProgram.UNSET_BITS)
+                        throw error("cannot resolve '" + symbols[code[pc + 3]] + "' to a variable or function name.");
+                    r[base + code[pc + 1]] = v;
+                    pc += 4;
+                    break;
+                }
+                case ADD: case SUB: case MUL: case DIV:
+                case EQ: case NE: case LT: case GT: case LE: case GE: {
+                    double x = r[base + code[pc + 2]];
+                    double y = r[base + code[pc + 3]];
+                    if (FlatProgram.isFunction(x) || FlatProgram.isFunction(y))
+                        throw error("arithmetic operand evaluates to a function.");
+                    r[base + code[pc + 1]] = apply(code[pc], x, y);
+                    pc += 4;
+                    break;
+                }
+                case ADDK: case SUBK: case MULK: case DIVK: {
+                    double x = r[base + code[pc + 2]];
+                    if (FlatProgram.isFunction(x))
+                        throw error("arithmetic operand evaluates to a function.");
+                    r[base + code[pc + 1]] = apply(code[pc] - ADDK + ADD, x, constants[code[pc + 3]]);
+                    pc += 4;
+                    break;
+                }
+                case NOT: {
+                    double x = r[base + code[pc + 2]];
+                    if (FlatProgram.isFunction(x))
+                        throw error("logical operand evaluates to a function.");
+                    r[base + code[pc + 1]] = x > 0 ? 0 : 1;
+                    pc += 3;
+                    break;
+                }
+                case CHECK_LOGICAL:
+                    if (FlatProgram.isFunction(r[base + code[pc + 1]]))
+                        throw error("logical operand evaluates to a function.");
+                    pc += 2;
+                    break;
+                case JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case JUMP_POS: case JUMP_NONPOS: {
+                    double c = r[base + code[pc + 1]];
+                    if (FlatProgram.isFunction(c))
+                        throw error("condition part of an if expression evaluates to a function.");
+                    pc = (c > 0) == (code[pc] == JUMP_POS) ? code[pc + 2] : pc + 3;
+                    break;
+                }
+                case JUMP_UNLESS: {
+                    double x = r[base + code[pc + 2]];
+                    double y = r[base + code[pc + 3]];
+                    if (FlatProgram.isFunction(x) || FlatProgram.isFunction(y))
+                        throw error("arithmetic operand evaluates to a function.");
+                    pc = apply(code[pc + 1], x, y) > 0 ? pc + 5 : code[pc + 4];
+                    break;
+                }
+                case VAL_CHECK:
+                    if (Double.doubleToRawLongBits(r[base + code[pc + 1]]) != FlatProgram.UNSET_BITS)
+                        throw error("variable with name '" + symbols[code[pc + 2]] + "' already exists");
+                    pc += 3;
+                    break;
+                case RESOLVE: {
+                    double f = r[base + code[pc + 2]];
+                    String funcName = symbols[code[pc + 4]];
+                    int target;
+                    if (Double.doubleToRawLongBits(f) == FlatProgram.UNSET_BITS) {
+                        // an unassigned val leaves the name to the functions
+                        target = code[pc + 3];
+                        if (target < 0)
+                            throw error("cannot resolve '" + funcName + "' to a function name.");
+                    }
+                    else if (!FlatProgram.isFunction(f))
+                        throw error("'" + funcName + "' evaluates to a number, not a function.");
+                    else
+                        target = FlatProgram.functionOf(f);
+                    if (arities[target] != code[pc + 5])
+                        throw FlatProgram.argNumMismatch(funcName, arities[target], code[pc + 5]);
+                    r[base + code[pc + 1]] = Double.longBitsToDouble(FlatProgram.FUNCTION_TAG | target);
+                    pc += 6;
+                    break;
+                }
+                case CALL: case CALL_REG: {
+                    int f = code[pc] == CALL ? code[pc + 2] : FlatProgram.functionOf(r[base + code[pc + 2]]);
+                    if (++depth >= FlatProgram.MAX_SCOPE_DEPTH)
+                        throw error("exceeded maximum nested scope depth of " + FlatProgram.MAX_SCOPE_DEPTH);
+                    int sp = FRAME * (depth - 2);
+                    if (sp + FRAME > frames.length)
+                        frames = Arrays.copyOf(frames, 2 * frames.length);
+                    frames[sp] = fn;
+                    frames[sp + 1] = pc + 4;
+                    frames[sp + 2] = base;
+                    frames[sp + 3] = code[pc + 1];
+                    frames[sp + 4] = tails;
+                    base += code[pc + 3];
+                    if (base + registers[f] > r.length)
+                        r = Arrays.copyOf(r, Math.max(2 * r.length, base + registers[f]));
+                    Arrays.fill(r, base + arities[f], base + slots[f], FlatProgram.UNSET);
+                    fn = f;
+                    pc = entries[f];
+                    tails = 0;
+                    break;
+                }
+                case TAIL_CALL: case TAIL_CALL_REG: {
+                    int f = code[pc] == TAIL_CALL ? code[pc + 1] : FlatProgram.functionOf(r[base + code[pc + 1]]);
+                    if (++tails > FlatProgram.MAX_TAIL_CALLS)
+                        throw error("exceeded maximum fold length of " + FlatProgram.MAX_TAIL_CALLS);
+                    System.arraycopy(r, base + code[pc + 2], r, base, arities[f]);
+                    if (base + registers[f] > r.length)
+                        r = Arrays.copyOf(r, Math.max(2 * r.length, base + registers[f]));
+                    Arrays.fill(r, base + arities[f], base + slots[f], FlatProgram.UNSET);
+                    fn = f;
+                    pc = entries[f];
+                    break;
+                }
+                case NATIVE: {
+                    Intrinsic f = natives[code[pc + 2]];
+                    double x = r[base + code[pc + 3]];
+                    double y = code[pc + 4] < 0 ? 0 : r[base + code[pc + 4]];
+                    if (FlatProgram.isFunction(x) || FlatProgram.isFunction(y))
+                        throw error("argument of '" + f.name + "' evaluates to a function.");
+                    r[base + code[pc + 1]] = FlatProgram.number(f.apply(x, y));
+                    pc += 5;
+                    break;
+                }
+                case READ:
+                    r[base + code[pc + 1]] = FlatProgram.number(input.read(symbols[code[pc + 2]]));
+                    pc += 3;
+                    break;
+                case RETURN: {
+                    double v = r[base + code[pc + 1]];
+                    if (--depth == 0)
+                        return v;
+                    int sp = FRAME * (depth - 1);
+                    fn = frames[sp];
+                    pc = frames[sp + 1];
+                    base = frames[sp + 2];
+                    r[base + frames[sp + 3]] = v;
+                    tails = frames[sp + 4];
+                    break;
+                }
+                default:
+                    throw new RuntimeException("Runtime Exception: " + symbols[code[pc + 1]]);
+            }
+        }
+    }
+
+    /**
+     * Applies an arithmetic or comparison opcode.
+     * @return Result; 1 or 0 for a comparison.
+     */
+    private static double apply(int op, double x, double y) {
+        switch (op) {
+            case ADD: return x + y;
+            case SUB: return x - y;
+            case MUL: return x * y;
+            case DIV: return x / y;
+            case EQ: return x == y ? 1 : 0;
+            case NE: return x != y ? 1 : 0;
+            case LT: return x < y ? 1 : 0;
+            case GT: return x > y ? 1 : 0;
+            case LE: return x <= y ? 1 : 0;
+            default: return x >= y ? 1 : 0;
+        }
+    }
+
+    private static RuntimeException error(String msg) {
+        return new RuntimeException("Runtime Exception: " + msg);
+    }
+
+    /**
+     * Lists the instructions of a function, one per line, as
+     * offset: OPCODE operands.
+     * @param funcName Name of the function.
+     * @return The listing.
+     */
+    public String disassemble(String funcName) {
+        int fn = functionIndex(funcName);
+        int end = code.length;
+        for (int entry : entries)
+            if (entry > entries[fn] && entry < end)
+                end = entry;
+        StringBuilder sb = new StringBuilder();
+        for (int pc = entries[fn]; pc < end; pc += LENGTHS[code[pc]]) {
+            sb.append(pc).append(": ").append(OPCODES[code[pc]]);
+            for (int i = 1; i < LENGTHS[code[pc]]; ++i)
+                sb.append(' ').append(code[pc + i]);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes this program to a stream. Intrinsics are written by name.
+     * @param out Stream to be written to.
+     * @throws IOException If the stream fails.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(code.length);
+        for (int word : code)
+            out.writeInt(word);
+        out.writeInt(constants.length);
+        for (double d : constants)
+            out.writeDouble(d);
+        out.writeInt(symbols.length);
+        for (String s : symbols)
+            out.writeUTF(s);
+        out.writeInt(natives.length);
+        for (Intrinsic f : natives)
+            out.writeUTF(f.name);
+        out.writeInt(names.length);
+        for (int i = 0; i < names.length; ++i) {
+            out.writeUTF(names[i]);
+            out.writeInt(arities[i]);
+            out.writeInt(slots[i]);
+            out.writeInt(registers[i]);
+            out.writeInt(entries[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a program written by write().
+     * @param in Stream to be read from.
+     * @param intrinsics Intrinsics the program calls, bound by name;
+     * may be empty if it calls none.
+     * @return The program.
+     * @throws IOException If the stream fails or holds no program of
+     * this format.
+     * @throws IllegalArgumentException If an intrinsic the program
+     * calls is not bound.
+     */
+    public static Bytecode read(DataInputStream in, Intrinsics intrinsics) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a Funl bytecode stream");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported Funl bytecode version " + version);
+        int[] code = new int[in.readInt()];
+        for (int i = 0; i < code.length; ++i)
+            code[i] = in.readInt();
+        double[] constants = new double[in.readInt()];
+        for (int i = 0; i < constants.length; ++i)
+            constants[i] = in.readDouble();
+        String[] symbols = new String[in.readInt()];
+        for (int i = 0; i < symbols.length; ++i)
+            symbols[i] = in.readUTF();
+        Intrinsic[] natives = new Intrinsic[in.readInt()];
+        for (int i = 0; i < natives.length; ++i) {
+            String name = in.readUTF();
+            natives[i] = intrinsics.get(name);
+            if (natives[i] == null)
+                throw new IllegalArgumentException("No intrinsic bound to " + name);
+        }
+        int n = in.readInt();
+        String[] names = new String[n];
+        int[] arities = new int[n];
+        int[] slots = new int[n];
+        int[] registers = new int[n];
+        int[] entries = new int[n];
+        for (int i = 0; i < n; ++i) {
+            names[i] = in.readUTF();
+            arities[i] = in.readInt();
+            slots[i] = in.readInt();
+            registers[i] = in.readInt();
+            entries[i] = in.readInt();
+        }
+        return new Bytecode(code, constants, symbols, natives, names, arities, slots, registers, entries);
+    }
+}
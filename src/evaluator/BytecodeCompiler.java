@@ -0,0 +1,366 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Class for lowering the functions of a FlatProgram to Bytecode.
+ * Every expression is compiled into a given register; parameters are
+ * read where they live, and temporaries are allocated like a stack,
+ * so that the registers of a function number its slots plus the
+ * deepest nesting of temporaries. Code in tail position ends in a
+ * return or a tail call instead of writing a register.
+ * @version Oct 19, 2026
+ */
+class BytecodeCompiler {
+    private static final int DISCARD = -1; // register of a value not used
+
+    private final FlatProgram p;
+    private int[] code = new int[1024];
+    private int size = 0;
+    private final ArrayList<String> symbols = new ArrayList<String>();
+    private final HashMap<String, Integer> symbolIndex = new HashMap<String, Integer>();
+    private final int[] registers;
+    private final int[] entries;
+    /* function being compiled */
+    private int fn;
+    private int top;    // first free temporary
+    private int maxTop; // registers used so far
+
+    /**
+     * Constructor for BytecodeCompiler.
+     * @param program Program to be compiled.
+     */
+    BytecodeCompiler(FlatProgram program) {
+        p = program;
+        registers = new int[p.names.length];
+        entries = new int[p.names.length];
+    }
+
+    /**
+     * Compiles all functions.
+     * @return The compiled program.
+     */
+    Bytecode compile() {
+        for (fn = 0; fn < p.names.length; ++fn) {
+            top = maxTop = p.frameSizes[fn];
+            entries[fn] = size;
+            compileTail(p.bodies[fn]);
+            registers[fn] = maxTop;
+        }
+        return new Bytecode(Arrays.copyOf(code, size), p.constants.clone(),
+                symbols.toArray(new String[symbols.size()]), p.natives.clone(), p.names.clone(),
+                p.arities.clone(), p.frameSizes.clone(), registers, entries);
+    }
+
+    /**
+     * Compiles an expression in tail position.
+     * @param node Node of the expression.
+     */
+    private void compileTail(int node) {
+        int first = p.firstChild[node];
+        int saved = top;
+        switch (p.kinds[node]) {
+            case FlatProgram.SEQ: {
+                int last = first + p.childCounts[node] - 1;
+                for (int i = first; i < last; ++i)
+                    compileInto(p.children[i], DISCARD);
+                compileTail(p.children[last]);
+                return;
+            }
+            case FlatProgram.IF: {
+                int jump = branch(p.children[first]);
+                compileTail(p.children[first + 1]);
+                code[jump] = size;
+                compileTail(p.children[first + 2]);
+                return;
+            }
+            case FlatProgram.OPERATOR: {
+                char op = (char) p.operands[node];
+                if (op != Operation.AND && op != Operation.OR)
+                    break;
+                int x = operand(p.children[first]);
+                emit(Bytecode.CHECK_LOGICAL, x);
+                emit(op == Operation.OR ? Bytecode.JUMP_POS : Bytecode.JUMP_NONPOS, x, 0);
+                int jump = size - 1;
+                compileTail(p.children[first + 1]);
+                code[jump] = size;
+                emit(Bytecode.RETURN, x);
+                top = saved;
+                return;
+            }
+            case FlatProgram.CALL_GLOBAL: {
+                int target = p.operands[node];
+                if (p.childCounts[node] != p.arities[target] || isNative(target))
+                    break;
+                emit(Bytecode.TAIL_CALL, target, arguments(node));
+                top = saved;
+                return;
+            }
+            case FlatProgram.CALL_LOCAL: {
+                int callee = resolve(node);
+                emit(Bytecode.TAIL_CALL_REG, callee, arguments(node));
+                top = saved;
+                return;
+            }
+            default:
+                break;
+        }
+        emit(Bytecode.RETURN, operand(node));
+        top = saved;
+    }
+
+    /**
+     * Compiles an expression into a register.
+     * @param node Node of the expression.
+     * @param d Register, or DISCARD.
+     */
+    private void compileInto(int node, int d) {
+        int first = p.firstChild[node];
+        int operand = p.operands[node];
+        int saved = top;
+        if (d == DISCARD && p.kinds[node] != FlatProgram.VAL && p.kinds[node] != FlatProgram.SEQ)
+            d = temp();
+        switch (p.kinds[node]) {
+            case FlatProgram.NUMBER:
+                emit(Bytecode.CONST, d, operand);
+                break;
+            case FlatProgram.LOCAL:
+                if (operand < p.arities[fn])
+                    emit(Bytecode.MOVE, d, operand);
+                else
+                    emit(Bytecode.LOAD, d, operand, symbol(p.slotNames[fn][operand]));
+                break;
+            case FlatProgram.GLOBAL:
+                emit(Bytecode.FUNC, d, operand);
+                break;
+            case FlatProgram.UNBOUND:
+                error("cannot resolve '" + p.symbols[operand] + "' to a variable or function name.");
+                break;
+            case FlatProgram.SEQ: {
+                int last = first + p.childCounts[node] - 1;
+                for (int i = first; i < last; ++i)
+                    compileInto(p.children[i], DISCARD);
+                compileInto(p.children[last], d);
+                break;
+            }
+            case FlatProgram.VAL: {
+                int slot = operand < 0 ? ~operand : operand;
+                emit(Bytecode.VAL_CHECK, slot, symbol(p.slotNames[fn][slot]));
+                if (operand < 0) {
+                    error("function with name '" + p.slotNames[fn][slot] + "' already exists");
+                    break;
+                }
+                // the slot is written once the expression is evaluated
+                compileInto(p.children[first], slot);
+                if (d != DISCARD)
+                    emit(Bytecode.MOVE, d, slot);
+                break;
+            }
+            case FlatProgram.OPERATOR:
+                operate((char) operand, first, d);
+                break;
+            case FlatProgram.IF: {
+                int jump = branch(p.children[first]);
+                compileInto(p.children[first + 1], d);
+                emit(Bytecode.JUMP, 0);
+                int end = size - 1;
+                code[jump] = size;
+                compileInto(p.children[first + 2], d);
+                code[end] = size;
+                break;
+            }
+            case FlatProgram.CALL_GLOBAL:
+                if (p.childCounts[node] != p.arities[operand]) {
+                    error("number of argument(s) not match for function '" + p.names[operand] + "'.\n" +
+                            "Expected: " + p.arities[operand] + ", actual: " + p.childCounts[node]);
+                }
+                else if (isNative(operand)) {
+                    // the intrinsic runs in place, without a frame
+                    int x = operand(p.children[first]);
+                    int y = p.childCounts[node] > 1 ? operand(p.children[first + 1]) : -1;
+                    emit(Bytecode.NATIVE, d, nativeOf(operand), x, y);
+                }
+                else
+                    emit(Bytecode.CALL, d, operand, arguments(node));
+                break;
+            case FlatProgram.CALL_LOCAL: {
+                int callee = resolve(node);
+                emit(Bytecode.CALL_REG, d, callee, arguments(node));
+                break;
+            }
+            case FlatProgram.CALL_UNBOUND:
+                error("cannot resolve '" + p.symbols[operand] + "' to a function name.");
+                break;
+            case FlatProgram.READ:
+                emit(Bytecode.READ, d, symbol(p.symbols[operand]));
+                break;
+            default: {
+                int x = operand(p.children[first]);
+                int y = p.childCounts[node] > 1 ? operand(p.children[first + 1]) : -1;
+                emit(Bytecode.NATIVE, d, operand, x, y);
+                break;
+            }
+        }
+        top = saved;
+    }
+
+    /**
+     * Compiles an operation into a register. An arithmetic operation
+     * with a constant right operand becomes a superinstruction; and
+     * and or write the register once, when their result is known.
+     */
+    private void operate(char op, int first, int d) {
+        int left = p.children[first];
+        if (op == Operation.NOT) {
+            emit(Bytecode.NOT, d, operand(left));
+            return;
+        }
+        int right = p.children[first + 1];
+        if (op == Operation.AND || op == Operation.OR) {
+            int x = operand(left);
+            emit(Bytecode.CHECK_LOGICAL, x);
+            emit(op == Operation.OR ? Bytecode.JUMP_POS : Bytecode.JUMP_NONPOS, x, 0);
+            int decided = size - 1;
+            compileInto(right, d);
+            emit(Bytecode.JUMP, 0);
+            int end = size - 1;
+            code[decided] = size;
+            emit(Bytecode.MOVE, d, x);
+            code[end] = size;
+            return;
+        }
+        int opcode = opcode(op);
+        int x = operand(left);
+        if (opcode <= Bytecode.DIV && p.kinds[right] == FlatProgram.NUMBER) {
+            emit(opcode - Bytecode.ADD + Bytecode.ADDK, d, x, p.operands[right]);
+            return;
+        }
+        emit(opcode, d, x, operand(right));
+    }
+
+    /**
+     * Compiles the condition of an if, jumping when it fails. A
+     * comparison is fused with the jump.
+     * @param node Node of the condition.
+     * @return Offset of the jump target, to be patched.
+     */
+    private int branch(int node) {
+        int saved = top;
+        if (p.kinds[node] == FlatProgram.SEQ && p.childCounts[node] == 1)
+            node = p.children[p.firstChild[node]];
+        char op = (char) p.operands[node];
+        if (p.kinds[node] == FlatProgram.OPERATOR && Operation.isComparison(op)) {
+            int first = p.firstChild[node];
+            int x = operand(p.children[first]);
+            int y = operand(p.children[first + 1]);
+            emit(Bytecode.JUMP_UNLESS, opcode(op), x, y, 0);
+        }
+        else
+            emit(Bytecode.JUMP_NONPOS, operand(node), 0);
+        top = saved;
+        return size - 1;
+    }
+
+    /**
+     * Gets a register holding the value of an expression: the slot of
+     * a parameter, or a new temporary the expression is compiled into.
+     * @param node Node of the expression.
+     * @return The register.
+     */
+    private int operand(int node) {
+        if (p.kinds[node] == FlatProgram.LOCAL && p.operands[node] < p.arities[fn])
+            return p.operands[node];
+        int t = temp();
+        compileInto(node, t);
+        return t;
+    }
+
+    /**
+     * Compiles the arguments of a call into consecutive temporaries.
+     * @param node Call node.
+     * @return The first of the temporaries.
+     */
+    private int arguments(int node) {
+        int first = p.firstChild[node];
+        int n = p.childCounts[node];
+        int base = top;
+        for (int i = 0; i < n; ++i)
+            temp();
+        for (int i = 0; i < n; ++i)
+            compileInto(p.children[first + i], base + i);
+        return base;
+    }
+
+    /**
+     * Compiles the resolution of the function a call through a
+     * parameter or val calls, before its arguments are evaluated.
+     * @param node CALL_LOCAL node.
+     * @return Temporary holding the function.
+     */
+    private int resolve(int node) {
+        int slot = p.operands[node];
+        String funcName = p.slotNames[fn][slot];
+        int t = temp();
+        emit(Bytecode.RESOLVE, t, slot, functionIndex(funcName), symbol(funcName), p.childCounts[node]);
+        return t;
+    }
+
+    private int functionIndex(String funcName) {
+        int i = Arrays.binarySearch(p.names, funcName);
+        return i < 0 ? -1 : i;
+    }
+
+    private boolean isNative(int f) {
+        int body = p.bodies[f];
+        return p.childCounts[body] == 1 && p.kinds[p.children[p.firstChild[body]]] == FlatProgram.NATIVE;
+    }
+
+    private int nativeOf(int f) {
+        int body = p.bodies[f];
+        return p.operands[p.children[p.firstChild[body]]];
+    }
+
+    private static int opcode(char op) {
+        switch (op) {
+            case '+': return Bytecode.ADD;
+            case '-': return Bytecode.SUB;
+            case '*': return Bytecode.MUL;
+            case '/': return Bytecode.DIV;
+            case Operation.EQ: return Bytecode.EQ;
+            case Operation.NE: return Bytecode.NE;
+            case Operation.LT: return Bytecode.LT;
+            case Operation.GT: return Bytecode.GT;
+            case Operation.LE: return Bytecode.LE;
+            default: return Bytecode.GE;
+        }
+    }
+
+    private int temp() {
+        if (++top > maxTop)
+            maxTop = top;
+        return top - 1;
+    }
+
+    private void error(String msg) {
+        emit(Bytecode.ERROR, symbol(msg));
+    }
+
+    private int symbol(String s) {
+        Integer i = symbolIndex.get(s);
+        if (i == null) {
+            i = symbols.size();
+            symbols.add(s);
+            symbolIndex.put(s, i);
+        }
+        return i;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length)
+            code = Arrays.copyOf(code, Math.max(2 * code.length, size + words.length));
+        System.arraycopy(words, 0, code, size, words.length);
+        size += words.length;
+    }
+}
@@ -0,0 +1,214 @@
+package evaluator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Token of a function call node ($call) carrying the inline cache of
+ * that call site. A call to a function name remembers its target for
+ * the function table snapshot it was resolved in (monomorphic cache),
+ * so repeated calls skip the lookup and the argument count check until
+ * functions are redefined; a call bound to a function name then is a
+ * direct call, which also remembers whether the target is applied as
+ * an alias, without a scope, and which residual it runs if it passes
+ * constants (see Specializer). A call through a function-valued parameter
+ * remembers up to MAX_TARGETS targets whose argument count is already
+ * verified (polymorphic cache) and gives up beyond that (megamorphic).
+ * <p>
+ * Call sites live in function trees shared by isolates; every cache
+ * update installs a new immutable object, so racing threads at worst
+ * miss the cache.
+ * @version Oct 19, 2026
+ */
+class CallSite extends Token {
+    /* how the called name is bound, as known from the enclosing def */
+    static final byte UNKNOWN = 0; // outside a def, e.g. in the REPL
+    static final byte LOCAL = 1;   // a parameter or val of the enclosing def
+    static final byte GLOBAL = 2;  // a function name
+    static final int MAX_TARGETS = 4;
+
+    /**
+     * A function resolved from a snapshot of the function table.
+     */
+    private static final class Global {
+        final HashMap<String, Tree<Token>> functions;
+        final Tree<Token> target;
+        final Tree<Token> alias; // applied instead of calling the target; may be null
+
+        Global(HashMap<String, Tree<Token>> functions, Tree<Token> target, Tree<Token> alias) {
+            this.functions = functions;
+            this.target = target;
+            this.alias = alias;
+        }
+    }
+
+    /**
+     * The function a call passing constants runs, specialized on them,
+     * for a snapshot of the function table.
+     */
+    static final class Residual {
+        final HashMap<String, Tree<Token>> functions;
+        final Tree<Token> function; // the target itself if not specialized
+        final int[] args;           // indices of the arguments still passed
+        /* per argument, the number (Double) or function name (String)
+           specialized on; null for an argument still passed */
+        final Object[] constants;
+
+        Residual(HashMap<String, Tree<Token>> functions, Tree<Token> function, int[] args,
+                Object[] constants) {
+            this.functions = functions;
+            this.function = function;
+            this.args = args;
+            this.constants = constants;
+        }
+
+        /**
+         * Checks whether a call passes the constants this residual is
+         * specialized on. An argument still passed may be anything.
+         * @param args Arguments of the call.
+         * @return True if the call can run this residual.
+         */
+        boolean matches(Tree<Token> args) {
+            if (args.getNumberOfChildren() != constants.length)
+                return false;
+            for (int i = 0; i < constants.length; ++i) {
+                Object c = constants[i];
+                if (c == null)
+                    continue;
+                Tree<Token> arg = args.getChild(i);
+                Token token = arg.getValue();
+                if (c instanceof Double ? !(token instanceof Numeral && arg.getNumberOfChildren() == 0 &&
+                        Double.doubleToLongBits(((Numeral) token).number) ==
+                        Double.doubleToLongBits((Double) c)) :
+                        token.getType() != TokenType.NAME || !token.getValue().equals(c))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Tree<Token>[] NO_TARGETS = new Tree[0];
+
+    byte binding = UNKNOWN;
+    private Global global;
+    private Residual residual;
+    private Tree<Token>[] targets = NO_TARGETS;
+    private boolean megamorphic = false;
+
+    /**
+     * Constructor for CallSite.
+     */
+    CallSite() {
+        super(TokenType.KEYWORD, "$call");
+    }
+
+    /**
+     * Gets the cached function for a snapshot of the function table.
+     * @param functions Snapshot the call is resolved in.
+     * @return The cached function, or null on a cache miss.
+     */
+    Tree<Token> cachedGlobal(HashMap<String, Tree<Token>> functions) {
+        Global g = global;
+        return g != null && g.functions == functions ? g.target : null;
+    }
+
+    /**
+     * Gets the alias the cached function is applied as.
+     * @param functions Snapshot the call is resolved in.
+     * @return The operation or intrinsic, or null if the function is
+     * called, or on a cache miss.
+     */
+    Tree<Token> cachedAlias(HashMap<String, Tree<Token>> functions) {
+        Global g = global;
+        return g != null && g.functions == functions ? g.alias : null;
+    }
+
+    /**
+     * Gets the cached residual of a direct call. The call site may be
+     * shared by trees passing other constants (see ParseCache), so the
+     * residual must also be specialized on the constants passed.
+     * @param functions Snapshot the call is resolved in.
+     * @param args Arguments of the call.
+     * @return The residual, or null on a cache miss.
+     */
+    Residual cachedResidual(HashMap<String, Tree<Token>> functions, Tree<Token> args) {
+        Residual r = residual;
+        return r != null && r.functions == functions && r.matches(args) ? r : null;
+    }
+
+    /**
+     * Caches the residual a direct call runs.
+     * @param residual Residual for the snapshot it was specialized in.
+     */
+    void cacheResidual(Residual residual) {
+        this.residual = residual;
+    }
+
+    /**
+     * Caches the function resolved for a snapshot of the function table.
+     * @param functions Snapshot the call was resolved in.
+     * @param target Function, with its argument count verified.
+     * @param alias Operation or intrinsic the function is applied as,
+     * or null if it is called.
+     */
+    void cacheGlobal(HashMap<String, Tree<Token>> functions, Tree<Token> target, Tree<Token> alias) {
+        global = new Global(functions, target, alias);
+    }
+
+    /**
+     * Checks whether a function-valued target was verified before.
+     * @param target Function called.
+     * @return True if its argument count is known to match.
+     */
+    boolean isVerified(Tree<Token> target) {
+        Tree<Token>[] t = targets;
+        for (int i = 0; i < t.length; ++i)
+            if (t[i] == target)
+                return true;
+        return false;
+    }
+
+    /**
+     * Remembers a function-valued target whose argument count matches.
+     * @param target Function called.
+     */
+    void verified(Tree<Token> target) {
+        if (megamorphic)
+            return;
+        Tree<Token>[] t = targets;
+        if (t.length == MAX_TARGETS) {
+            megamorphic = true;
+            targets = NO_TARGETS;
+            return;
+        }
+        Tree<Token>[] copy = Arrays.copyOf(t, t.length + 1);
+        copy[t.length] = target;
+        targets = copy;
+    }
+
+    /**
+     * Gets the number of function-valued targets cached.
+     * @return Number of targets.
+     */
+    int getTargetCount() {
+        return targets.length;
+    }
+
+    /**
+     * Checks whether this call site gave up caching function-valued targets.
+     * @return True if more than MAX_TARGETS targets were seen.
+     */
+    boolean isMegamorphic() {
+        return megamorphic;
+    }
+
+    /**
+     * Checks whether a function name is cached for a snapshot.
+     * @param functions Snapshot of the function table.
+     * @return True if the name is resolved for the snapshot.
+     */
+    boolean isCached(HashMap<String, Tree<Token>> functions) {
+        return cachedGlobal(functions) != null;
+    }
+}
@@ -0,0 +1,207 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for eliminating common subexpressions in a Funl function body.
+ * A pure subexpression evaluated again on a path where it was already
+ * evaluated, with the same text, reads the value of the first one
+ * instead: the first occurrence becomes val $cseN = expr in place, and
+ * the others the name $cseN, which no Funl program can write.
+ * <p>
+ * Nothing is moved: the first occurrence is evaluated where it was, so
+ * evaluation order, input and failures stay the same, and no path
+ * evaluates more than before. A value bound in a branch of an if, or
+ * in the right operand of and or or, is only reused in that branch.
+ * An expression is pure if it reads no input, defines no val, and
+ * calls only functions by name whose reach reads no input and calls no
+ * parameter or val. Calls are shared, and operations on at least one
+ * operation or call; a shared arithmetic operation on two names would
+ * cost about as much as it saves.
+ * @version Oct 19, 2026
+ */
+class CommonSubexpressions {
+    static final String PREFIX = "$cse";
+
+    private final Map<String, Tree<Token>> functions;
+    private final HashMap<String, Boolean> pureFunctions = new HashMap<String, Boolean>();
+    // later occurrence -> first occurrence it reads
+    private final IdentityHashMap<Tree<Token>, Tree<Token>> reused =
+            new IdentityHashMap<Tree<Token>, Tree<Token>>();
+    // first occurrence reused -> name it is bound to, given in the order of evaluation
+    private final IdentityHashMap<Tree<Token>, String> bound = new IdentityHashMap<Tree<Token>, String>();
+
+    private int names = 0;
+
+    private CommonSubexpressions(Map<String, Tree<Token>> functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Eliminates the common subexpressions of a function.
+     * @param def Tree of the function definition.
+     * @param functions Functions global calls reach.
+     * @return Tree of the function with a new body, with its analyses
+     * done, or def itself if it has no common subexpression.
+     */
+    static Tree<Token> eliminate(Tree<Token> def, Map<String, Tree<Token>> functions) {
+        if (def.getChild(2).getChild(0).getValue() instanceof Intrinsic)
+            return def;
+        CommonSubexpressions cse = new CommonSubexpressions(functions);
+        cse.visit(def.getChild(2), new HashMap<String, Tree<Token>>());
+        if (cse.reused.isEmpty())
+            return def;
+        Tree<Token> result = new Tree<Token>(new Definition());
+        result.addChild(def.getChild(0));
+        result.addChild(def.getChild(1));
+        result.addChild(cse.rewrite(def.getChild(2)));
+        Parser.analyze(result);
+        return result;
+    }
+
+    /**
+     * Finds the occurrences that can reuse an earlier one, walking an
+     * expression in evaluation order.
+     * @param expr Expression in the function body.
+     * @param available First occurrences evaluated on every path to
+     * the expression, by text.
+     */
+    private void visit(Tree<Token> expr, Map<String, Tree<Token>> available) {
+        String key = isCandidate(expr) ? expr.toString() : null;
+        if (key != null && available.containsKey(key)) {
+            reused.put(expr, available.get(key));
+            bound.put(available.get(key), null);
+            return;
+        }
+        Token token = expr.getValue();
+        if (token instanceof Operation && ((Operation) token).operator == 0) {
+            visit(expr.getChild(0), available);
+            visit(expr.getChild(1), new HashMap<String, Tree<Token>>(available));
+            visit(expr.getChild(2), new HashMap<String, Tree<Token>>(available));
+        }
+        else if (token instanceof Operation && ((Operation) token).isLogical() &&
+                expr.getNumberOfChildren() == 2) {
+            visit(expr.getChild(0), available);
+            visit(expr.getChild(1), new HashMap<String, Tree<Token>>(available));
+        }
+        else if (token instanceof CallSite)
+            visit(expr.getChild(1), available);
+        else if (isKeyword(token, "val"))
+            visit(expr.getChild(1), available);
+        else
+            for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+                visit(expr.getChild(i), available);
+        if (key != null)
+            available.put(key, expr);
+    }
+
+    /**
+     * Copies an expression with new tokens for its operations and call
+     * sites, binding first occurrences and reading them in the others.
+     * @param expr Expression in the function body.
+     * @return The copy.
+     */
+    private Tree<Token> rewrite(Tree<Token> expr) {
+        Tree<Token> first = reused.get(expr);
+        if (first != null)
+            return new Tree<Token>(new Token(TokenType.NAME, bound.get(first)));
+        Token token = expr.getValue();
+        Tree<Token> copy;
+        if (token instanceof Operation)
+            copy = new Tree<Token>(new Operation(token.getType(), token.getValue()));
+        else if (token instanceof CallSite)
+            copy = new Tree<Token>(new CallSite());
+        else
+            copy = new Tree<Token>(token);
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            copy.addChild(rewrite(expr.getChild(i)));
+        if (!bound.containsKey(expr))
+            return copy;
+        String name = PREFIX + names++;
+        bound.put(expr, name);
+        Tree<Token> val = new Tree<Token>(new Token(TokenType.KEYWORD, "val"));
+        val.addChild(new Tree<Token>(new Token(TokenType.NAME, name)));
+        val.addChild(copy);
+        return val;
+    }
+
+    /**
+     * Checks whether an expression is worth sharing and pure.
+     */
+    private boolean isCandidate(Tree<Token> expr) {
+        Token token = expr.getValue();
+        if (token instanceof CallSite) {
+            if (((CallSite) token).binding != CallSite.GLOBAL)
+                return false;
+        }
+        else if (token instanceof Operation && ((Operation) token).operator != 0) {
+            boolean nested = false;
+            for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+                nested |= expr.getChild(i).getNumberOfChildren() > 0;
+            if (!nested)
+                return false;
+        }
+        else
+            return false;
+        return isPure(expr);
+    }
+
+    private boolean isPure(Tree<Token> expr) {
+        Token token = expr.getValue();
+        if (isKeyword(token, "read") || isKeyword(token, "val") || isKeyword(token, "def"))
+            return false;
+        if (token instanceof CallSite) {
+            if (((CallSite) token).binding != CallSite.GLOBAL ||
+                    !isPureFunction(expr.getChild(0).getValue().getValue()))
+                return false;
+            return isPure(expr.getChild(1));
+        }
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (!isPure(expr.getChild(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Checks whether no function a function reaches by global calls
+     * reads input or calls a parameter or val.
+     */
+    private boolean isPureFunction(String name) {
+        Boolean pure = pureFunctions.get(name);
+        if (pure == null) {
+            pure = reachIsPure(name, new HashSet<String>());
+            pureFunctions.put(name, pure);
+        }
+        return pure;
+    }
+
+    private boolean reachIsPure(String name, Set<String> visited) {
+        if (!visited.add(name))
+            return true;
+        Tree<Token> func = functions.get(name);
+        return func != null && bodyIsPure(func.getChild(2), visited);
+    }
+
+    private boolean bodyIsPure(Tree<Token> expr, Set<String> visited) {
+        Token token = expr.getValue();
+        if (isKeyword(token, "read"))
+            return false;
+        if (token instanceof CallSite) {
+            String name = expr.getChild(0).getValue().getValue();
+            if (((CallSite) token).binding != CallSite.GLOBAL || !reachIsPure(name, visited))
+                return false;
+        }
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (!bodyIsPure(expr.getChild(i), visited))
+                return false;
+        return true;
+    }
+
+    private static boolean isKeyword(Token token, String keyword) {
+        return token.getType() == TokenType.KEYWORD && token.getValue().equals(keyword);
+    }
+}
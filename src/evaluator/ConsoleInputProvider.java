@@ -0,0 +1,54 @@
+package evaluator;
+
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * Input provider that prompts on the console and reads
+ * numbers line by line from a Scanner. Numbers typed on the
+ * same line are handed out one per read expression, and a
+ * line is always consumed as a whole so that the REPL never
+ * sees what was typed in answer to a prompt.
+ * @version Oct 19, 2026
+ */
+public class ConsoleInputProvider implements InputProvider {
+    private Scanner sc;
+    private LinkedList<String> pending = new LinkedList<String>();
+
+    /**
+     * Constructor for ConsoleInputProvider.
+     * @param sc Scanner to read lines from.
+     */
+    public ConsoleInputProvider(Scanner sc) {
+        this.sc = sc;
+    }
+
+    /**
+     * Prints the prompt and reads the next number.
+     * @param prompt Prompt string of the read expression.
+     * @return The number read.
+     */
+    @Override
+    public double read(String prompt) {
+        System.out.println(prompt);
+        try {
+            while (pending.isEmpty()) {
+                String line = sc.nextLine().trim();
+                if (!line.isEmpty())
+                    for (String s : line.split("\\s+"))
+                        pending.add(s);
+            }
+            return Double.parseDouble(pending.removeFirst());
+        }
+        catch (NumberFormatException e) {
+            pending.clear();
+            throw new RuntimeException(
+                    "Runtime Exception: only accept number for read expressions.");
+        }
+        catch (NoSuchElementException e) {
+            throw new RuntimeException(
+                    "Runtime Exception: no more input for read expressions.");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package evaluator;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token of a function definition node (def) carrying what the
+ * evaluator learns about the function. Analyses run when the function
+ * is parsed or on its first call, and their results are immutable, so
+ * isolates sharing the function may race to compute them but never
+ * see them torn.
+ * @version Oct 19, 2026
+ */
+class Definition extends Token {
+    static final int MAX_RESIDUALS = 16;
+
+    private volatile Fold fold;
+    private Map<String, Byte> shapes = Collections.emptyMap();
+    private Tree<Token> alias;
+    private volatile Strict strict;
+    private int heat = 0;      // calls and loop iterations; racy, so approximate
+    private volatile Tier tier;
+    private volatile Residuals residuals;
+    private volatile Optimized optimized;
+
+    /**
+     * Constructor for Definition.
+     */
+    Definition() {
+        super(TokenType.KEYWORD, "def");
+    }
+
+    /**
+     * Sets the shapes inferred for the parameters and vals; done by
+     * the parser before the function is published.
+     * @param shapes Shape of each parameter and val, by name.
+     */
+    void setShapes(Map<String, Byte> shapes) {
+        this.shapes = Collections.unmodifiableMap(shapes);
+    }
+
+    /**
+     * Gets the shape inferred for a parameter or val.
+     * @param name Name of the parameter or val.
+     * @return One of the shapes of ShapeInference.
+     */
+    byte getShape(String name) {
+        Byte shape = shapes.get(name);
+        return shape == null ? ShapeInference.UNKNOWN : shape;
+    }
+
+    /**
+     * Sets the operation or intrinsic the function is an alias of;
+     * done before the function is published.
+     * @param alias Body of the function, or null if the function is
+     * no alias.
+     */
+    void setAlias(Tree<Token> alias) {
+        this.alias = alias;
+    }
+
+    /**
+     * Gets the operation or intrinsic the function is an alias of, such
+     * as the comparison of def gt x y = x &gt; y end, so that calls can
+     * apply it to the arguments without a scope.
+     * @return Body of the function, or null if the function is no alias.
+     */
+    Tree<Token> getAlias() {
+        return alias;
+    }
+
+    /**
+     * Gets the parameters the function always evaluates, analyzing
+     * them again once the functions it may call change.
+     * @param def Tree of the function definition.
+     * @param functions Functions global calls reach.
+     * @return Whether each parameter is strict, in order.
+     */
+    boolean[] getStrictness(Tree<Token> def, Map<String, Tree<Token>> functions) {
+        Strict s = strict;
+        if (s == null || s.functions != functions)
+            strict = s = new Strict(functions, Strictness.analyze(def, functions));
+        return s.params;
+    }
+
+    /**
+     * Strict parameters of the function, with the functions they
+     * were found for.
+     */
+    private static final class Strict {
+        final Map<String, Tree<Token>> functions;
+        final boolean[] params;
+
+        Strict(Map<String, Tree<Token>> functions, boolean[] params) {
+            this.functions = functions;
+            this.params = params;
+        }
+    }
+
+    /**
+     * The function with its common subexpressions eliminated, for the
+     * functions it was optimized for.
+     */
+    private static final class Optimized {
+        final Map<String, Tree<Token>> functions;
+        final Tree<Token> def;
+
+        Optimized(Map<String, Tree<Token>> functions, Tree<Token> def) {
+            this.functions = functions;
+            this.def = def;
+        }
+    }
+
+    /**
+     * Gets the function with its common subexpressions eliminated,
+     * optimizing it again once the functions it may call change.
+     * @param def Tree of the function definition.
+     * @param functions Functions global calls reach.
+     * @return Tree of the optimized function, or def itself if it has
+     * no common subexpression.
+     */
+    Tree<Token> getOptimized(Tree<Token> def, Map<String, Tree<Token>> functions) {
+        Optimized o = optimized;
+        if (o == null || o.functions != functions)
+            optimized = o = new Optimized(functions, CommonSubexpressions.eliminate(def, functions));
+        return o.def;
+    }
+
+    /**
+     * Residual functions of the function, by the constants they are
+     * specialized on, with the functions they were specialized for.
+     */
+    private static final class Residuals {
+        final Map<String, Tree<Token>> functions;
+        final ConcurrentHashMap<String, Tree<Token>> byKey = new ConcurrentHashMap<String, Tree<Token>>();
+
+        Residuals(Map<String, Tree<Token>> functions) {
+            this.functions = functions;
+        }
+    }
+
+    /**
+     * Gets the function specialized on constant arguments, specializing
+     * it on the first call with the constants. At most MAX_RESIDUALS
+     * residuals are kept until the functions change.
+     * @param def Tree of the function definition.
+     * @param constants For each parameter, the number or function name
+     * passed, or null if the argument is not constant.
+     * @param key Text of the constants, telling them apart.
+     * @param functions Functions global calls reach.
+     * @param budget Number of nodes the residual may grow by.
+     * @return Tree of the residual function, or def itself if the
+     * function is not specialized on the constants.
+     */
+    Tree<Token> specialize(Tree<Token> def, Tree<Token>[] constants, String key,
+            Map<String, Tree<Token>> functions, int budget) {
+        Residuals r = residuals;
+        if (r == null || r.functions != functions)
+            residuals = r = new Residuals(functions);
+        Tree<Token> residual = r.byKey.get(key);
+        if (residual == null) {
+            if (r.byKey.size() >= MAX_RESIDUALS)
+                return def;
+            residual = Specializer.specialize(def, constants, functions, budget);
+            if (residual == null)
+                residual = def;
+            r.byKey.put(key, residual);
+        }
+        return residual;
+    }
+
+    /**
+     * Gets the recursive fold the function is, recognizing it on
+     * the first call.
+     * @param def Tree of the function definition.
+     * @return The fold, or Fold.NONE if the function is no fold.
+     */
+    Fold getFold(Tree<Token> def) {
+        Fold f = fold;
+        if (f == null)
+            fold = f = Fold.recognize(def);
+        return f;
+    }
+
+    /**
+     * Counts calls or loop iterations of the function towards its
+     * promotion to the optimized tier.
+     * @param n Number of calls or iterations.
+     * @return The count so far.
+     */
+    int heat(int n) {
+        return heat += n;
+    }
+
+    /**
+     * Gets the tier the function was promoted to.
+     * @return The tier, or null if the function is not hot yet.
+     */
+    Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Sets the tier of the function, restarting the count towards
+     * its next promotion.
+     * @param tier The tier.
+     */
+    void setTier(Tier tier) {
+        this.tier = tier;
+        heat = 0;
+    }
+}
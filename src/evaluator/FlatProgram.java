@@ -0,0 +1,735 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class for a Funl program in a compact form. The nodes of all its
+ * function bodies live in parallel primitive arrays (kind, operand,
+ * first child and number of children) rather than in Tree objects,
+ * numbers in a pool of doubles, and names are resolved up front:
+ * parameters and vals to slots of a frame of doubles, function names
+ * to function indices. A program is immutable; any number of threads
+ * may call its functions at once.
+ * <p>
+ * Calls evaluate directly on the arrays, in doubles. A function value
+ * is a NaN carrying the index of the function, so that frames hold
+ * numbers and functions alike. Results and runtime errors are those of
+ * Funl, except that a call in tail position reuses the depth of its
+ * caller, as a fused fold does, and there are no other folds: linear
+ * recursion that is no tail call nests up to MAX_SCOPE_DEPTH deep.
+ * <p>
+ * Code that wants Tree access reads a function through a Node, a view
+ * of one node, or materializes it with Node.toTree().
+ * @version Oct 19, 2026
+ */
+public final class FlatProgram {
+    /* node kinds, with the operand of the node in brackets */
+    static final byte NUMBER = 0;        // [index into constants]
+    static final byte LOCAL = 1;         // [frame slot] parameter or val
+    static final byte GLOBAL = 2;        // [function] function name as a value
+    static final byte UNBOUND = 3;       // [symbol] name bound to nothing
+    static final byte SEQ = 4;           // expressions
+    static final byte VAL = 5;           // [frame slot, complemented if a function has the name] expression
+    static final byte OPERATOR = 6;      // [operator of an Operation] operands
+    static final byte IF = 7;            // condition, then and else sequences
+    static final byte CALL_LOCAL = 8;    // [frame slot] arguments
+    static final byte CALL_GLOBAL = 9;   // [function] arguments
+    static final byte CALL_UNBOUND = 10; // [symbol] arguments
+    static final byte READ = 11;         // [symbol of the prompt]
+    static final byte NATIVE = 12;       // [index into natives] parameters
+
+    static final int MAX_SCOPE_DEPTH = 1000;    // as in Funl
+    static final int MAX_TAIL_CALLS = 1000000;  // as the fold length in Funl
+    static final long TAG_MASK = 0xffff000000000000L;
+    static final long FUNCTION_TAG = 0x7ffc000000000000L; // quiet NaN | function index
+    static final long UNSET_BITS = 0x7ffd000000000000L;   // val not assigned yet
+    private static final long TAIL_BITS = 0x7ffe000000000000L;    // tail call pending in Run
+    static final double UNSET = Double.longBitsToDouble(UNSET_BITS);
+    private static final double TAIL = Double.longBitsToDouble(TAIL_BITS);
+
+    /* nodes */
+    final byte[] kinds;
+    final int[] operands;
+    final int[] firstChild;   // index into children
+    final int[] childCounts;
+    final int[] children;     // node indices
+    final double[] constants;
+    final String[] symbols;
+    final Intrinsic[] natives;
+    /* functions */
+    final String[] names;
+    final int[] arities;
+    final int[] frameSizes;   // parameters and vals
+    final int[] bodies;       // SEQ node
+    final String[][] slotNames;
+    private final HashMap<String, Integer> index = new HashMap<String, Integer>();
+
+    /**
+     * State of one call into the program.
+     */
+    private static final class Run {
+        final InputProvider input;
+        int depth = 0;
+        int overflow = 0;     // depth the Java stack ran out at
+        int tailFunction;     // target of a pending tail call
+        double[] tailFrame;   // arguments of a pending tail call
+
+        Run(InputProvider input) {
+            this.input = input;
+        }
+    }
+
+    private FlatProgram(Builder b) {
+        kinds = Arrays.copyOf(b.kinds, b.nodes);
+        operands = Arrays.copyOf(b.operands, b.nodes);
+        firstChild = Arrays.copyOf(b.firstChild, b.nodes);
+        childCounts = Arrays.copyOf(b.childCounts, b.nodes);
+        children = Arrays.copyOf(b.children, b.edges);
+        constants = Arrays.copyOf(b.constants, b.constantNum);
+        symbols = b.symbolList.toArray(new String[b.symbolList.size()]);
+        natives = b.nativeList.toArray(new Intrinsic[b.nativeList.size()]);
+        names = b.names;
+        arities = b.arities;
+        frameSizes = b.frameSizes;
+        bodies = b.bodies;
+        slotNames = b.slotNames;
+        for (int i = 0; i < names.length; ++i)
+            index.put(names[i], i);
+    }
+
+    /**
+     * Compacts the functions of a snapshot of a function table.
+     * @param snapshot Snapshot, as taken by FunctionTable.snapshot().
+     * @return The compact program.
+     */
+    public static FlatProgram of(FunctionTable.Snapshot snapshot) {
+        return of(snapshot.functions);
+    }
+
+    /**
+     * Compacts function definitions.
+     * @param functions Function definitions by name.
+     * @return The compact program.
+     */
+    static FlatProgram of(Map<String, Tree<Token>> functions) {
+        return new Builder(new TreeMap<String, Tree<Token>>(functions)).build();
+    }
+
+    /**
+     * Gets the number of functions.
+     * @return Number of functions.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Gets the number of nodes of all function bodies.
+     * @return Number of nodes.
+     */
+    public int getNodeCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Gets a view of the definition of a function.
+     * @param funcName Name of the function.
+     * @return The def node.
+     * @throws RuntimeException If no such function is defined.
+     */
+    public Node function(String funcName) {
+        return new Node(this, functionIndex(funcName), -1, Node.DEF);
+    }
+
+    /**
+     * Calls a function with numbers as arguments. Read expressions
+     * fail for lack of input.
+     * @param funcName Name of the function.
+     * @param args Arguments of the call.
+     * @return A number, or the definition of a function.
+     */
+    public Tree<Token> call(String funcName, double... args) {
+        return call(new BatchInputProvider(), funcName, args);
+    }
+
+    /**
+     * Calls a function with numbers as arguments.
+     * @param input Provider of the numbers of read expressions.
+     * @param funcName Name of the function.
+     * @param args Arguments of the call.
+     * @return A number, or the definition of a function.
+     */
+    public Tree<Token> call(InputProvider input, String funcName, double... args) {
+        if (input == null)
+            throw new IllegalArgumentException("Input provider must not be null");
+        int fn = functionIndex(funcName);
+        if (args.length != arities[fn])
+            throw argNumMismatch(funcName, arities[fn], args.length);
+        double[] frame = new double[frameSizes[fn]];
+        for (int i = 0; i < args.length; ++i)
+            frame[i] = number(args[i]);
+        Arrays.fill(frame, args.length, frame.length, UNSET);
+        Run run = new Run(input);
+        double result;
+        try {
+            result = invoke(fn, frame, run);
+        }
+        catch (StackOverflowError e) {
+            throw new RuntimeException(
+                    "Runtime Exception: ran out of stack at nested scope depth of " + run.overflow);
+        }
+        if (isFunction(result))
+            return new Node(this, functionOf(result), -1, Node.DEF).toTree();
+        return new Tree<Token>(new Numeral(result));
+    }
+
+    private int functionIndex(String funcName) {
+        Integer fn = index.get(funcName);
+        if (fn == null)
+            throw new RuntimeException(
+                    "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
+        return fn;
+    }
+
+    /**
+     * Evaluates the body of a function in a new scope, looping over
+     * the tail calls it ends with.
+     * @param fn Function.
+     * @param frame Arguments, followed by unassigned vals.
+     * @param run State of the call.
+     * @return The value of the function.
+     */
+    private double invoke(int fn, double[] frame, Run run) {
+        if (++run.depth >= MAX_SCOPE_DEPTH) {
+            --run.depth;
+            throw new RuntimeException(
+                    "Runtime Exception: exceeded maximum nested scope depth of " + MAX_SCOPE_DEPTH);
+        }
+        try {
+            for (int calls = 0; ; ++calls) {
+                double value = eval(bodies[fn], fn, frame, run, true);
+                if (Double.doubleToRawLongBits(value) != TAIL_BITS)
+                    return value;
+                if (calls >= MAX_TAIL_CALLS)
+                    throw new RuntimeException(
+                            "Runtime Exception: exceeded maximum fold length of " + MAX_TAIL_CALLS);
+                fn = run.tailFunction;
+                frame = run.tailFrame;
+            }
+        }
+        catch (StackOverflowError e) {
+            if (run.overflow == 0)
+                run.overflow = run.depth;
+            throw e;
+        }
+        finally {
+            --run.depth;
+        }
+    }
+
+    /**
+     * Evaluates a node.
+     * @param node Node.
+     * @param fn Function the node belongs to.
+     * @param frame Scope of the function.
+     * @param run State of the call.
+     * @param tail True if the node is in tail position, so that a call
+     * is left pending in run and TAIL returned.
+     * @return Value of the node.
+     */
+    private double eval(int node, int fn, double[] frame, Run run, boolean tail) {
+        int first = firstChild[node];
+        switch (kinds[node]) {
+            case NUMBER:
+                return constants[operands[node]];
+            case LOCAL: {
+                double value = frame[operands[node]];
+                if (Double.doubleToRawLongBits(value) == UNSET_BITS)
+                    throw new RuntimeException("Runtime Exception: cannot resolve '" +
+                            slotNames[fn][operands[node]] + "' to a variable or function name.");
+                return value;
+            }
+            case GLOBAL:
+                return Double.longBitsToDouble(FUNCTION_TAG | operands[node]);
+            case UNBOUND:
+                throw new RuntimeException("Runtime Exception: cannot resolve '" +
+                        symbols[operands[node]] + "' to a variable or function name.");
+            case SEQ: {
+                int last = first + childCounts[node] - 1;
+                for (int i = first; i < last; ++i)
+                    eval(children[i], fn, frame, run, false);
+                return eval(children[last], fn, frame, run, tail);
+            }
+            case VAL: {
+                int slot = operands[node] < 0 ? ~operands[node] : operands[node];
+                if (Double.doubleToRawLongBits(frame[slot]) != UNSET_BITS)
+                    throw new RuntimeException("Runtime Exception: variable with name '" +
+                            slotNames[fn][slot] + "' already exists");
+                if (operands[node] < 0)
+                    throw new RuntimeException("Runtime Exception: function with name '" +
+                            slotNames[fn][slot] + "' already exists");
+                double value = eval(children[first], fn, frame, run, false);
+                frame[slot] = value;
+                return value;
+            }
+            case OPERATOR:
+                return operate((char) operands[node], first, fn, frame, run, tail);
+            case IF: {
+                double cond = eval(children[first], fn, frame, run, false);
+                if (isFunction(cond))
+                    throw new RuntimeException(
+                            "Runtime Exception: condition part of an if expression evaluates to a function.");
+                return eval(children[cond > 0 ? first + 1 : first + 2], fn, frame, run, tail);
+            }
+            case CALL_GLOBAL:
+                return call(operands[node], names[operands[node]], node, fn, frame, run, tail);
+            case CALL_LOCAL: {
+                String funcName = slotNames[fn][operands[node]];
+                double func = frame[operands[node]];
+                // an unassigned val leaves the name to the functions
+                if (Double.doubleToRawLongBits(func) == UNSET_BITS)
+                    return call(functionIndex(funcName), funcName, node, fn, frame, run, tail);
+                if (!isFunction(func))
+                    throw new RuntimeException(
+                            "Runtime Exception: '" + funcName + "' evaluates to a number, not a function.");
+                return call(functionOf(func), funcName, node, fn, frame, run, tail);
+            }
+            case CALL_UNBOUND:
+                throw new RuntimeException("Runtime Exception: cannot resolve '" +
+                        symbols[operands[node]] + "' to a function name.");
+            case READ:
+                return number(run.input.read(symbols[operands[node]]));
+            default: {
+                Intrinsic f = natives[operands[node]];
+                double x = eval(children[first], fn, frame, run, false);
+                double y = childCounts[node] > 1 ? eval(children[first + 1], fn, frame, run, false) : 0;
+                if (isFunction(x) || isFunction(y))
+                    throw new RuntimeException(
+                            "Runtime Exception: argument of '" + f.name + "' evaluates to a function.");
+                return number(f.apply(x, y));
+            }
+        }
+    }
+
+    /**
+     * Evaluates an operation; and and or evaluate their right operand
+     * only if the left one does not decide the result.
+     * @return Value of the operation.
+     */
+    private double operate(char op, int first, int fn, double[] frame, Run run, boolean tail) {
+        double x = eval(children[first], fn, frame, run, false);
+        if (op == Operation.AND || op == Operation.OR || op == Operation.NOT) {
+            if (isFunction(x))
+                throw new RuntimeException("Runtime Exception: logical operand evaluates to a function.");
+            if (op == Operation.NOT)
+                return x > 0 ? 0 : 1;
+            return (x > 0) == (op == Operation.OR) ? x : eval(children[first + 1], fn, frame, run, tail);
+        }
+        double y = eval(children[first + 1], fn, frame, run, false);
+        if (isFunction(x) || isFunction(y))
+            throw new RuntimeException("Runtime Exception: arithmetic operand evaluates to a function.");
+        return Operation.apply(op, x, y);
+    }
+
+    /**
+     * Calls a function from a call node.
+     * @param target Function to be called.
+     * @param funcName Name the function is called by.
+     * @param node Call node, whose children are the arguments.
+     * @return Value of the call, or TAIL if left pending in run.
+     */
+    private double call(int target, String funcName, int node, int fn, double[] frame,
+            Run run, boolean tail) {
+        int argNum = childCounts[node];
+        if (argNum != arities[target])
+            throw argNumMismatch(funcName, arities[target], argNum);
+        double[] callee = new double[frameSizes[target]];
+        int first = firstChild[node];
+        for (int i = 0; i < argNum; ++i)
+            callee[i] = eval(children[first + i], fn, frame, run, false);
+        Arrays.fill(callee, argNum, callee.length, UNSET);
+        if (tail) {
+            run.tailFunction = target;
+            run.tailFrame = callee;
+            return TAIL;
+        }
+        return invoke(target, callee, run);
+    }
+
+    static RuntimeException argNumMismatch(String funcName, int paramNum, int argNum) {
+        return new RuntimeException(
+                "Runtime Exception: number of argument(s) not match for function '" + funcName + "'.\n" +
+                "Expected: " + paramNum + ", actual: " + argNum);
+    }
+
+    static boolean isFunction(double value) {
+        return (Double.doubleToRawLongBits(value) & TAG_MASK) == FUNCTION_TAG;
+    }
+
+    static int functionOf(double value) {
+        return (int) Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Keeps a number from outside the program, such as a read number,
+     * from passing for a function.
+     * @param d Number.
+     * @return The number, or a plain NaN for a NaN with a tag.
+     */
+    static double number(double d) {
+        long tag = Double.doubleToRawLongBits(d) & TAG_MASK;
+        return tag == FUNCTION_TAG || tag == UNSET_BITS || tag == TAIL_BITS ? Double.NaN : d;
+    }
+
+    /**
+     * Class for building the arrays of a program from its trees.
+     */
+    private static final class Builder {
+        byte[] kinds = new byte[256];
+        int[] operands = new int[256];
+        int[] firstChild = new int[256];
+        int[] childCounts = new int[256];
+        int nodes = 0;
+        int[] children = new int[256];
+        int edges = 0;
+        double[] constants = new double[16];
+        int constantNum = 0;
+        final HashMap<Long, Integer> constantIndex = new HashMap<Long, Integer>();
+        final ArrayList<String> symbolList = new ArrayList<String>();
+        final HashMap<String, Integer> symbolIndex = new HashMap<String, Integer>();
+        final ArrayList<Intrinsic> nativeList = new ArrayList<Intrinsic>();
+        final HashMap<Intrinsic, Integer> nativeIndex = new HashMap<Intrinsic, Integer>();
+
+        final Map<String, Tree<Token>> functions;
+        final String[] names;
+        final int[] arities;
+        final int[] frameSizes;
+        final int[] bodies;
+        final String[][] slotNames;
+        final HashMap<String, Integer> functionIndex = new HashMap<String, Integer>();
+        /* slots of the function being built */
+        HashMap<String, Integer> slots;
+
+        Builder(Map<String, Tree<Token>> functions) {
+            this.functions = functions;
+            int n = functions.size();
+            names = functions.keySet().toArray(new String[n]);
+            arities = new int[n];
+            frameSizes = new int[n];
+            bodies = new int[n];
+            slotNames = new String[n][];
+            for (int i = 0; i < n; ++i)
+                functionIndex.put(names[i], i);
+        }
+
+        FlatProgram build() {
+            for (int fn = 0; fn < names.length; ++fn) {
+                Tree<Token> def = functions.get(names[fn]);
+                ArrayList<String> locals = new ArrayList<String>();
+                slots = new HashMap<String, Integer>();
+                Tree<Token> params = def.getChild(1);
+                for (int i = 0; i < params.getNumberOfChildren(); ++i)
+                    slot(params.getChild(i).getValue().getValue(), locals);
+                collectVals(def.getChild(2), locals);
+                arities[fn] = params.getNumberOfChildren();
+                frameSizes[fn] = locals.size();
+                slotNames[fn] = locals.toArray(new String[locals.size()]);
+                bodies[fn] = emit(def.getChild(2));
+            }
+            return new FlatProgram(this);
+        }
+
+        private void slot(String name, List<String> locals) {
+            if (!slots.containsKey(name)) {
+                slots.put(name, locals.size());
+                locals.add(name);
+            }
+        }
+
+        private void collectVals(Tree<Token> expr, List<String> locals) {
+            if (expr.getValue().getValue().equals("val"))
+                slot(expr.getChild(0).getValue().getValue(), locals);
+            for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+                collectVals(expr.getChild(i), locals);
+        }
+
+        /**
+         * Emits the nodes of an expression, its children first.
+         * @param expr Expression of a function body.
+         * @return Index of the node of the expression.
+         */
+        private int emit(Tree<Token> expr) {
+            Token token = expr.getValue();
+            String value = token.getValue();
+            if (token instanceof Intrinsic)
+                return node(NATIVE, nativeIndex((Intrinsic) token), emitChildren(expr, 0));
+            if (token.getType() == TokenType.NUMBER)
+                return node(NUMBER, constant(number(token)), new int[0]);
+            if (token.getType() == TokenType.NAME) {
+                if (functionIndex.containsKey(value))
+                    return node(GLOBAL, functionIndex.get(value), new int[0]);
+                if (slots.containsKey(value))
+                    return node(LOCAL, slots.get(value), new int[0]);
+                return node(UNBOUND, symbol(value), new int[0]);
+            }
+            if (value.equals("$seq"))
+                return node(SEQ, 0, emitChildren(expr, 0));
+            if (value.equals("val")) {
+                String name = expr.getChild(0).getValue().getValue();
+                int slot = slots.get(name);
+                return node(VAL, functionIndex.containsKey(name) ? ~slot : slot, emitChildren(expr, 1));
+            }
+            if (value.equals("if"))
+                return node(IF, 0, emitChildren(expr, 0));
+            if (value.equals("read"))
+                return node(READ, symbol(expr.getChild(0).getValue().getValue()), new int[0]);
+            if (value.equals("$call")) {
+                String name = expr.getChild(0).getValue().getValue();
+                int[] args = emitChildren(expr.getChild(1), 0);
+                if (slots.containsKey(name))
+                    return node(CALL_LOCAL, slots.get(name), args);
+                if (functionIndex.containsKey(name))
+                    return node(CALL_GLOBAL, functionIndex.get(name), args);
+                return node(CALL_UNBOUND, symbol(name), args);
+            }
+            char op = token instanceof Operation ? ((Operation) token).operator : value.charAt(0);
+            return node(OPERATOR, op, emitChildren(expr, 0));
+        }
+
+        private int[] emitChildren(Tree<Token> expr, int from) {
+            int[] kids = new int[expr.getNumberOfChildren() - from];
+            for (int i = 0; i < kids.length; ++i)
+                kids[i] = emit(expr.getChild(from + i));
+            return kids;
+        }
+
+        private int node(byte kind, int operand, int[] kids) {
+            if (nodes == kinds.length) {
+                kinds = Arrays.copyOf(kinds, nodes * 2);
+                operands = Arrays.copyOf(operands, nodes * 2);
+                firstChild = Arrays.copyOf(firstChild, nodes * 2);
+                childCounts = Arrays.copyOf(childCounts, nodes * 2);
+            }
+            if (edges + kids.length > children.length)
+                children = Arrays.copyOf(children, Math.max(children.length * 2, edges + kids.length));
+            kinds[nodes] = kind;
+            operands[nodes] = operand;
+            firstChild[nodes] = edges;
+            childCounts[nodes] = kids.length;
+            System.arraycopy(kids, 0, children, edges, kids.length);
+            edges += kids.length;
+            return nodes++;
+        }
+
+        private static double number(Token token) {
+            if (token instanceof Numeral)
+                return ((Numeral) token).number;
+            return Double.parseDouble(token.getValue());
+        }
+
+        private int constant(double d) {
+            Long bits = Double.doubleToLongBits(d);
+            Integer i = constantIndex.get(bits);
+            if (i == null) {
+                if (constantNum == constants.length)
+                    constants = Arrays.copyOf(constants, constantNum * 2);
+                constants[constantNum] = d;
+                i = constantNum++;
+                constantIndex.put(bits, i);
+            }
+            return i;
+        }
+
+        private int symbol(String s) {
+            Integer i = symbolIndex.get(s);
+            if (i == null) {
+                i = symbolList.size();
+                symbolList.add(s);
+                symbolIndex.put(s, i);
+            }
+            return i;
+        }
+
+        private int nativeIndex(Intrinsic f) {
+            Integer i = nativeIndex.get(f);
+            if (i == null) {
+                i = nativeList.size();
+                nativeList.add(f);
+                nativeIndex.put(f, i);
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Class for a view of one node of a compact program as the node of
+     * a parsed function tree, with the same values and children.
+     */
+    public static final class Node {
+        /* roles of a node in the tree of a function */
+        private static final byte DEF = 0;      // the def
+        private static final byte NAME = 1;     // name of the def
+        private static final byte PARAMS = 2;   // parameters of the def
+        private static final byte PARAM = 3;    // a parameter; index is its number
+        private static final byte EXPR = 4;     // a node of the body
+        private static final byte CALLEE = 5;   // name called by a call node
+        private static final byte ARGS = 6;     // arguments of a call node
+        private static final byte VAL_NAME = 7; // name of a val node
+        private static final byte PROMPT = 8;   // prompt of a read node
+
+        private final FlatProgram program;
+        private final int fn;
+        private final int index;
+        private final byte role;
+
+        private Node(FlatProgram program, int fn, int index, byte role) {
+            this.program = program;
+            this.fn = fn;
+            this.index = index;
+            this.role = role;
+        }
+
+        /**
+         * Gets the token of this node.
+         * @return A token equal to the one of the parsed tree.
+         */
+        public Token getValue() {
+            FlatProgram p = program;
+            switch (role) {
+                case DEF: return new Token(TokenType.KEYWORD, "def");
+                case NAME: return new Token(TokenType.NAME, p.names[fn]);
+                case PARAMS: case ARGS: return new Token(TokenType.KEYWORD, "$seq");
+                case PARAM: return new Token(TokenType.NAME, p.slotNames[fn][index]);
+                case CALLEE: return new Token(TokenType.NAME, calleeName());
+                case VAL_NAME: return new Token(TokenType.NAME, p.slotNames[fn][slot()]);
+                case PROMPT: return new Token(TokenType.STRING, p.symbols[p.operands[index]]);
+                default: break;
+            }
+            int operand = p.operands[index];
+            switch (p.kinds[index]) {
+                case NUMBER: return new Token(TokenType.NUMBER, p.constants[operand] + "");
+                case LOCAL: return new Token(TokenType.NAME, p.slotNames[fn][operand]);
+                case GLOBAL: return new Token(TokenType.NAME, p.names[operand]);
+                case UNBOUND: return new Token(TokenType.NAME, p.symbols[operand]);
+                case SEQ: return new Token(TokenType.KEYWORD, "$seq");
+                case VAL: return new Token(TokenType.KEYWORD, "val");
+                case IF: return new Token(TokenType.KEYWORD, "if");
+                case READ: return new Token(TokenType.KEYWORD, "read");
+                case NATIVE: return p.natives[operand];
+                case OPERATOR: return operator((char) operand);
+                default: return new Token(TokenType.KEYWORD, "$call");
+            }
+        }
+
+        private static Token operator(char op) {
+            switch (op) {
+                case Operation.EQ: return new Token(TokenType.SYMBOL, "==");
+                case Operation.NE: return new Token(TokenType.SYMBOL, "!=");
+                case Operation.LE: return new Token(TokenType.SYMBOL, "<=");
+                case Operation.GE: return new Token(TokenType.SYMBOL, ">=");
+                case Operation.AND: return new Token(TokenType.KEYWORD, "and");
+                case Operation.OR: return new Token(TokenType.KEYWORD, "or");
+                case Operation.NOT: return new Token(TokenType.KEYWORD, "not");
+                default: return new Token(TokenType.SYMBOL, "" + op);
+            }
+        }
+
+        private String calleeName() {
+            FlatProgram p = program;
+            int operand = p.operands[index];
+            switch (p.kinds[index]) {
+                case CALL_LOCAL: return p.slotNames[fn][operand];
+                case CALL_GLOBAL: return p.names[operand];
+                default: return p.symbols[operand];
+            }
+        }
+
+        private int slot() {
+            int operand = program.operands[index];
+            return operand < 0 ? ~operand : operand;
+        }
+
+        private boolean isCall() {
+            byte kind = program.kinds[index];
+            return kind == CALL_LOCAL || kind == CALL_GLOBAL || kind == CALL_UNBOUND;
+        }
+
+        /**
+         * Gets the number of children of this node.
+         * @return Number of children.
+         */
+        public int getNumberOfChildren() {
+            switch (role) {
+                case DEF: return 3;
+                case PARAMS: return program.arities[fn];
+                case EXPR: break;
+                case ARGS: return program.childCounts[index];
+                default: return 0;
+            }
+            if (isCall() || program.kinds[index] == VAL)
+                return 2;
+            if (program.kinds[index] == READ)
+                return 1;
+            return program.childCounts[index];
+        }
+
+        /**
+         * Gets a child of this node.
+         * @param i Index of the child.
+         * @return View of the child.
+         * @throws IndexOutOfBoundsException If there is no such child.
+         */
+        public Node getChild(int i) {
+            if (i < 0 || i >= getNumberOfChildren())
+                throw new IndexOutOfBoundsException("No child " + i + " of " + getValue());
+            FlatProgram p = program;
+            switch (role) {
+                case DEF:
+                    return i == 0 ? new Node(p, fn, -1, NAME) :
+                        i == 1 ? new Node(p, fn, -1, PARAMS) : new Node(p, fn, p.bodies[fn], EXPR);
+                case PARAMS:
+                    return new Node(p, fn, i, PARAM);
+                case ARGS:
+                    return new Node(p, fn, p.children[p.firstChild[index] + i], EXPR);
+                default:
+                    break;
+            }
+            if (isCall())
+                return new Node(p, fn, index, i == 0 ? CALLEE : ARGS);
+            if (p.kinds[index] == READ)
+                return new Node(p, fn, index, PROMPT);
+            if (p.kinds[index] == VAL) {
+                if (i == 0)
+                    return new Node(p, fn, index, VAL_NAME);
+                return new Node(p, fn, p.children[p.firstChild[index]], EXPR);
+            }
+            return new Node(p, fn, p.children[p.firstChild[index] + i], EXPR);
+        }
+
+        /**
+         * Materializes the subtree of this node.
+         * @return A tree equal to the parsed one.
+         */
+        public Tree<Token> toTree() {
+            Tree<Token> tree = new Tree<Token>(getValue());
+            int n = getNumberOfChildren();
+            for (int i = 0; i < n; ++i)
+                tree.addChild(getChild(i).toTree());
+            return tree;
+        }
+
+        /**
+         * Returns the subtree of this node in the form of Tree.toString().
+         * @return A representation of this node.
+         */
+        @Override
+        public String toString() {
+            return toTree().toString();
+        }
+    }
+}
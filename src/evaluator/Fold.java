@@ -0,0 +1,255 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Class for a linearly recursive Funl function recognized as a fold,
+ * so that the evaluator can run it as a loop in a single scope instead
+ * of a chain of nested scopes. The function must have the shape
+ * <pre>
+ * def f params = e1, ..., ek,
+ *     if cond then base
+ *     else s1, ..., sm, step
+ *     end
+ * end
+ * </pre>
+ * (or with the branches swapped), where only step calls f, and step is
+ * one of f(args) (tail recursion), x op f(args) with an arithmetic op,
+ * or combine(x, f(args)). The loop evaluates x and the new arguments of
+ * every iteration in the order the recursion would, then combines the
+ * elements with the base value from the last one back to the first.
+ * @version Oct 19, 2026
+ */
+class Fold {
+    /* marks functions recognized as no fold */
+    static final Fold NONE = new Fold();
+
+    /**
+     * Result of evaluating a chunk of iterations on an isolate.
+     */
+    static final class Chunk {
+        double value;         // elements combined from left to right
+        boolean empty = true; // no elements yet
+        int stop = -1;        // iteration reaching the base case, if any
+        Tree<Token> base;     // base value at stop
+        boolean failed;       // the iterations need to be rerun in order
+    }
+
+    /**
+     * Elements of a fold already combined from left to right, along
+     * with the arguments of the iteration following them.
+     */
+    static final class Head {
+        char op;
+        double value;
+        boolean empty = true;
+        int length;
+        HashMap<String, Tree<Token>> frame;
+    }
+
+    final String name;
+    final String[] params;
+    final Tree<Token>[] prologue; // expressions before the if
+    final Tree<Token> cond;
+    final boolean guarded;        // the condition needs a runtime check
+    final boolean baseOnTrue;     // the then branch is the base case
+    final Tree<Token> base;
+    final Tree<Token>[] steps;    // expressions before the step
+    final char op;                // arithmetic combining elements, or 0
+    final Tree<Token> combine;    // call of a combining function, or null
+    final Tree<Token> element;    // element of an iteration; null if tail recursive
+    final Tree<Token>[] args;     // arguments of the recursive call
+    final boolean parallel;       // iterations may run out of order on isolates
+
+    private Fold() {
+        name = null;
+        params = null;
+        prologue = null;
+        cond = null;
+        guarded = true;
+        baseOnTrue = false;
+        base = null;
+        steps = null;
+        op = 0;
+        combine = null;
+        element = null;
+        args = null;
+        parallel = false;
+    }
+
+    private Fold(Tree<Token> def, Tree<Token> ifExpr, boolean baseOnTrue, Tree<Token> stepExpr,
+            Tree<Token> recursion) {
+        name = def.getChild(0).getValue().getValue();
+        Tree<Token> p = def.getChild(1);
+        params = new String[p.getNumberOfChildren()];
+        for (int i = 0; i < params.length; ++i)
+            params[i] = p.getChild(i).getValue().getValue();
+        Tree<Token> body = def.getChild(2);
+        prologue = children(body, body.getNumberOfChildren() - 1);
+        cond = ifExpr.getChild(0);
+        guarded = !(ifExpr.getValue() instanceof Operation) ||
+                ((Operation) ifExpr.getValue()).isGuarded(Operation.LEFT);
+        this.baseOnTrue = baseOnTrue;
+        base = ifExpr.getChild(baseOnTrue ? 1 : 2);
+        Tree<Token> step = ifExpr.getChild(baseOnTrue ? 2 : 1);
+        steps = children(step, step.getNumberOfChildren() - 1);
+        if (stepExpr == recursion) {
+            op = 0;
+            combine = null;
+            element = null;
+        }
+        else if (stepExpr.getValue().getValue().equals("$call")) {
+            op = 0;
+            combine = stepExpr;
+            element = stepExpr.getChild(1).getChild(0);
+        }
+        else {
+            op = stepExpr.getValue().getValue().charAt(0);
+            combine = null;
+            element = stepExpr.getChild(0);
+        }
+        args = children(recursion.getChild(1), recursion.getChild(1).getNumberOfChildren());
+        // speculative iterations on isolates must not have effects, and
+        // the arguments of all iterations must be computable up front
+        HashSet<String> vals = new HashSet<String>();
+        collectVals(body, vals);
+        boolean independent = true;
+        for (Tree<Token> arg : args)
+            for (String val : vals)
+                independent &= !mentions(arg, val);
+        parallel = element != null && independent && (combine != null || op == '+' || op == '*') &&
+                !contains(body, "read") && !contains(body, "def");
+    }
+
+    /**
+     * Recognizes a function definition as a fold.
+     * @param def Tree of the function definition.
+     * @return The fold, or NONE if the function is no fold.
+     */
+    static Fold recognize(Tree<Token> def) {
+        String name = def.getChild(0).getValue().getValue();
+        Tree<Token> body = def.getChild(2);
+        int last = body.getNumberOfChildren() - 1;
+        if (last < 0 || !body.getChild(last).getValue().getValue().equals("if"))
+            return NONE;
+        for (int i = 0; i < last; ++i)
+            if (mentions(body.getChild(i), name))
+                return NONE;
+        Tree<Token> ifExpr = body.getChild(last);
+        if (mentions(ifExpr.getChild(0), name))
+            return NONE;
+        boolean thenRecurs = mentions(ifExpr.getChild(1), name);
+        if (thenRecurs == mentions(ifExpr.getChild(2), name))
+            return NONE;
+        Tree<Token> step = ifExpr.getChild(thenRecurs ? 1 : 2);
+        int s = step.getNumberOfChildren() - 1;
+        for (int i = 0; i < s; ++i)
+            if (mentions(step.getChild(i), name))
+                return NONE;
+        Tree<Token> stepExpr = step.getChild(s);
+        Tree<Token> recursion;
+        if (isRecursion(stepExpr, name))
+            recursion = stepExpr;
+        else if (isOperator(stepExpr) && isRecursion(stepExpr.getChild(1), name) &&
+                !mentions(stepExpr.getChild(0), name))
+            recursion = stepExpr.getChild(1);
+        else if (stepExpr.getValue() instanceof CallSite &&
+                !mentions(stepExpr.getChild(0), name) &&
+                stepExpr.getChild(1).getNumberOfChildren() == 2 &&
+                isRecursion(stepExpr.getChild(1).getChild(1), name) &&
+                !mentions(stepExpr.getChild(1).getChild(0), name))
+            recursion = stepExpr.getChild(1).getChild(1);
+        else
+            return NONE;
+        Tree<Token> args = recursion.getChild(1);
+        if (args.getNumberOfChildren() != def.getChild(1).getNumberOfChildren())
+            return NONE;
+        for (int i = 0; i < args.getNumberOfChildren(); ++i)
+            if (mentions(args.getChild(i), name))
+                return NONE;
+        return new Fold(def, ifExpr, !thenRecurs, stepExpr, recursion);
+    }
+
+    /**
+     * Gets the arithmetic a combining function performs on its two
+     * parameters in order, as in def add x y = x + y end.
+     * @param func Function definition.
+     * @return One of + - * /, or 0 if the function does anything else.
+     */
+    static char operator(Tree<Token> func) {
+        if (func.getNumberOfChildren() != 3 || func.getChild(1).getNumberOfChildren() != 2 ||
+                func.getChild(2).getNumberOfChildren() != 1)
+            return 0;
+        Tree<Token> expr = func.getChild(2).getChild(0);
+        if (!isOperator(expr))
+            return 0;
+        String x = func.getChild(1).getChild(0).getValue().getValue();
+        String y = func.getChild(1).getChild(1).getValue().getValue();
+        String left = name(expr.getChild(0));
+        String right = name(expr.getChild(1));
+        char op = expr.getValue().getValue().charAt(0);
+        if (x.equals(left) && y.equals(right) && !x.equals(y))
+            return op;
+        // commutative
+        if (y.equals(left) && x.equals(right) && !x.equals(y) && (op == '+' || op == '*'))
+            return op;
+        return 0;
+    }
+
+    private static boolean isRecursion(Tree<Token> expr, String name) {
+        return expr.getValue() instanceof CallSite &&
+                ((CallSite) expr.getValue()).binding == CallSite.GLOBAL &&
+                expr.getChild(0).getValue().getValue().equals(name);
+    }
+
+    private static boolean isOperator(Tree<Token> expr) {
+        String value = expr.getValue().getValue();
+        return expr.getValue().getType() == TokenType.SYMBOL && value.length() == 1 &&
+                "+-*/".contains(value) && expr.getNumberOfChildren() == 2;
+    }
+
+    private static String name(Tree<Token> expr) {
+        return expr.getValue().getType() == TokenType.NAME ? expr.getValue().getValue() : null;
+    }
+
+    /**
+     * Checks whether an expression refers to a name, by calling it
+     * or passing it as a value.
+     * @param expr Expression to be searched.
+     * @param name Name to be searched for.
+     * @return True if the name occurs in the expression.
+     */
+    private static boolean mentions(Tree<Token> expr, String name) {
+        if (expr.getValue().getType() == TokenType.NAME && expr.getValue().getValue().equals(name))
+            return true;
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (mentions(expr.getChild(i), name))
+                return true;
+        return false;
+    }
+
+    private static boolean contains(Tree<Token> expr, String keyword) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals(keyword))
+            return true;
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (contains(expr.getChild(i), keyword))
+                return true;
+        return false;
+    }
+
+    private static void collectVals(Tree<Token> expr, HashSet<String> names) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals("val"))
+            names.add(expr.getChild(0).getValue().getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collectVals(expr.getChild(i), names);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Tree<Token>[] children(Tree<Token> tree, int n) {
+        Tree<Token>[] children = new Tree[n];
+        for (int i = 0; i < n; ++i)
+            children[i] = tree.getChild(i);
+        return children;
+    }
+}
@@ -0,0 +1,155 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class for the table of Funl functions, safe to share between
+ * evaluators running on different threads. The table publishes
+ * immutable, versioned snapshots: writers copy the current snapshot,
+ * apply their change, and install the copy with a compare-and-set,
+ * so definitions never take a lock and never tear. Readers take a
+ * snapshot once per evaluation and then look functions up in a
+ * plain HashMap, paying no synchronization per lookup and seeing
+ * the same functions for the whole evaluation.
+ * @version Oct 19, 2026
+ */
+public class FunctionTable {
+    /**
+     * An immutable version of the function table.
+     */
+    public static final class Snapshot {
+        /* never modified once published */
+        final HashMap<String, Tree<Token>> functions;
+        final long version;
+
+        Snapshot(HashMap<String, Tree<Token>> functions, long version) {
+            this.functions = functions;
+            this.version = version;
+        }
+
+        /**
+         * Gets a function by name.
+         * @param funcName Name of the function.
+         * @return The function definition, or null if not defined.
+         */
+        public Tree<Token> get(String funcName) {
+            return functions.get(funcName);
+        }
+
+        /**
+         * Gets the version of this snapshot; every change to the
+         * table publishes a snapshot with a higher version.
+         * @return Version of this snapshot.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Gets the number of functions in this snapshot.
+         * @return Number of functions.
+         */
+        public int size() {
+            return functions.size();
+        }
+    }
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>(
+            new Snapshot(new HashMap<String, Tree<Token>>(), 0));
+
+    /**
+     * Gets the current snapshot of this table.
+     * @return The current snapshot.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Gets a function from the current snapshot.
+     * @param funcName Name of the function.
+     * @return The function definition, or null if not defined.
+     */
+    public Tree<Token> get(String funcName) {
+        return current.get().get(funcName);
+    }
+
+    /**
+     * Gets the version of the current snapshot.
+     * @return Current version.
+     */
+    public long getVersion() {
+        return current.get().version;
+    }
+
+    /**
+     * Gets the number of functions in the current snapshot.
+     * @return Number of functions.
+     */
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Adds or replaces a function.
+     * @param funcName Name of the function.
+     * @param func Function definition.
+     * @return The snapshot published.
+     */
+    public Snapshot define(String funcName, Tree<Token> func) {
+        HashMap<String, Tree<Token>> change = new HashMap<String, Tree<Token>>();
+        change.put(funcName, func);
+        return defineAll(change);
+    }
+
+    /**
+     * Adds or replaces functions at once, keeping all others.
+     * @param functions Function definitions by name.
+     * @return The snapshot published.
+     */
+    public Snapshot defineAll(Map<String, Tree<Token>> functions) {
+        while (true) {
+            Snapshot old = current.get();
+            HashMap<String, Tree<Token>> copy = new HashMap<String, Tree<Token>>(old.functions);
+            copy.putAll(functions);
+            Snapshot next = new Snapshot(copy, old.version + 1);
+            if (current.compareAndSet(old, next))
+                return next;
+        }
+    }
+
+    /**
+     * Replaces all functions at once.
+     * @param functions Function definitions by name.
+     * @return The snapshot published.
+     */
+    public Snapshot replaceAll(Map<String, Tree<Token>> functions) {
+        HashMap<String, Tree<Token>> copy = new HashMap<String, Tree<Token>>(functions);
+        while (true) {
+            Snapshot old = current.get();
+            Snapshot next = new Snapshot(copy, old.version + 1);
+            if (current.compareAndSet(old, next))
+                return next;
+        }
+    }
+
+    /**
+     * Removes a function.
+     * @param funcName Name of the function.
+     * @return The snapshot published.
+     */
+    public Snapshot remove(String funcName) {
+        while (true) {
+            Snapshot old = current.get();
+            if (!old.functions.containsKey(funcName))
+                return old;
+            HashMap<String, Tree<Token>> copy = new HashMap<String, Tree<Token>>(old.functions);
+            copy.remove(funcName);
+            Snapshot next = new Snapshot(copy, old.version + 1);
+            if (current.compareAndSet(old, next))
+                return next;
+        }
+    }
+}
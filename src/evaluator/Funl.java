@@ -2,6 +2,9 @@ package evaluator;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.text.SimpleDateFormat;
 import javax.swing.JFileChooser;
 
@@ -13,26 +16,158 @@ import javax.swing.JFileChooser;
 public class Funl {
     /* members */
     private boolean inREPL = false;
-    private boolean readCalled = false;
+    private boolean readOnly = false;
+    private int scopeDepth = 0;
     private File file;
-    private JFileChooser chooser = new JFileChooser();
+    private JFileChooser chooser;
+    private AllocationCounter allocations = new AllocationCounter();
+    private InputProvider input = new ConsoleInputProvider(sc);
+    private Profiler profiler; // null when profiling is off
+    private TraceBuffer trace; // null when tracing is off
+    private Appendable traceOnError;
+    private boolean instrumented = false; // profiling or tracing is on
+    private FunlMetrics metrics; // null when metrics are off
+    private int peakDepth = 0;
+    private long startNanos = 0;
+    private boolean loopFusion = true;
+    private boolean callByNeed = false;
+    private boolean sharing = false; // common subexpressions are evaluated once
+    private int tierThreshold = 0; // calls before a function is compiled; 0 for never
+    private int specializationBudget = 0; // nodes a residual may grow by; 0 for none
+    private Executor foldExecutor; // null when folds run sequentially
+    private int foldParallelism = 1;
+    private ParseCache parseCache; // null when input is always parsed
+    private NumericMode numbers = NumericMode.DOUBLE;
+    private Intrinsics intrinsics = new Intrinsics(); // bound to this evaluator
     /* main data structures */
-    HashMap<String, Tree<Token>> functions = new HashMap<String, Tree<Token>>();
+    private FunctionTable table = new FunctionTable();
+    // snapshot of the function table used by the current evaluation
+    HashMap<String, Tree<Token>> functions = table.snapshot().functions;
     Stack<HashMap<String, Tree<Token>>> valueStack = new Stack<HashMap<String, Tree<Token>>>();
     /* static members */
     private static Scanner sc = new Scanner(System.in);
-    private static int scopeDepth = 0;
     private static final int MAX_SCOPE_DEPTH = 1000; // limit for nested scope depth
+    private static final int MAX_FOLD_LENGTH = 1000000; // limit for iterations of a fused fold
+    private static final int FOLD_CHUNK = 1024; // iterations per task of a parallel fold
+    
+    /**
+     * Constructor for Funl.
+     */
+    public Funl() { }
+    
+    /**
+     * Constructor for an isolate sharing the functions of another
+     * evaluator; the functions are read-only to the isolate.
+     * @param table Function table to be shared.
+     */
+    private Funl(FunctionTable table) {
+        this.table = table;
+        this.functions = table.snapshot().functions;
+        this.readOnly = true;
+        this.input = new BatchInputProvider();
+        createNewScope();
+    }
+    
+    /**
+     * Creates an isolate: a separate evaluation context that shares
+     * the function table of this evaluator without re-parsing it, and
+     * sees functions redefined here from its next evaluation on.
+     * The isolate cannot define functions, and its read expressions
+     * get no input unless an input provider is set. It computes in
+     * the numeric mode of this evaluator, and calls by need if this
+     * evaluator does.
+     * @return A new isolate.
+     */
+    public Funl newIsolate() {
+        Funl isolate = new Funl(table);
+        isolate.numbers = numbers;
+        isolate.callByNeed = callByNeed;
+        isolate.tierThreshold = tierThreshold;
+        isolate.specializationBudget = specializationBudget;
+        isolate.sharing = sharing;
+        isolate.parseCache = parseCache;
+        return isolate;
+    }
+    
+    /**
+     * Discards all scopes and allocation counts, restoring this
+     * evaluator to a fresh state without touching its functions.
+     */
+    public void reset() {
+        clearScope();
+        createNewScope();
+        long limit = allocations.getLimit();
+        allocations = new AllocationCounter();
+        allocations.setLimit(limit);
+        if (readOnly)
+            input = new BatchInputProvider();
+    }
     
     /**
      * Takes a Funl program (one or more function definitions), 
-     * parse it, and save the functions.
+     * parse it, and save the functions. Bound intrinsics replace
+     * functions of the same name in the program.
      * @param functionDefinitions String to be parsed.
      */
     public void define(String functionDefinitions) {
+        defineProgram(functionDefinitions);
+    }
+    
+    /**
+     * Defines the functions of a program, as define() does.
+     * @param functionDefinitions String to be parsed.
+     * @return Number of functions in the program.
+     */
+    private int defineProgram(String functionDefinitions) {
+        checkWritable();
+        long start = System.nanoTime();
+        Parser parser = new Parser(functionDefinitions);
+        parser.program();
+        if (metrics != null)
+            metrics.recordDefine(System.nanoTime() - start);
+        HashMap<String, Tree<Token>> all = new HashMap<String, Tree<Token>>(parser.functions);
+        all.putAll(intrinsics.definitions());
+        functions = table.replaceAll(all).functions;
+        return parser.functions.size();
+    }
+    
+    /**
+     * Takes a Funl program (one or more function definitions), 
+     * parse it, and add or replace the functions, keeping all
+     * others. Evaluations already running, including those of
+     * isolates, keep seeing the functions as they were.
+     * @param functionDefinitions String to be parsed.
+     */
+    public void redefine(String functionDefinitions) {
+        checkWritable();
+        long start = System.nanoTime();
         Parser parser = new Parser(functionDefinitions);
         parser.program();
-        functions = parser.functions;
+        if (metrics != null)
+            metrics.recordDefine(System.nanoTime() - start);
+        functions = table.defineAll(parser.functions).functions;
+    }
+    
+    /**
+     * Binds functions implemented in Java to their Funl names, adding
+     * them to the functions of this evaluator. They stay bound across
+     * define(), replacing functions of the same name in programs (as
+     * sqrt and abs of funlByDave.txt by Intrinsics.math()), while
+     * redefine() and def expressions can still replace them.
+     * @param intrinsics Registry of the functions.
+     */
+    public void bindIntrinsics(Intrinsics intrinsics) {
+        checkWritable();
+        this.intrinsics.bindAll(intrinsics);
+        functions = table.defineAll(intrinsics.definitions()).functions;
+    }
+    
+    /**
+     * Gets the function table of this evaluator.
+     * @return The function table, shared with its isolates.
+     */
+    public FunctionTable getFunctionTable() {
+        return table;
     }
     
     /**
@@ -42,6 +177,381 @@ public class Funl {
      * @return Another Funl expression.
      */
     public Tree<Token> eval(Tree<Token> expr) {
+        int baseDepth = begin();
+        boolean failed = true;
+        try {
+            Tree<Token> retVal = evaluate(expr);
+            failed = false;
+            return retVal;
+        }
+        catch (StackOverflowError e) {
+            throw scopeOverflow(
+                    "Runtime Exception: ran out of stack at nested scope depth of " + valueStack.size());
+        }
+        finally {
+            end(baseDepth, failed);
+        }
+    }
+    
+    /**
+     * Gets a function by name, so that it can be called repeatedly
+     * through call() without parsing or resolving it again.
+     * @param funcName Name of the function.
+     * @return The function definition.
+     * @throws RuntimeException If no such function is defined.
+     */
+    public Tree<Token> function(String funcName) {
+        Tree<Token> func = table.get(funcName);
+        if (func == null)
+            throw new RuntimeException(
+                    "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
+        return func;
+    }
+
+    /**
+     * Compacts the functions currently defined into a FlatProgram,
+     * which evaluates calls in doubles whatever the numeric mode.
+     * @return The compact program.
+     */
+    public FlatProgram compact() {
+        return FlatProgram.of(table.snapshot());
+    }
+
+    /**
+     * Links the functions currently defined, as a step after define():
+     * resolves every function name called and every name referenced
+     * in their bodies, so that the calls and references proven to
+     * resolve run without checking names and argument counts until
+     * functions are redefined. Calls through parameters and vals are
+     * still checked when they run.
+     * @return The unresolved names and argument count mismatches, as
+     * "function: problem", in the order of the function names; empty
+     * if there is none.
+     */
+    public List<String> link() {
+        return Linker.link(table.snapshot().functions);
+    }
+
+    /**
+     * Calls a function with numbers as arguments, as a new evaluation.
+     * @param func Function definition, as returned by function().
+     * @param args Arguments of the call.
+     * @return Another Funl expression.
+     */
+    public Tree<Token> call(Tree<Token> func, double... args) {
+        String funcName = func.getChild(0).getValue().getValue();
+        checkArgNum(funcName, func, args.length);
+        int baseDepth = begin();
+        boolean failed = true;
+        try {
+            HashMap<String, Tree<Token>> map = new HashMap<String, Tree<Token>>();
+            allocations.frame();
+            for (int i = 0; i < args.length; ++i)
+                map.put(func.getChild(1).getChild(i).getValue().getValue(), number(args[i]));
+            Tree<Token> retVal = invoke(func, map);
+            failed = false;
+            return retVal;
+        }
+        catch (StackOverflowError e) {
+            throw scopeOverflow(
+                    "Runtime Exception: ran out of stack at nested scope depth of " + valueStack.size());
+        }
+        finally {
+            end(baseDepth, failed);
+        }
+    }
+    
+    /**
+     * Starts a new evaluation: takes a snapshot of the function 
+     * table and resets per-evaluation counts.
+     * @return Size of the stack when the evaluation starts.
+     */
+    private int begin() {
+        functions = table.snapshot().functions;
+        allocations.reset();
+        peakDepth = valueStack.size();
+        if (trace != null)
+            trace.reset();
+        if (metrics != null)
+            startNanos = System.nanoTime();
+        return valueStack.size();
+    }
+    
+    /**
+     * Finishes an evaluation: discards scopes left behind if it was
+     * aborted and records its metrics.
+     * @param baseDepth Size of the stack when the evaluation started.
+     * @param failed True if the evaluation threw an exception.
+     */
+    private void end(int baseDepth, boolean failed) {
+        if (failed) {
+            unwind(baseDepth);
+            if (trace != null && traceOnError != null)
+                dumpTrace();
+        }
+        if (metrics != null)
+            metrics.recordEvaluation(System.nanoTime() - startNanos, peakDepth, failed);
+    }
+    
+    /**
+     * Sets the maximum number of allocations (frames, values and
+     * nodes) a single evaluation may make.
+     * @param limit Allocation cap; 0 for unlimited.
+     */
+    public void setAllocationLimit(long limit) {
+        allocations.setLimit(limit);
+    }
+    
+    /**
+     * Gets the allocation counts of this evaluator.
+     * @return Allocation counter of the latest and all evaluations.
+     */
+    public AllocationCounter getAllocations() {
+        return allocations;
+    }
+    
+    /**
+     * Attaches a profiler recording the calls of every function.
+     * @param profiler Profiler to be attached; null to stop profiling.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        instrumented = profiler != null || trace != null;
+    }
+    
+    /**
+     * Attaches a trace buffer recording function calls, arguments
+     * and return values of every evaluation.
+     * @param trace Trace buffer to be attached; null to stop tracing.
+     */
+    public void setTrace(TraceBuffer trace) {
+        this.trace = trace;
+        instrumented = profiler != null || trace != null;
+    }
+    
+    /**
+     * Gets the trace buffer attached to this evaluator; it holds
+     * the events of the latest evaluation and can be dumped.
+     * @return The trace buffer, or null if tracing is off.
+     */
+    public TraceBuffer getTrace() {
+        return trace;
+    }
+    
+    /**
+     * Sets where the trace of a failed evaluation is dumped.
+     * @param out Destination of dumps; null to not dump on error.
+     */
+    public void setTraceOnError(Appendable out) {
+        traceOnError = out;
+    }
+    
+    /**
+     * Attaches metrics recording every evaluation and define of this
+     * evaluator; one FunlMetrics may be shared by many evaluators.
+     * @param metrics Metrics to be attached; null to stop recording.
+     */
+    public void setMetrics(FunlMetrics metrics) {
+        this.metrics = metrics;
+        if (metrics != null)
+            metrics.watch(table);
+    }
+    
+    /**
+     * Gets the metrics attached to this evaluator.
+     * @return The metrics, or null if metrics are off.
+     */
+    public FunlMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Gets the profiler attached to this evaluator.
+     * @return The profiler, or null if profiling is off.
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+    
+    /**
+     * Evaluates a Funl expression on the given executor. Read
+     * expressions wait on the input provider of this evaluator,
+     * so with an AsyncInputProvider and an executor of lightweight
+     * threads a waiting evaluation holds no platform thread.
+     * This evaluator must not be used by other threads meanwhile.
+     * @param expr Funl expression to be parsed.
+     * @param executor Executor to run the evaluation on.
+     * @return A future of another Funl expression.
+     */
+    public CompletableFuture<Tree<Token>> evalAsync(final Tree<Token> expr, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> eval(expr), executor);
+    }
+    
+    /**
+     * Sets the source of numbers for read expressions.
+     * @param input Input provider to be used.
+     */
+    public void setInputProvider(InputProvider input) {
+        if (input == null)
+            throw new IllegalArgumentException("Input provider must not be null");
+        this.input = input;
+    }
+    
+    /**
+     * Gets the source of numbers for read expressions.
+     * @return Input provider in use.
+     */
+    public InputProvider getInputProvider() {
+        return input;
+    }
+    
+    /**
+     * Sets whether functions recognized as recursive folds, such as
+     * for and factorial, run as loops in a single scope. Fused folds
+     * are not limited by the nested scope depth, and are not fused
+     * while profiling or tracing.
+     * @param on True to fuse folds (the default); false to always
+     * evaluate recursion as written.
+     */
+    public void setLoopFusion(boolean on) {
+        loopFusion = on;
+    }
+    
+    /**
+     * Sets whether functions evaluate a pure subexpression repeated on
+     * a path once, reading its value where it is repeated; see
+     * CommonSubexpressions. Nothing is evaluated earlier than written,
+     * and a value found in a branch of an if is only reused in that
+     * branch. Subexpressions are not shared in fused folds, nor while
+     * calling by need.
+     * @param on True to share common subexpressions; false to always
+     * evaluate bodies as written (the default).
+     */
+    public void setCommonSubexpressionElimination(boolean on) {
+        sharing = on;
+    }
+    
+    /**
+     * Sets the cache input is parsed through, which may be shared with
+     * other evaluators; isolates created afterwards share it. Function
+     * definitions are always parsed.
+     * @param cache Cache of parsed input; null to parse all input.
+     */
+    public void setParseCache(ParseCache cache) {
+        parseCache = cache;
+    }
+
+    /**
+     * Sets whether calls pass their arguments by need: an argument is
+     * evaluated when its parameter is first used, if ever, and at most
+     * once. Arguments of parameters every path of a function uses are
+     * still evaluated right away, and the library aliases of and and
+     * or skip their second argument when the first decides. Folds
+     * combining with a function are not fused, and no fold runs in
+     * parallel.
+     * @param on True to call by need; false to evaluate all arguments
+     * before the call (the default).
+     */
+    public void setCallByNeed(boolean on) {
+        callByNeed = on;
+    }
+
+    /**
+     * Sets the number of calls and fold iterations after which a
+     * function is compiled, with every function it may reach, to
+     * Bytecode, as a Tier. Calls of a compiled function passing only
+     * numbers run as bytecode; others, and calls the bytecode fails,
+     * go back to the tree interpreter. Functions that read input are
+     * never compiled, nor are any while calling by need, computing in
+     * an exact numeric mode, limiting allocations, or profiling or
+     * tracing. Compiled calls
+     * nest in their own frames, not in the scopes of this evaluator.
+     * @param threshold Number of calls; 0 to interpret all functions
+     * (the default).
+     */
+    public void setTierThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Tier threshold must not be negative");
+        tierThreshold = threshold;
+    }
+    
+    /**
+     * Sets how far calls passing numbers or function names as
+     * arguments are specialized on them. Such a call runs a residual
+     * function taking only the other arguments, in which the constants
+     * are put in, computations on them are done, and calls with only
+     * constant or local arguments are unrolled until the residual has
+     * grown by the given number of nodes; see Specializer. Residuals
+     * are kept per function and constants until the functions change.
+     * A fused fold runs its residual only if it is unrolled in full,
+     * and no call is specialized while calling by need, computing in
+     * an exact numeric mode, or profiling or tracing.
+     * @param budget Number of nodes; 0 to specialize no call (the
+     * default).
+     */
+    public void setSpecializationBudget(int budget) {
+        if (budget < 0)
+            throw new IllegalArgumentException("Specialization budget must not be negative");
+        specializationBudget = budget;
+    }
+    
+    /**
+     * Lets long fused folds combining with + or * (such as add and
+     * multiply) split their iterations across isolates running on the
+     * given executor. Elements are then combined in a different order,
+     * which may change floating-point results in the last digits.
+     * Iterations that fail or read input on an isolate are rerun in
+     * order on this evaluator, and isolates do not count against its
+     * allocation limit.
+     * @param executor Executor to run the isolates on; null to run
+     * folds sequentially (the default).
+     * @param parallelism Number of isolates working on a fold.
+     */
+    public void setParallelFolds(Executor executor, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        foldExecutor = executor;
+        foldParallelism = parallelism;
+    }
+    
+    /**
+     * Sets the numbers this evaluator computes with: doubles (the
+     * default), exact integers promoting to BigInteger on overflow, or
+     * BigDecimals; see NumericMode. Folds run in parallel only with
+     * doubles.
+     * @param mode Numeric mode.
+     */
+    public void setNumericMode(NumericMode mode) {
+        if (mode == null)
+            throw new IllegalArgumentException("Numeric mode must not be null");
+        numbers = mode;
+    }
+    
+    /**
+     * Gets the numbers this evaluator computes with.
+     * @return Numeric mode.
+     */
+    public NumericMode getNumericMode() {
+        return numbers;
+    }
+    
+    /**
+     * Evaluates a Funl expression within current evaluation.
+     * @param expr Funl expression to be parsed.
+     * @return Another Funl expression.
+     */
+    private Tree<Token> evaluate(Tree<Token> expr) {
+        /* dispatch the most frequent nodes by their token class */
+        Token token = expr.getValue();
+        if (token instanceof Operation) {
+            Operation op = (Operation) token;
+            if (op.operator == 0)
+                return evalIfExpr(expr);
+            return op.isLogical() ? evalLogicalExpr(expr) : evalArithmeticExpr(expr);
+        }
+        if (token instanceof CallSite) {
+            return evalFunctionCall(expr);
+        }
         /* evaluate single function definition */
         if (expr.getValue().getValue().equals("def")) {
             return evalFunctionDef(expr);
@@ -59,10 +569,15 @@ public class Funl {
         if (expr.getValue().getValue().equals("val")) {
             return evalValueDef(expr);
         }
-        // evaluate arithmetic expression
-        if ("+-*/".contains(expr.getValue().getValue())) {
+        // evaluate arithmetic expression or comparison
+        if ("+-*/".contains(expr.getValue().getValue()) || expr.getValue() instanceof Operation &&
+                ((Operation) expr.getValue()).isComparison()) {
             return evalArithmeticExpr(expr);
         }
+        // evaluate logical expression
+        if (expr.getValue() instanceof Operation && ((Operation) expr.getValue()).isLogical()) {
+            return evalLogicalExpr(expr);
+        }
         // evaluate a single name or number
         if (expr.getValue().getType() == TokenType.NAME ||
                 expr.getValue().getType() == TokenType.NUMBER) {
@@ -76,6 +591,10 @@ public class Funl {
         if (expr.getValue().getValue().equals("read")) {
             return evalReadExpr(expr);
         }
+        // evaluate body of an intrinsic
+        if (expr.getValue() instanceof Intrinsic) {
+            return evalIntrinsic(expr);
+        }
         assert false;
         return null;
     }
@@ -86,7 +605,8 @@ public class Funl {
      * @return Another Funl expression.
      */
     private Tree<Token> evalFunctionDef(Tree<Token> expr) {
-        functions.put(expr.getChild(0).getValue().getValue(), expr);
+        checkWritable();
+        functions = table.define(expr.getChild(0).getValue().getValue(), expr).functions;
         return expr;
     }
     
@@ -96,78 +616,844 @@ public class Funl {
      * @return Another Funl expression.
      */
     private Tree<Token> evalFunctionCall(Tree<Token> expr) {
-        // check function name
+        // check function name and number of params
         String funcName = expr.getChild(0).getValue().getValue();
-        if ((!valueStack.isEmpty() && !valueStack.peek().containsKey(funcName)) && 
-                !functions.containsKey(funcName))
-            throw new RuntimeException(
-                    "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
-        // check number of params
-        Tree<Token> func;
-        if (!valueStack.isEmpty() && valueStack.peek().containsKey(funcName))
-            func = fetch(funcName);
-        else
-            func = functions.get(funcName);
         int argNum = expr.getChild(1).getNumberOfChildren();
-        int paramNum = func.getChild(1).getNumberOfChildren();
-        if (argNum != paramNum)
-            throw new RuntimeException(
-                    "Runtime Exception: number of argument(s) not match for function '" + funcName + "'.\n" +
-                    "Expected: " + paramNum + ", actual: " + argNum);
+        Tree<Token> func;
+        CallSite site = null;
+        if (expr.getValue() instanceof CallSite) {
+            site = (CallSite) expr.getValue();
+            func = resolve(site, funcName, argNum);
+        }
+        else {
+            if (containsKeyOnScope(funcName))
+                func = fetch(funcName);
+            else
+                func = functions.get(funcName);
+            if (func == null)
+                throw new RuntimeException(
+                        "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
+            checkArgNum(funcName, func, argNum);
+        }
+        if (!instrumented && func.getValue() instanceof Definition) {
+            // a direct call knows its alias from the inline cache
+            Tree<Token> alias = site != null && site.cachedGlobal(functions) == func ?
+                    site.cachedAlias(functions) : aliasOf(func, functions);
+            if (alias != null)
+                return evalAlias(alias, expr.getChild(1));
+        }
         // evaluate each argument
         HashMap<String, Tree<Token>> map = new HashMap<String, Tree<Token>>();
+        allocations.frame();
+        if (specializationBudget > 0 && site != null && !callByNeed && !instrumented &&
+                numbers.isDouble() && site.cachedGlobal(functions) == func &&
+                func.getValue() instanceof Definition) {
+            CallSite.Residual residual = specialize(site, func, expr.getChild(1));
+            if (residual.function != func) {
+                Tree<Token> params = residual.function.getChild(1);
+                for (int i = 0; i < residual.args.length; ++i)
+                    map.put(params.getChild(i).getValue().getValue(),
+                            evaluate(expr.getChild(1).getChild(residual.args[i])));
+                return invoke(residual.function, map);
+            }
+        }
+        if (tierThreshold > 0 && !callByNeed && !instrumented && numbers.isDouble() &&
+                allocations.getLimit() == 0 && func.getValue() instanceof Definition) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Tree<Token>[] args = new Tree[argNum];
+            for (int i = 0; i < argNum; ++i)
+                args[i] = evaluate(expr.getChild(1).getChild(i));
+            Tree<Token> retVal = callTiered(func, args);
+            if (retVal != null)
+                return retVal;
+            for (int i = 0; i < argNum; ++i)
+                map.put(func.getChild(1).getChild(i).getValue().getValue(), args[i]);
+            return invoke(func, map);
+        }
+        boolean[] strict = callByNeed ? strictness(func) : null;
         for (int i = 0; i < argNum; ++i) {
             map.put(
                     func.getChild(1).getChild(i).getValue().getValue(),
-                    eval(expr.getChild(1).getChild(i))
+                    strict == null || strict[i] ? evaluate(expr.getChild(1).getChild(i)) :
+                        delay(expr.getChild(1).getChild(i))
                     );
         }
-        // create new scope
-        createNewScope();
-        valueStack.peek().putAll(map);
-        // execute function body and get return value
-        Tree<Token> retVal = eval(func.getChild(2));
-        // discard new scope
-        removeNewScope();
-        return retVal;
+        return invoke(func, map);
     }
     
     /**
-     * Evaluates a read expression.
+     * Gets the residual a direct call runs, specialized on the numbers
+     * and function names it passes.
+     * @param site Call site of a direct call.
+     * @param func Function definition.
+     * @param args Arguments of the call.
+     * @return The residual; its function is func itself if the call is
+     * not specialized.
+     */
+    private CallSite.Residual specialize(CallSite site, Tree<Token> func, Tree<Token> args) {
+        CallSite.Residual residual = site.cachedResidual(functions, args);
+        if (residual != null)
+            return residual;
+        int argNum = args.getNumberOfChildren();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Tree<Token>[] constants = new Tree[argNum];
+        Object[] values = new Object[argNum];
+        StringBuilder key = new StringBuilder();
+        int[] kept = new int[argNum];
+        int keptNum = 0;
+        for (int i = 0; i < argNum; ++i) {
+            Tree<Token> arg = args.getChild(i);
+            Token token = arg.getValue();
+            // value references prefer functions, so a function name is constant
+            if (token instanceof Numeral && arg.getNumberOfChildren() == 0) {
+                key.append(((Numeral) token).number);
+                values[i] = ((Numeral) token).number;
+            }
+            else if (token.getType() == TokenType.NAME && functions.containsKey(token.getValue())) {
+                key.append('#').append(token.getValue());
+                values[i] = token.getValue();
+            }
+            else {
+                kept[keptNum++] = i;
+                key.append(',');
+                continue;
+            }
+            constants[i] = arg;
+            key.append(',');
+        }
+        Tree<Token> function = func;
+        Definition def = (Definition) func.getValue();
+        if (keptNum < argNum)
+            function = def.specialize(func, constants, key.toString(), functions, specializationBudget);
+        // a fused fold runs as a loop unless it is unrolled in full
+        if (loopFusion && def.getFold(func) != Fold.NONE && Specializer.recurs(function))
+            function = func;
+        // a call not specialized runs the target on any arguments
+        if (function == func)
+            values = new Object[argNum];
+        residual = new CallSite.Residual(functions, function, Arrays.copyOf(kept, keptNum), values);
+        site.cacheResidual(residual);
+        return residual;
+    }
+
+    /**
+     * Counts a call towards the promotion of a function to its
+     * optimized tier, and runs the call there if it is promoted and
+     * all arguments are numbers.
+     * @param func Function definition.
+     * @param args Values of the arguments.
+     * @return Return value of the function, or null if the call is
+     * to be interpreted.
+     */
+    private Tree<Token> callTiered(Tree<Token> func, Tree<Token>[] args) {
+        Definition def = (Definition) func.getValue();
+        Tier tier = def.getTier();
+        if (tier == null || tier.functions != functions) {
+            if (def.heat(1) < tierThreshold)
+                return null;
+            tier = Tier.compile(func, functions);
+            def.setTier(tier);
+            if (metrics != null && tier.code != null)
+                metrics.recordTierUp();
+        }
+        if (tier.code == null)
+            return null;
+        double[] values = new double[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            // speculation: every argument is a number
+            if (args[i].getValue().getType() != TokenType.NUMBER)
+                return deopt(def, tier);
+            values[i] = numberOf(args[i]);
+        }
+        double retVal;
+        try {
+            retVal = tier.code.run(input, tier.index, values);
+        }
+        catch (RuntimeException e) {
+            // evaluated again by the tree interpreter, failing the same way or not at all
+            return deopt(def, tier);
+        }
+        if (metrics != null)
+            metrics.recordCompiledCall();
+        if (FlatProgram.isFunction(retVal))
+            return functions.get(tier.code.names[FlatProgram.functionOf(retVal)]);
+        return number(retVal);
+    }
+
+    /**
+     * Sends a call back to the tree interpreter, deoptimizing the
+     * function for good once it failed its tier too often.
+     * @param def Token of the function definition.
+     * @param tier Tier of the function.
+     * @return Null, for the call to be interpreted.
+     */
+    private Tree<Token> deopt(Definition def, Tier tier) {
+        if (metrics != null)
+            metrics.recordDeopt();
+        if (tier.deopt())
+            def.setTier(Tier.interpreted(functions));
+        return null;
+    }
+
+    /**
+     * Gets the operation or intrinsic a function is applied as instead
+     * of being called.
+     * @param func Function definition.
+     * @param functions Functions the function is called with.
+     * @return The alias, or null if the function is to be called.
+     */
+    static Tree<Token> aliasOf(Tree<Token> func, Map<String, Tree<Token>> functions) {
+        if (!(func.getValue() instanceof Definition))
+            return null;
+        Tree<Token> alias = ((Definition) func.getValue()).getAlias();
+        if (alias != null && (alias.getValue() instanceof Intrinsic || !shadowed(func, functions)))
+            return alias;
+        return null;
+    }
+
+    /**
+     * Checks whether a parameter of a function is shadowed by a
+     * function of the same name, which value references prefer.
+     * @param func Function definition.
+     * @param functions Functions the function is called with.
+     * @return True if any parameter is shadowed.
+     */
+    private static boolean shadowed(Tree<Token> func, Map<String, Tree<Token>> functions) {
+        Tree<Token> params = func.getChild(1);
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            if (functions.containsKey(params.getChild(i).getValue().getValue()))
+                return true;
+        return false;
+    }
+    
+    /**
+     * Evaluates a call of a function that is an alias of an operation
+     * or an intrinsic by applying it to the arguments, without a scope.
+     * Both arguments are evaluated, as for any call, unless calls are
+     * by need.
+     * @param alias Operation the function is an alias of.
+     * @param args Arguments of the call.
+     * @return Return value of the function.
+     */
+    private Tree<Token> evalAlias(Tree<Token> alias, Tree<Token> args) {
+        if (alias.getValue() instanceof Intrinsic) {
+            Tree<Token> x = evaluate(args.getChild(0));
+            Tree<Token> y = args.getNumberOfChildren() > 1 ? evaluate(args.getChild(1)) : null;
+            return applyIntrinsic((Intrinsic) alias.getValue(), x, y);
+        }
+        Operation op = (Operation) alias.getValue();
+        Tree<Token> left = evaluate(args.getChild(0));
+        if (op.operator == Operation.NOT)
+            return not(op, left);
+        if (callByNeed && op.isLogical())
+            return decides(op, left) ? left : evaluate(args.getChild(1));
+        Tree<Token> right = evaluate(args.getChild(1));
+        if (op.isLogical())
+            return decides(op, left) ? left : right;
+        return operate(op, left, right);
+    }
+    
+    /**
+     * Evaluates the body of an intrinsic, whose arguments are bound
+     * in the current scope.
      * @param expr Funl expression to be parsed.
      * @return Another Funl expression.
      */
-    private Tree<Token> evalReadExpr(Tree<Token> expr) {
-        readCalled = true;
-        msg(expr.getChild(0).getValue().getValue());
+    private Tree<Token> evalIntrinsic(Tree<Token> expr) {
+        Tree<Token> x = fetch(expr.getChild(0).getValue().getValue());
+        Tree<Token> y = expr.getNumberOfChildren() > 1 ? fetch(expr.getChild(1).getValue().getValue()) : null;
+        return applyIntrinsic((Intrinsic) expr.getValue(), x, y);
+    }
+    
+    /**
+     * Applies an intrinsic to its arguments.
+     * @param f Intrinsic to be applied.
+     * @param x First argument.
+     * @param y Second argument; null for an intrinsic of one number.
+     * @return Return value of the intrinsic.
+     */
+    private Tree<Token> applyIntrinsic(Intrinsic f, Tree<Token> x, Tree<Token> y) {
+        if (x.getValue().getType() != TokenType.NUMBER ||
+                y != null && y.getValue().getType() != TokenType.NUMBER)
+            throw new RuntimeException(
+                    "Runtime Exception: argument of '" + f.name + "' evaluates to a function.");
+        return number(f.apply(numberOf(x), y == null ? 0 : numberOf(y)));
+    }
+    
+    /**
+     * Gets the parameters a function always evaluates.
+     * @param func Function definition.
+     * @return Whether each parameter is strict, or null if unknown.
+     */
+    private boolean[] strictness(Tree<Token> func) {
+        if (!(func.getValue() instanceof Definition))
+            return null;
+        return ((Definition) func.getValue()).getStrictness(func, functions);
+    }
+    
+    /**
+     * Binds an argument without evaluating it, in a call by need.
+     * A name is bound to what it is bound to, and a number to itself;
+     * any other argument to a thunk.
+     * @param arg Argument of the call.
+     * @return Value or thunk to be bound to the parameter.
+     */
+    private Tree<Token> delay(Tree<Token> arg) {
+        Token token = arg.getValue();
+        if (token.getType() == TokenType.NAME) {
+            String name = token.getValue();
+            if (!functions.containsKey(name) && containsKeyOnScope(name))
+                return valueStack.peek().get(name);
+            return evaluate(arg);
+        }
+        // vals must be defined in the scope of the call
+        if (token.getType() == TokenType.NUMBER || definesValue(arg))
+            return evaluate(arg);
+        HashMap<String, Tree<Token>> frame = valueStack.isEmpty() ? 
+                new HashMap<String, Tree<Token>>() : new HashMap<String, Tree<Token>>(valueStack.peek());
+        allocations.value();
+        return new Tree<Token>(new Thunk(arg, frame));
+    }
+    
+    private static boolean definesValue(Tree<Token> expr) {
+        if (expr.getValue().getValue().equals("val"))
+            return true;
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (definesValue(expr.getChild(i)))
+                return true;
+        return false;
+    }
+    
+    /**
+     * Evaluates a thunk in the frame of its call, once.
+     * @param value Thunk bound to a parameter.
+     * @return Value of the argument.
+     */
+    private Tree<Token> force(Tree<Token> value) {
+        Thunk thunk = (Thunk) value.getValue();
+        if (thunk.value == null) {
+            pushScope(thunk.frame);
+            Tree<Token> forced = evaluate(thunk.expr);
+            removeNewScope();
+            thunk.value = forced;
+            thunk.frame = null;
+        }
+        return thunk.value;
+    }
+    
+    /**
+     * Executes the body of a function in a new scope.
+     * @param func Function definition.
+     * @param args Arguments bound to parameter names.
+     * @return Return value of the function.
+     */
+    private Tree<Token> invoke(Tree<Token> func, HashMap<String, Tree<Token>> args) {
+        if (loopFusion && !instrumented && func.getValue() instanceof Definition) {
+            Fold fold = ((Definition) func.getValue()).getFold(func);
+            // the recursive call must still reach this function
+            if (fold != Fold.NONE && functions.get(fold.name) == func &&
+                    (!callByNeed || fold.combine == null))
+                return evalFold(fold, args);
+        }
+        int depth = 0;
+        if (instrumented)
+            depth = enterHooks(func, args);
+        Tree<Token> retVal = null;
         try {
-            String res = sc.nextDouble() + "";
-            return new Tree<Token>(new Token(TokenType.NUMBER, res));
+            // create new scope
+            createNewScope();
+            valueStack.peek().putAll(args);
+            // execute function body and get return value
+            Tree<Token> body = func.getChild(2);
+            if (sharing && !callByNeed && func.getValue() instanceof Definition)
+                body = ((Definition) func.getValue()).getOptimized(func, functions).getChild(2);
+            retVal = evaluate(body);
+            // discard new scope
+            removeNewScope();
+            return retVal;
         }
-        catch (InputMismatchException e) {
-            throw new RuntimeException(
-                    "Runtime Exception: only accept number for read expressions.");
+        finally {
+            if (instrumented)
+                exitHooks(func, retVal, depth);
+        }
+    }
+    
+    /**
+     * Reports entering a function to the profiler and tracer.
+     * @param func Function definition.
+     * @param args Arguments bound to parameter names.
+     * @return Scope depth of the function.
+     */
+    private int enterHooks(Tree<Token> func, HashMap<String, Tree<Token>> args) {
+        String funcName = func.getChild(0).getValue().getValue();
+        int depth = valueStack.size() + 1;
+        if (profiler != null)
+            profiler.enter(funcName);
+        if (trace != null) {
+            trace.call(funcName, depth);
+            Tree<Token> params = func.getChild(1);
+            for (int i = 0; i < params.getNumberOfChildren(); ++i) {
+                String param = params.getChild(i).getValue().getValue();
+                trace.arg(param, args.get(param));
+            }
+        }
+        return depth;
+    }
+    
+    /**
+     * Reports leaving a function to the profiler and tracer.
+     * @param func Function definition.
+     * @param retVal Return value; null if the function was aborted.
+     * @param depth Scope depth of the function.
+     */
+    private void exitHooks(Tree<Token> func, Tree<Token> retVal, int depth) {
+        if (profiler != null)
+            profiler.exit();
+        if (trace != null) {
+            String funcName = func.getChild(0).getValue().getValue();
+            if (retVal != null)
+                trace.ret(funcName, retVal, depth);
+            else
+                trace.error(funcName, depth);
+        }
+    }
+    
+    /**
+     * Evaluates a call of a function recognized as a fold as a loop:
+     * each iteration runs in a fresh scope replacing the previous one,
+     * and the elements are combined with the base value afterwards,
+     * from the last one back to the first, as the recursion would.
+     * @param fold Fold of the function.
+     * @param args Arguments bound to parameter names.
+     * @return Return value of the function.
+     */
+    private Tree<Token> evalFold(Fold fold, HashMap<String, Tree<Token>> args) {
+        ArrayList<Tree<Token>> elements = new ArrayList<Tree<Token>>();
+        ArrayList<Tree<Token>> combiners = new ArrayList<Tree<Token>>();
+        Fold.Head head = new Fold.Head();
+        boolean parallel = fold.parallel && foldExecutor != null && allocations.getLimit() == 0 &&
+                numbers.isDouble() && !callByNeed;
+        boolean[] strict = callByNeed ? strictness(functions.get(fold.name)) : null;
+        HashMap<String, Tree<Token>> frame = args;
+        for (int n = 0; ; ++n) {
+            if (n >= MAX_FOLD_LENGTH)
+                throw new RuntimeException(
+                        "Runtime Exception: exceeded maximum fold length of " + MAX_FOLD_LENGTH);
+            if (parallel && elements.size() == FOLD_CHUNK) {
+                parallel = false;
+                if (startHead(fold, elements, combiners, head)) {
+                    head.frame = frame;
+                    Tree<Token> retVal = evalFoldInParallel(fold, 
+                            combiners.isEmpty() ? null : combiners.get(0), head);
+                    if (retVal != null)
+                        return retVal;
+                    frame = head.frame;
+                    n = head.length;
+                    elements.clear();
+                    combiners.clear();
+                }
+            }
+            createNewScope();
+            valueStack.peek().putAll(frame);
+            for (Tree<Token> expr : fold.prologue)
+                evaluate(expr);
+            if (condition(fold.cond, fold.guarded) == fold.baseOnTrue) {
+                Tree<Token> base = evaluate(fold.base);
+                removeNewScope();
+                if (tierThreshold > 0)
+                    ((Definition) functions.get(fold.name).getValue()).heat(n); // back edges
+                return combine(fold, elements, combiners, base, head);
+            }
+            for (Tree<Token> expr : fold.steps)
+                evaluate(expr);
+            if (fold.combine != null)
+                combiners.add(resolve((CallSite) fold.combine.getValue(),
+                        fold.combine.getChild(0).getValue().getValue(), 2));
+            if (fold.element != null)
+                elements.add(evaluate(fold.element));
+            HashMap<String, Tree<Token>> next = new HashMap<String, Tree<Token>>();
+            allocations.frame();
+            for (int i = 0; i < fold.args.length; ++i)
+                next.put(fold.params[i], strict == null || strict[i] ? evaluate(fold.args[i]) :
+                    delay(fold.args[i]));
+            removeNewScope();
+            frame = next;
         }
     }
     
+    /**
+     * Combines the elements of a fold with its base value, from the
+     * last element back to the first, then with the elements folded
+     * into the head.
+     * @param fold Fold of the function.
+     * @param elements Elements not folded into the head.
+     * @param combiners Combining function of each element, if any.
+     * @param base Base value.
+     * @param head Elements already combined.
+     * @return Return value of the function.
+     */
+    private Tree<Token> combine(Fold fold, ArrayList<Tree<Token>> elements, 
+            ArrayList<Tree<Token>> combiners, Tree<Token> base, Fold.Head head) {
+        Tree<Token> retVal = base;
+        if (fold.element != null) {
+            char op = fold.op != 0 ? fold.op : commonOperator(combiners);
+            if (op != 0 && !elements.isEmpty() && numbers.isDouble()) {
+                // a primitive accumulator instead of a value per call
+                double acc = operand(base);
+                for (int i = elements.size() - 1; i >= 0; --i)
+                    acc = Operation.apply(op, operand(elements.get(i)), acc);
+                retVal = number(acc);
+            }
+            else if (op != 0) {
+                for (int i = elements.size() - 1; i >= 0; --i) {
+                    operand(elements.get(i));
+                    operand(retVal);
+                    retVal = number(numbers.apply(op, numeral(elements.get(i)), numeral(retVal)));
+                }
+            }
+            else {
+                for (int i = elements.size() - 1; i >= 0; --i) {
+                    Tree<Token> func = combiners.get(i);
+                    HashMap<String, Tree<Token>> map = new HashMap<String, Tree<Token>>();
+                    allocations.frame();
+                    map.put(func.getChild(1).getChild(0).getValue().getValue(), elements.get(i));
+                    map.put(func.getChild(1).getChild(1).getValue().getValue(), retVal);
+                    retVal = invoke(func, map);
+                }
+            }
+        }
+        if (!head.empty)
+            retVal = number(Operation.apply(head.op, head.value, operand(retVal)));
+        return retVal;
+    }
+    
+    /**
+     * Gets the arithmetic all combining functions of a fold perform.
+     * @param combiners Combining function of each element.
+     * @return One of + - * /, or 0 if the functions differ or do
+     * anything else.
+     */
+    private char commonOperator(ArrayList<Tree<Token>> combiners) {
+        if (combiners.isEmpty())
+            return 0;
+        Tree<Token> func = combiners.get(0);
+        for (Tree<Token> other : combiners)
+            if (other != func)
+                return 0;
+        return Fold.operator(func);
+    }
+    
+    /**
+     * Combines the elements of a fold evaluated so far into the head,
+     * if they are all numbers combined by the same associative
+     * arithmetic, so that the rest can be combined in any grouping.
+     * @param fold Fold of the function.
+     * @param elements Elements evaluated so far.
+     * @param combiners Combining function of each element, if any.
+     * @param head Head to be started.
+     * @return True if the head is started.
+     */
+    private boolean startHead(Fold fold, ArrayList<Tree<Token>> elements, 
+            ArrayList<Tree<Token>> combiners, Fold.Head head) {
+        char op = fold.op != 0 ? fold.op : commonOperator(combiners);
+        if (op != '+' && op != '*')
+            return false;
+        double value = 0;
+        for (int i = 0; i < elements.size(); ++i) {
+            if (elements.get(i).getValue().getType() != TokenType.NUMBER)
+                return false;
+            double x = numberOf(elements.get(i));
+            value = i == 0 ? x : Operation.apply(op, value, x);
+        }
+        head.op = op;
+        head.value = value;
+        head.empty = false;
+        head.length = elements.size();
+        return true;
+    }
+    
+    /**
+     * Evaluates the remaining iterations of a fold in blocks split
+     * across isolates. Each block first computes the arguments of its
+     * iterations in order, then evaluates them in chunks in parallel,
+     * and ends the fold at the first iteration reaching the base case.
+     * @param fold Fold of the function.
+     * @param combiner Combining function expected, if any.
+     * @param head Elements already combined, and the arguments of the
+     * next iteration; advanced past every completed block.
+     * @return Return value of the function, or null if the remaining
+     * iterations must be evaluated in order.
+     */
+    private Tree<Token> evalFoldInParallel(final Fold fold, final Tree<Token> combiner, Fold.Head head) {
+        final Funl[] isolates = new Funl[foldParallelism];
+        for (int i = 0; i < isolates.length; ++i) {
+            isolates[i] = newIsolate();
+            isolates[i].functions = functions;
+        }
+        int block = FOLD_CHUNK * foldParallelism;
+        while (head.length + block < MAX_FOLD_LENGTH) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            final HashMap<String, Tree<Token>>[] frames = new HashMap[block + 1];
+            frames[0] = head.frame;
+            int valid = isolates[0].foldFrames(fold, frames);
+            ArrayList<CompletableFuture<Fold.Chunk>> chunks = new ArrayList<CompletableFuture<Fold.Chunk>>();
+            for (int i = 0; i < isolates.length && i * FOLD_CHUNK < Math.min(valid, block); ++i) {
+                final Funl isolate = isolates[i];
+                final int from = i * FOLD_CHUNK;
+                final int to = Math.min(from + FOLD_CHUNK, Math.min(valid, block));
+                final char op = head.op;
+                chunks.add(CompletableFuture.supplyAsync(
+                        () -> isolate.foldChunk(fold, op, combiner, frames, from, to), foldExecutor));
+            }
+            double value = head.value;
+            for (CompletableFuture<Fold.Chunk> future : chunks) {
+                Fold.Chunk chunk;
+                try {
+                    chunk = future.join();
+                }
+                catch (CompletionException e) {
+                    return null;
+                }
+                if (chunk.failed)
+                    return null;
+                if (!chunk.empty)
+                    value = Operation.apply(head.op, value, chunk.value);
+                if (chunk.stop >= 0) {
+                    if (chunk.base.getValue().getType() != TokenType.NUMBER)
+                        return null;
+                    return number(Operation.apply(head.op, value, numberOf(chunk.base)));
+                }
+            }
+            if (valid <= block)
+                return null;
+            head.value = value;
+            head.length += block;
+            head.frame = frames[block];
+        }
+        return null;
+    }
+    
+    /**
+     * Computes the arguments of consecutive iterations of a fold on
+     * this isolate, ignoring where the fold ends.
+     * @param fold Fold of the function.
+     * @param frames Arguments of the iterations, the first one given.
+     * @return Number of iterations whose arguments are computed.
+     */
+    private int foldFrames(Fold fold, HashMap<String, Tree<Token>>[] frames) {
+        int depth = valueStack.size();
+        for (int k = 1; k < frames.length; ++k) {
+            try {
+                createNewScope();
+                valueStack.peek().putAll(frames[k - 1]);
+                HashMap<String, Tree<Token>> next = new HashMap<String, Tree<Token>>();
+                for (int i = 0; i < fold.args.length; ++i)
+                    next.put(fold.params[i], evaluate(fold.args[i]));
+                removeNewScope();
+                frames[k] = next;
+            }
+            catch (RuntimeException | StackOverflowError e) {
+                unwind(depth);
+                return k;
+            }
+        }
+        return frames.length;
+    }
+    
+    /**
+     * Evaluates iterations of a fold on this isolate and combines
+     * their elements from left to right.
+     * @param fold Fold of the function.
+     * @param op Associative arithmetic combining the elements.
+     * @param combiner Combining function expected, if any.
+     * @param frames Arguments of the iterations.
+     * @param from First iteration.
+     * @param to Iteration after the last one.
+     * @return Result of the iterations.
+     */
+    private Fold.Chunk foldChunk(Fold fold, char op, Tree<Token> combiner, 
+            HashMap<String, Tree<Token>>[] frames, int from, int to) {
+        Fold.Chunk chunk = new Fold.Chunk();
+        int depth = valueStack.size();
+        try {
+            for (int k = from; k < to; ++k) {
+                createNewScope();
+                valueStack.peek().putAll(frames[k]);
+                for (Tree<Token> expr : fold.prologue)
+                    evaluate(expr);
+                if (condition(fold.cond, fold.guarded) == fold.baseOnTrue) {
+                    chunk.base = evaluate(fold.base);
+                    chunk.stop = k;
+                    removeNewScope();
+                    return chunk;
+                }
+                for (Tree<Token> expr : fold.steps)
+                    evaluate(expr);
+                if (fold.combine != null && resolve((CallSite) fold.combine.getValue(),
+                        fold.combine.getChild(0).getValue().getValue(), 2) != combiner) {
+                    chunk.failed = true;
+                    break;
+                }
+                double x = operand(evaluate(fold.element));
+                chunk.value = chunk.empty ? x : Operation.apply(op, chunk.value, x);
+                chunk.empty = false;
+                removeNewScope();
+            }
+        }
+        catch (RuntimeException | StackOverflowError e) {
+            chunk.failed = true;
+        }
+        unwind(depth);
+        return chunk;
+    }
+    
+    /**
+     * Resolves the function called at a call site and checks its 
+     * number of params, using and updating the inline cache of
+     * the call site.
+     * @param site Call site.
+     * @param funcName Name the function is called by.
+     * @param argNum Number of arguments.
+     * @return The function definition.
+     */
+    private Tree<Token> resolve(CallSite site, String funcName, int argNum) {
+        // parameters and vals shadow function names
+        if (site.binding != CallSite.GLOBAL && !valueStack.isEmpty()) {
+            Tree<Token> func = fetch(funcName);
+            if (func != null) {
+                if (!site.isVerified(func)) {
+                    checkArgNum(funcName, func, argNum);
+                    site.verified(func);
+                }
+                return func;
+            }
+        }
+        Tree<Token> func = site.cachedGlobal(functions);
+        if (func == null) {
+            func = functions.get(funcName);
+            if (func == null)
+                throw new RuntimeException(
+                        "Runtime Exception: cannot resolve '" + funcName + "' to a function name.");
+            checkArgNum(funcName, func, argNum);
+            site.cacheGlobal(functions, func, aliasOf(func, functions));
+        }
+        return func;
+    }
+    
+    /**
+     * Checks the number of arguments of a function call.
+     * @param funcName Name the function is called by.
+     * @param func Function definition.
+     * @param argNum Number of arguments.
+     * @throws RuntimeException If the numbers of arguments and
+     * parameters differ.
+     */
+    private void checkArgNum(String funcName, Tree<Token> func, int argNum) {
+        if (func.getNumberOfChildren() != 3)
+            throw new RuntimeException(
+                    "Runtime Exception: '" + funcName + "' evaluates to a number, not a function.");
+        int paramNum = func.getChild(1).getNumberOfChildren();
+        if (argNum != paramNum)
+            throw new RuntimeException(
+                    "Runtime Exception: number of argument(s) not match for function '" + funcName + "'.\n" +
+                    "Expected: " + paramNum + ", actual: " + argNum);
+    }
+    
+    /**
+     * Evaluates a read expression.
+     * @param expr Funl expression to be parsed.
+     * @return Another Funl expression.
+     */
+    private Tree<Token> evalReadExpr(Tree<Token> expr) {
+        return number(input.read(expr.getChild(0).getValue().getValue()));
+    }
+    
     /**
      * Evaluates an if expression.
      * @param expr Funl expression to be parsed.
      * @return Another Funl expression.
      */
     private Tree<Token> evalIfExpr(Tree<Token> expr) {
-        try {
-            String cond = eval(expr.getChild(0)).getValue().getValue();
-            double condition = Double.parseDouble(cond);
-            if (condition > 0)
-                return eval(expr.getChild(1));
-            else
-                return eval(expr.getChild(2));
-        }
-        catch (NumberFormatException e) {
+        boolean guarded = !(expr.getValue() instanceof Operation) ||
+                ((Operation) expr.getValue()).isGuarded(Operation.LEFT);
+        if (condition(expr.getChild(0), guarded))
+            return evaluate(expr.getChild(1));
+        else
+            return evaluate(expr.getChild(2));
+    }
+    
+    /**
+     * Evaluates the condition part of an if expression.
+     * @param expr Funl expression to be parsed.
+     * @param guarded False if the condition is proven to be a number.
+     * @return True if the condition is positive.
+     */
+    private boolean condition(Tree<Token> expr, boolean guarded) {
+        Tree<Token> cond = evaluate(expr);
+        if (guarded && cond.getValue().getType() != TokenType.NUMBER)
             throw new RuntimeException(
                     "Runtime Exception: condition part of an if expression evaluates to a function.");
-        }
+        return positive(cond);
+    }
+    
+    /**
+     * Checks whether a number value counts as true, ie., is positive.
+     * @param value Number value.
+     * @return True if the number is positive.
+     */
+    private boolean positive(Tree<Token> value) {
+        if (!numbers.isDouble())
+            return numbers.signum(numeral(value)) > 0;
+        return numberOf(value) > 0;
+    }
+    
+    /**
+     * Evaluates a logical expression, evaluating the right operand
+     * only if the left one does not decide the result. As in the
+     * library, x or y is x if x is true and y otherwise, and x and y
+     * is x if x is false and y otherwise.
+     * @param expr Funl expression to be parsed.
+     * @return Another Funl expression.
+     */
+    private Tree<Token> evalLogicalExpr(Tree<Token> expr) {
+        Operation op = (Operation) expr.getValue();
+        Tree<Token> left = evaluate(expr.getChild(0));
+        if (op.operator == Operation.NOT)
+            return not(op, left);
+        return decides(op, left) ? left : evaluate(expr.getChild(1));
+    }
+    
+    /**
+     * Checks whether the left operand of and or or decides the result.
+     * @param op Token of the operation.
+     * @param left Value of the left operand.
+     * @return True if the result is the left operand.
+     */
+    private boolean decides(Operation op, Tree<Token> left) {
+        return truth(left, op.isGuarded(Operation.LEFT)) == (op.operator == Operation.OR);
+    }
+    
+    /**
+     * Negates a value.
+     * @param op Token of the operation.
+     * @param operand Value of the operand.
+     * @return 0 if the operand is true, 1 otherwise.
+     */
+    private Tree<Token> not(Operation op, Tree<Token> operand) {
+        return number(truth(operand, op.isGuarded(Operation.LEFT)) ? 0 : 1);
+    }
+    
+    /**
+     * Gets the truth of a logical operand.
+     * @param value Value of the operand.
+     * @param guarded False if the operand is proven to be a number.
+     * @return True if the operand is positive.
+     */
+    private boolean truth(Tree<Token> value, boolean guarded) {
+        if (guarded && value.getValue().getType() != TokenType.NUMBER)
+            throw new RuntimeException(
+                    "Runtime Exception: logical operand evaluates to a function.");
+        return positive(value);
     }
     
     /**
@@ -176,13 +1462,29 @@ public class Funl {
      * @return Another Funl expression.
      */
     private Tree<Token> evalValue(Tree<Token> expr) {
-        if (expr.getValue().getType() == TokenType.NAME) {
-            String varName = expr.getValue().getValue();
-            if (!containsKeyOnStack(varName) && !functions.containsKey(varName))
+        Token token = expr.getValue();
+        if (token.getType() == TokenType.NAME) {
+            String varName = token.getValue();
+            // a linked reference skips the name lookups
+            Reference.Link link = token instanceof Reference ?
+                    ((Reference) token).linked(functions) : null;
+            if (link != null) {
+                if (link.function != null)
+                    return link.function;
+                Tree<Token> value = valueStack.isEmpty() ? null : fetch(varName);
+                if (value != null)
+                    return value;
+            }
+            Tree<Token> func = functions.get(varName);
+            if (func == null && !containsKeyOnScope(varName))
                 throw new RuntimeException(
                         "Runtime Exception: cannot resolve '" + varName + "' to a variable or function name.");
-            return functions.containsKey(varName) ? functions.get(varName) : fetch(varName);
+            if (token instanceof Reference)
+                ((Reference) token).link(functions, func);
+            return func != null ? func : fetch(varName);
         }
+        if (!numbers.isDouble())
+            return number(numbers.convert(numeral(expr)));
         return expr;
     }
     
@@ -192,38 +1494,108 @@ public class Funl {
      * @return Another Funl expression.
      */
     private Tree<Token> evalArithmeticExpr(Tree<Token> expr) {
-        try {
-            if (expr.getValue().getValue().equals("+")) {
-                String left = eval(expr.getChild(0)).getValue().getValue();
-                String right = eval(expr.getChild(1)).getValue().getValue();
-                double res = Double.parseDouble(left) + Double.parseDouble(right);
-                return new Tree<Token>(new Token(TokenType.NUMBER, res + ""));
-            }
-            if (expr.getValue().getValue().equals("-")) {
-                String left = eval(expr.getChild(0)).getValue().getValue();
-                String right = eval(expr.getChild(1)).getValue().getValue();
-                double res = Double.parseDouble(left) - Double.parseDouble(right);
-                return new Tree<Token>(new Token(TokenType.NUMBER, res + ""));
+        Tree<Token> left = evaluate(expr.getChild(0));
+        Tree<Token> right = evaluate(expr.getChild(1));
+        if (expr.getValue() instanceof Operation) {
+            Operation op = (Operation) expr.getValue();
+            boolean doubles = numbers.isDouble() && left.getValue() instanceof Numeral &&
+                    right.getValue() instanceof Numeral;
+            if (op.state == Operation.NUMBERS) {
+                if (doubles)
+                    return number(Operation.apply(op.operator,
+                            ((Numeral) left.getValue()).number, ((Numeral) right.getValue()).number));
+                op.state = Operation.GENERIC;
             }
-            if (expr.getValue().getValue().equals("*")) {
-                String left = eval(expr.getChild(0)).getValue().getValue();
-                String right = eval(expr.getChild(1)).getValue().getValue();
-                double res = Double.parseDouble(left) * Double.parseDouble(right);
-                return new Tree<Token>(new Token(TokenType.NUMBER, res + ""));
-            }
-            if (expr.getValue().getValue().equals("/")) {
-                String left = eval(expr.getChild(0)).getValue().getValue();
-                String right = eval(expr.getChild(1)).getValue().getValue();
-                double res = Double.parseDouble(left) / Double.parseDouble(right);
-                return new Tree<Token>(new Token(TokenType.NUMBER, res + ""));
-            }
-            assert false;
-            return null;
+            else if (op.state == Operation.UNINITIALIZED)
+                op.state = doubles ? Operation.NUMBERS : Operation.GENERIC;
         }
-        catch (NumberFormatException e) {
+        return operate(expr.getValue(), left, right);
+    }
+    
+    /**
+     * Applies an arithmetic operator or a comparison.
+     * @param token Token of the operation.
+     * @param left Value of the left operand.
+     * @param right Value of the right operand.
+     * @return Result; 1 or 0 for a comparison.
+     */
+    private Tree<Token> operate(Token token, Tree<Token> left, Tree<Token> right) {
+        if (token instanceof Operation) {
+            // operands proven to be numbers are not checked
+            Operation op = (Operation) token;
+            double x = op.isGuarded(Operation.LEFT) ? operand(left) : numberOf(left);
+            double y = op.isGuarded(Operation.RIGHT) ? operand(right) : numberOf(right);
+            if (!numbers.isDouble())
+                return number(numbers.apply(op.operator, numeral(left), numeral(right)));
+            return number(Operation.apply(op.operator, x, y));
+        }
+        double x = operand(left);
+        double y = operand(right);
+        if (!numbers.isDouble())
+            return number(numbers.apply(token.getValue().charAt(0), numeral(left), numeral(right)));
+        return number(Operation.apply(token.getValue().charAt(0), x, y));
+    }
+    
+    /**
+     * Gets the number of an arithmetic operand, checking that the
+     * operand is a number.
+     * @param value Value of the operand.
+     * @return Number the value holds.
+     */
+    private double operand(Tree<Token> value) {
+        if (value.getValue().getType() != TokenType.NUMBER)
             throw new RuntimeException(
                     "Runtime Exception: arithmetic operand evaluates to a function.");
-        }
+        return numberOf(value);
+    }
+    
+    /**
+     * Gets the number a number value holds.
+     * @param value Number value.
+     * @return The number.
+     */
+    private static double numberOf(Tree<Token> value) {
+        Token token = value.getValue();
+        if (token instanceof Numeral)
+            return ((Numeral) token).number;
+        return Double.parseDouble(token.getValue());
+    }
+    
+    /**
+     * Gets the token of a number value.
+     * @param value Number value.
+     * @return The token, as a Numeral.
+     */
+    private static Numeral numeral(Tree<Token> value) {
+        Token token = value.getValue();
+        if (token instanceof Numeral)
+            return (Numeral) token;
+        return new Numeral(Double.parseDouble(token.getValue()), token.getValue());
+    }
+    
+    /**
+     * Creates a number value, counting it against the allocation budget.
+     * @param d Number to be wrapped, converted to the numeric mode.
+     * @return A Funl expression holding the number.
+     */
+    private Tree<Token> number(double d) {
+        if (!numbers.isDouble())
+            return number(numbers.valueOf(d));
+        allocations.node();
+        allocations.value();
+        return new Tree<Token>(new Numeral(d));
+    }
+    
+    /**
+     * Creates a value of an exact number, counting it against the
+     * allocation budget.
+     * @param n Number token to be wrapped.
+     * @return A Funl expression holding the number.
+     */
+    private Tree<Token> number(Numeral n) {
+        allocations.node();
+        allocations.value();
+        return new Tree<Token>(n);
     }
     
     /**
@@ -233,11 +1605,11 @@ public class Funl {
      */
     private Tree<Token> evalValueDef(Tree<Token> expr) {
         String varName = expr.getChild(0).getValue().getValue();
-        if (containsKeyOnStack(varName) && !inREPL)
+        if (containsKeyOnScope(varName) && !inREPL)
             throw new RuntimeException("Runtime Exception: variable with name '" + varName + "' already exists");
         if (functions.containsKey(varName))
             throw new RuntimeException("Runtime Exception: function with name '" + varName + "' already exists");
-        Tree<Token> retVal = eval(expr.getChild(1));
+        Tree<Token> retVal = evaluate(expr.getChild(1));
         store(varName, retVal);
         return retVal;
     }
@@ -249,8 +1621,8 @@ public class Funl {
      */
     private Tree<Token> evalExprs(Tree<Token> expr) {
         for (int i = 0; i < expr.getNumberOfChildren() - 1; ++i)
-            eval(expr.getChild(i));
-        return eval(expr.getChild(expr.getNumberOfChildren() - 1));
+            evaluate(expr.getChild(i));
+        return evaluate(expr.getChild(expr.getNumberOfChildren() - 1));
     }
     
     /**
@@ -260,6 +1632,7 @@ public class Funl {
     public static void main(String[] args) {
         // init REPL
         Funl funl = new Funl();
+        funl.bindIntrinsics(Intrinsics.math());
         funl.setREPL(true);
         funl.createNewScope();
         msg(introMsg()); // print introductory message
@@ -268,10 +1641,6 @@ public class Funl {
         while (true) {
             try {
                 String input = sc.nextLine().trim();
-                if (funl.readCalled) {
-                    funl.readCalled = false;
-                    continue;
-                }
                 if (input.isEmpty()) {
                     prompt();
                     continue;
@@ -306,6 +1675,8 @@ public class Funl {
         String funcDefs;
         setREPL(false);
         try {
+            if (chooser == null)
+                chooser = new JFileChooser();
             chooser.setDialogTitle("Read in a Funl Program:");
             int result = chooser.showOpenDialog(null);
             if (result == JFileChooser.APPROVE_OPTION) 
@@ -324,26 +1695,39 @@ public class Funl {
         }
         // backup for potential recovery
         HashMap<String, Tree<Token>> oldFunctions = functions;
-        define(funcDefs);
-        if (!functions.isEmpty()) {
+        if (defineProgram(funcDefs) > 0) {
             clearScope();
             createNewScope();
             msg(functions.keySet().size() + " functions loaded successfully:");
             printLoadedFunc();
         }
         else {
-            functions = oldFunctions;
+            functions = table.replaceAll(oldFunctions).functions;
             msg("Input Error: file format not supported.");
         }
         setREPL(true);
     }
     
     /**
-     * Parses a string into a Funl expression in a tree form
+     * Parses a string into a Funl expression in a tree form,
+     * through the parse cache if one is set.
      * @param s String to be parsed.
      * @return A tree representing a Funl expression.
      */
     Tree<Token> parseInput(String s) {
+        ParseCache cache = parseCache;
+        if (cache != null && !s.startsWith("def"))
+            return cache.get(s, Funl::parse);
+        return parse(s);
+    }
+    
+    /**
+     * Parses a string into a Funl expression, as parseInput() does
+     * without a parse cache.
+     * @param s String to be parsed.
+     * @return A tree representing a Funl expression.
+     */
+    private static Tree<Token> parse(String s) {
         Parser parser = new Parser(s);
         if (s.startsWith("def")) parser.functionDefinition();
         else if (s.contains(",")) parser.expressions();
@@ -368,25 +1752,40 @@ public class Funl {
     }
     
     /**
-     * Checks whether the key exists in every 'scope'.
+     * Checks whether the key exists in the current 'scope',
+     * the only one visible to the running function.
      * @param key Key to be checked.
-     * @return True if this key is found in every 'scope';
+     * @return True if this key is found in the current 'scope';
      * false otherwise.
      */
-    private boolean containsKeyOnStack(String key) {
-        for (int i = 0; i < valueStack.size(); ++i)
-            if ((valueStack.get(i)).containsKey(key))
-                return true;
-        return false;
+    private boolean containsKeyOnScope(String key) {
+        return !valueStack.isEmpty() && valueStack.peek().containsKey(key);
+    }
+    
+    /**
+     * Throws a RuntimeException if the functions of this 
+     * evaluator are shared read-only.
+     */
+    private void checkWritable() {
+        if (readOnly)
+            throw new RuntimeException(
+                    "Runtime Exception: functions of an isolate are read-only.");
     }
     
     /**
-     * Fetches a specified value from the topmost HashMap.
+     * Fetches a specified value from the topmost HashMap,
+     * forcing it if it is a thunk.
      * @param name Key for the value to be retrieved.
      * @return The value fetched.
      */
     private Tree<Token> fetch(String name) {
-        return valueStack.peek().get(name);
+        Tree<Token> value = valueStack.peek().get(name);
+        if (value != null && value.getValue() instanceof Thunk) {
+            HashMap<String, Tree<Token>> frame = valueStack.peek();
+            value = force(value);
+            frame.put(name, value);
+        }
+        return value;
     }
     
     /**
@@ -403,19 +1802,43 @@ public class Funl {
      * a new scope.
      */
     private void createNewScope() {
+        allocations.frame();
+        pushScope(new HashMap<String, Tree<Token>>());
+    }
+    
+    /**
+     * Pushes a HashMap onto the stack as a new scope.
+     * @param frame Values of the scope.
+     */
+    private void pushScope(HashMap<String, Tree<Token>> frame) {
         try {
             if (++scopeDepth >= MAX_SCOPE_DEPTH)
                 throw new StackOverflowError();
-            valueStack.push(new HashMap<String, Tree<Token>>());
+            valueStack.push(frame);
+            if (valueStack.size() > peakDepth)
+                peakDepth = valueStack.size();
         }
         catch (StackOverflowError e) {
+            --scopeDepth; // no scope was pushed
             while (valueStack.size() > 1)
                 removeNewScope();
-            throw new RuntimeException(
+            throw scopeOverflow(
                     "Runtime Exception: exceeded maximum nested scope depth of " + MAX_SCOPE_DEPTH);
         }
     }
     
+    /**
+     * Creates the exception for an evaluation nested too deeply,
+     * either beyond MAX_SCOPE_DEPTH or beyond the Java stack.
+     * @param msg Error message.
+     * @return The exception to be thrown.
+     */
+    private RuntimeException scopeOverflow(String msg) {
+        if (metrics != null)
+            metrics.recordOverflow();
+        return new RuntimeException(msg);
+    }
+    
     /**
      * Pops the topmost HashMap from the stack, ie., 
      * removes a new scope.
@@ -427,6 +1850,29 @@ public class Funl {
         return valueStack.pop();
     }
     
+    /**
+     * Dumps the trace of a failed evaluation.
+     */
+    private void dumpTrace() {
+        try {
+            traceOnError.append("Trace of failed evaluation:\n");
+            trace.dump(traceOnError);
+        }
+        catch (IOException e) {
+            // a failing dump must not hide the evaluation error
+        }
+    }
+    
+    /**
+     * Pops HashMaps until the stack is back to a given size, ie.,
+     * discards scopes left behind by an aborted evaluation.
+     * @param depth Size of the stack to be restored.
+     */
+    private void unwind(int depth) {
+        while (valueStack.size() > depth)
+            removeNewScope();
+    }
+    
     /**
      * Pops all HashMaps from the stack, ie., 
      * removes all scopes.
@@ -0,0 +1,309 @@
+package evaluator;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Class for operational metrics of Funl evaluators: evaluation count,
+ * rate and latency, peak scope depth per evaluation, scope depth
+ * overflows, parse time per define and function table size. One
+ * instance may be shared by any number of evaluators (e.g. all the
+ * isolates of a pool); recording only touches striped counters.
+ * Metrics are exported through JMX and as a plain-text snapshot.
+ * @version Oct 19, 2026
+ */
+public class FunlMetrics implements FunlMetricsMBean {
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder tierUps = new LongAdder();
+    private final LongAdder deopts = new LongAdder();
+    private final LongAdder compiledCalls = new LongAdder();
+    private final Histogram latency = new Histogram();     // nanoseconds
+    private final Histogram scopeDepth = new Histogram();  // peak frames per evaluation
+    private final Histogram parseTime = new Histogram();   // nanoseconds per define
+    private volatile FunctionTable table;
+    private ObjectName objectName;
+    /* evaluation rate, sampled when read */
+    private long sampleNanos = System.nanoTime();
+    private long sampleCount = 0;
+    private double rate = 0;
+
+    /**
+     * Records a finished evaluation.
+     * @param nanos Latency of the evaluation.
+     * @param peakDepth Largest number of scopes during the evaluation.
+     * @param failed True if the evaluation threw an exception.
+     */
+    void recordEvaluation(long nanos, int peakDepth, boolean failed) {
+        latency.record(nanos);
+        scopeDepth.record(peakDepth);
+        if (failed)
+            failures.increment();
+    }
+
+    /**
+     * Records an evaluation aborted for exceeding MAX_SCOPE_DEPTH.
+     */
+    void recordOverflow() {
+        overflows.increment();
+    }
+
+    /**
+     * Records a function compiled to its optimized tier.
+     */
+    void recordTierUp() {
+        tierUps.increment();
+    }
+
+    /**
+     * Records a call sent back from the optimized tier to the tree
+     * interpreter.
+     */
+    void recordDeopt() {
+        deopts.increment();
+    }
+
+    /**
+     * Records a call run in the optimized tier.
+     */
+    void recordCompiledCall() {
+        compiledCalls.increment();
+    }
+
+    /**
+     * Records the parse time of a define.
+     * @param nanos Parse time.
+     */
+    void recordDefine(long nanos) {
+        parseTime.record(nanos);
+    }
+
+    /**
+     * Sets the function table whose size is reported.
+     * @param table Function table to be watched.
+     */
+    void watch(FunctionTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public long getEvaluations() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailedEvaluations() {
+        return failures.sum();
+    }
+
+    /**
+     * Gets the evaluation rate over the interval between the latest
+     * two samples; a new sample is taken when this is read at least
+     * a second after the previous one.
+     * @return Evaluations per second.
+     */
+    @Override
+    public synchronized double getEvaluationsPerSecond() {
+        long now = System.nanoTime();
+        if (now - sampleNanos >= 1000000000L) {
+            long count = getEvaluations();
+            rate = (count - sampleCount) * 1e9 / (now - sampleNanos);
+            sampleNanos = now;
+            sampleCount = count;
+        }
+        return rate;
+    }
+
+    @Override
+    public double getMeanLatencyMicros() {
+        return latency.getMean() / 1e3;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latency.getQuantile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latency.getQuantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getMaxLatencyMicros() {
+        return latency.getMax() / 1e3;
+    }
+
+    @Override
+    public long getMaxScopeDepth() {
+        return scopeDepth.getMax();
+    }
+
+    @Override
+    public double getMeanPeakScopeDepth() {
+        return scopeDepth.getMean();
+    }
+
+    @Override
+    public long getScopeDepthOverflows() {
+        return overflows.sum();
+    }
+
+    @Override
+    public long getTierUps() {
+        return tierUps.sum();
+    }
+
+    @Override
+    public long getDeoptimizations() {
+        return deopts.sum();
+    }
+
+    @Override
+    public long getCompiledCalls() {
+        return compiledCalls.sum();
+    }
+
+    @Override
+    public long getDefines() {
+        return parseTime.getCount();
+    }
+
+    @Override
+    public double getMeanParseMillis() {
+        return parseTime.getMean() / 1e6;
+    }
+
+    @Override
+    public int getFunctionTableSize() {
+        FunctionTable t = table;
+        return t == null ? 0 : t.size();
+    }
+
+    @Override
+    public long getFunctionTableVersion() {
+        FunctionTable t = table;
+        return t == null ? 0 : t.getVersion();
+    }
+
+    /**
+     * Gets the histogram of evaluation latencies.
+     * @return Latency histogram, in nanoseconds.
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the histogram of peak scope depths per evaluation.
+     * @return Scope depth histogram.
+     */
+    public Histogram getScopeDepth() {
+        return scopeDepth;
+    }
+
+    /**
+     * Gets the histogram of parse times per define.
+     * @return Parse time histogram, in nanoseconds.
+     */
+    public Histogram getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Discards all metrics recorded.
+     */
+    @Override
+    public synchronized void reset() {
+        failures.reset();
+        overflows.reset();
+        tierUps.reset();
+        deopts.reset();
+        compiledCalls.reset();
+        latency.reset();
+        scopeDepth.reset();
+        parseTime.reset();
+        sampleNanos = System.nanoTime();
+        sampleCount = 0;
+        rate = 0;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     * @param name Name distinguishing these metrics from others.
+     * @throws IllegalStateException If registration fails.
+     */
+    public synchronized void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("evaluator:type=FunlMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, on);
+            objectName = on;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Unable to register metrics '" + name + "'", e);
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (JMException e) {
+            // already gone
+        }
+        objectName = null;
+    }
+
+    /**
+     * Returns the metrics as plain text, one "name value" per line.
+     * @return Snapshot of the metrics.
+     */
+    @Override
+    public String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        line(sb, "funl_evaluations_total", getEvaluations());
+        line(sb, "funl_evaluations_failed_total", getFailedEvaluations());
+        line(sb, "funl_evaluations_per_second", getEvaluationsPerSecond());
+        line(sb, "funl_evaluation_latency_micros_mean", getMeanLatencyMicros());
+        line(sb, "funl_evaluation_latency_micros_p50", getLatencyP50Micros());
+        line(sb, "funl_evaluation_latency_micros_p90", latency.getQuantile(0.9) / 1e3);
+        line(sb, "funl_evaluation_latency_micros_p99", getLatencyP99Micros());
+        line(sb, "funl_evaluation_latency_micros_max", getMaxLatencyMicros());
+        line(sb, "funl_scope_depth_peak_mean", getMeanPeakScopeDepth());
+        line(sb, "funl_scope_depth_peak_max", getMaxScopeDepth());
+        line(sb, "funl_scope_depth_overflows_total", getScopeDepthOverflows());
+        line(sb, "funl_tier_ups_total", getTierUps());
+        line(sb, "funl_deoptimizations_total", getDeoptimizations());
+        line(sb, "funl_compiled_calls_total", getCompiledCalls());
+        line(sb, "funl_defines_total", getDefines());
+        line(sb, "funl_define_parse_millis_mean", getMeanParseMillis());
+        line(sb, "funl_define_parse_millis_max", parseTime.getMax() / 1e6);
+        line(sb, "funl_function_table_size", getFunctionTableSize());
+        line(sb, "funl_function_table_version", getFunctionTableVersion());
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot();
+    }
+
+    private static void line(StringBuilder sb, String name, double value) {
+        sb.append(name).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            sb.append((long) value);
+        else
+            sb.append(String.format("%.3f", value));
+        sb.append('\n');
+    }
+}
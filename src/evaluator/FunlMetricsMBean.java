@@ -0,0 +1,27 @@
+package evaluator;
+
+/**
+ * JMX management interface of FunlMetrics.
+ * @version Oct 19, 2026
+ */
+public interface FunlMetricsMBean {
+    long getEvaluations();
+    long getFailedEvaluations();
+    double getEvaluationsPerSecond();
+    double getMeanLatencyMicros();
+    double getLatencyP50Micros();
+    double getLatencyP99Micros();
+    double getMaxLatencyMicros();
+    long getMaxScopeDepth();
+    double getMeanPeakScopeDepth();
+    long getScopeDepthOverflows();
+    long getTierUps();
+    long getDeoptimizations();
+    long getCompiledCalls();
+    long getDefines();
+    double getMeanParseMillis();
+    int getFunctionTableSize();
+    long getFunctionTableVersion();
+    String snapshot();
+    void reset();
+}
@@ -0,0 +1,323 @@
+package evaluator;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for a pool of pre-initialized Funl isolates. The program
+ * is parsed once; every isolate shares its functions read-only and
+ * only owns its scopes, so checking one in merely resets its scopes.
+ * Isolates idle for longer than the idle timeout are evicted and
+ * re-created on demand.
+ * @version Oct 19, 2026
+ */
+public class FunlPool {
+    /**
+     * Hook run against freshly created isolates, typically making
+     * representative calls so that JIT profiles are hot before
+     * real traffic arrives.
+     */
+    public interface WarmUp {
+        /**
+         * Warms up an isolate.
+         * @param isolate Isolate to be warmed up.
+         */
+        void warmUp(Funl isolate);
+    }
+
+    /**
+     * An idle isolate along with the time it was checked in.
+     */
+    private static class Idle {
+        final Funl isolate;
+        final long since;
+
+        Idle(Funl isolate, long since) {
+            this.isolate = isolate;
+            this.since = since;
+        }
+    }
+
+    private final Funl prototype;
+    private final int size;
+    private final long idleTimeoutNanos;
+    private final Semaphore permits;
+    /* most recently used isolates first */
+    private final ArrayDeque<Idle> idle = new ArrayDeque<Idle>();
+    private final Set<Funl> inUse = Collections.newSetFromMap(new IdentityHashMap<Funl, Boolean>());
+    /* created and being warmed up, outside the monitor */
+    private final Set<Funl> starting = Collections.newSetFromMap(new IdentityHashMap<Funl, Boolean>());
+    private volatile WarmUp warmUp;
+    private FunlMetrics metrics;
+    private long created = 0;
+    private long evicted = 0;
+
+    /**
+     * Constructor for FunlPool.
+     * @param program Funl program (one or more function definitions)
+     * shared by all isolates.
+     * @param size Maximum number of isolates checked out at a time.
+     * @param idleTimeoutMillis Time after which an idle isolate is
+     * evicted, in milliseconds; 0 to never evict.
+     */
+    public FunlPool(String program, int size, long idleTimeoutMillis) {
+        if (size < 1)
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        if (idleTimeoutMillis < 0)
+            throw new IllegalArgumentException("Idle timeout must not be negative: " + idleTimeoutMillis);
+        prototype = new Funl();
+        prototype.define(program);
+        this.size = size;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Sets the hook run against each newly created isolate.
+     * @param warmUp Warm-up hook; null for none.
+     */
+    public synchronized void setWarmUp(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Sets the metrics recorded by all isolates of this pool.
+     * @param metrics Metrics to be shared; null to stop recording.
+     */
+    public synchronized void setMetrics(FunlMetrics metrics) {
+        this.metrics = metrics;
+        prototype.setMetrics(metrics);
+        for (Idle i : idle)
+            i.isolate.setMetrics(metrics);
+        for (Funl isolate : inUse)
+            isolate.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the cache all isolates of this pool parse input through.
+     * @param cache Cache to be shared; null to parse all input.
+     */
+    public synchronized void setParseCache(ParseCache cache) {
+        prototype.setParseCache(cache);
+        for (Idle i : idle)
+            i.isolate.setParseCache(cache);
+        for (Funl isolate : inUse)
+            isolate.setParseCache(cache);
+        for (Funl isolate : starting)
+            isolate.setParseCache(cache);
+    }
+
+    /**
+     * Sets a warm-up hook evaluating each of the given expressions
+     * the given number of times.
+     * @param iterations Number of times each expression is evaluated.
+     * @param expressions Representative Funl expressions.
+     */
+    public void setWarmUp(final int iterations, final String... expressions) {
+        setWarmUp(isolate -> {
+            for (String expression : expressions) {
+                Tree<Token> expr = isolate.parseInput(expression);
+                for (int i = 0; i < iterations; ++i)
+                    isolate.eval(expr);
+            }
+        });
+    }
+
+    /**
+     * Creates and warms up isolates until the pool is full. Isolates
+     * are warmed up without holding the pool, which stays usable.
+     */
+    public void prestart() {
+        while (create(false) != null);
+    }
+
+    /**
+     * Checks out an isolate, waiting until one is available.
+     * @return An isolate ready for use.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Funl acquire() throws InterruptedException {
+        permits.acquire();
+        return checkOut();
+    }
+
+    /**
+     * Checks out an isolate, waiting up to the given time.
+     * @param timeout Maximum time to wait.
+     * @param unit Unit of the timeout.
+     * @return An isolate ready for use, or null if none became available.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Funl tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!permits.tryAcquire(timeout, unit))
+            return null;
+        return checkOut();
+    }
+
+    /**
+     * Checks an isolate back in, discarding its scopes.
+     * @param isolate Isolate obtained from this pool.
+     * @throws IllegalArgumentException If the isolate is not
+     * checked out from this pool.
+     */
+    public void release(Funl isolate) {
+        synchronized (this) {
+            if (!inUse.remove(isolate))
+                throw new IllegalArgumentException("Isolate not checked out from this pool");
+            isolate.reset();
+            idle.addFirst(new Idle(isolate, System.nanoTime()));
+            evictIdle();
+        }
+        permits.release();
+    }
+
+    /**
+     * Adds or replaces functions of the shared program while isolates
+     * may be running; each isolate sees the new functions from its
+     * next evaluation on.
+     * @param functionDefinitions Funl program to be parsed.
+     */
+    public void redefine(String functionDefinitions) {
+        synchronized (prototype) {
+            prototype.redefine(functionDefinitions);
+        }
+    }
+
+    /**
+     * Gets a function of the shared program by name.
+     * @param funcName Name of the function.
+     * @return The function definition, shared by all isolates.
+     */
+    public Tree<Token> function(String funcName) {
+        return prototype.function(funcName);
+    }
+
+    /**
+     * Gets the number of isolates idle in this pool.
+     * @return Number of idle isolates.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of isolates checked out from this pool.
+     * @return Number of isolates in use.
+     */
+    public synchronized int getInUseCount() {
+        return inUse.size();
+    }
+
+    /**
+     * Gets the number of isolates created by this pool so far.
+     * @return Number of isolates created.
+     */
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    /**
+     * Gets the number of idle isolates evicted by this pool so far.
+     * @return Number of isolates evicted.
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    /**
+     * Gets the maximum number of isolates checked out at a time.
+     * @return Size of this pool.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Takes an idle isolate, or creates one; the caller holds a permit.
+     * @return An isolate ready for use.
+     */
+    private Funl checkOut() {
+        boolean done = false;
+        try {
+            Funl isolate = null;
+            synchronized (this) {
+                evictIdle();
+                if (!idle.isEmpty()) {
+                    isolate = idle.removeFirst().isolate;
+                    inUse.add(isolate);
+                }
+            }
+            if (isolate == null)
+                isolate = create(true);
+            done = true;
+            return isolate;
+        }
+        finally {
+            if (!done)
+                permits.release();
+        }
+    }
+
+    /**
+     * Creates and warms up an isolate. The warm-up hook runs without
+     * holding the pool, so that a slow hook does not block it and a
+     * hook calling back into the pool does not deadlock.
+     * @param checkedOut True to check the isolate out, for a caller
+     * holding a permit; false to add it to the idle isolates.
+     * @return A new isolate, or null if one to be idle would not fit
+     * in the pool.
+     */
+    private Funl create(boolean checkedOut) {
+        Funl isolate;
+        synchronized (this) {
+            if (!checkedOut && idle.size() + inUse.size() + starting.size() >= size)
+                return null;
+            isolate = prototype.newIsolate();
+            starting.add(isolate);
+        }
+        boolean warm = false;
+        try {
+            WarmUp hook = warmUp;
+            if (hook != null) {
+                hook.warmUp(isolate);
+                isolate.reset();
+            }
+            warm = true;
+        }
+        finally {
+            synchronized (this) {
+                starting.remove(isolate);
+                if (warm) {
+                    // warm-up calls are not traffic
+                    isolate.setMetrics(metrics);
+                    ++created;
+                    if (checkedOut)
+                        inUse.add(isolate);
+                    else
+                        idle.addLast(new Idle(isolate, System.nanoTime()));
+                }
+            }
+        }
+        return isolate;
+    }
+
+    /**
+     * Evicts isolates idle for longer than the idle timeout.
+     */
+    private void evictIdle() {
+        if (idleTimeoutNanos == 0)
+            return;
+        long now = System.nanoTime();
+        // least recently used isolates are at the end
+        Iterator<Idle> it = idle.descendingIterator();
+        while (it.hasNext() && now - it.next().since > idleTimeoutNanos) {
+            it.remove();
+            ++evicted;
+        }
+    }
+}
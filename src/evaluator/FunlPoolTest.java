@@ -0,0 +1,131 @@
+package evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for FunlPool
+ * @version Oct 19, 2026
+ */
+public class FunlPoolTest {
+    FunlPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new FunlPool(
+                "def square x = x * x end " +
+                "def sqrt_helper x y = " +
+                "    val y_squared = y * y, " +
+                "    if y_squared - x - 0.0001 then sqrt_helper(x, (y + x / y) / 2) else y end " +
+                "end", 2, 0);
+    }
+
+    @Test
+    public final void testAcquire() throws Exception {
+        Funl isolate = pool.acquire();
+        assertEquals("9.0", isolate.eval(isolate.parseInput("square(3)")).getValue().getValue());
+        assertEquals(1, pool.getInUseCount());
+        pool.release(isolate);
+        assertEquals(0, pool.getInUseCount());
+        assertEquals(1, pool.getIdleCount());
+        assertSame(isolate, pool.acquire());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public final void testIsolation() throws Exception {
+        Funl first = pool.acquire();
+        Funl second = pool.acquire();
+        assertNotSame(first, second);
+        first.eval(first.parseInput("val a = 3"));
+        assertEquals("9.0", first.eval(first.parseInput("square(a)")).getValue().getValue());
+        try {
+            second.eval(second.parseInput("square(a)"));
+            fail();
+        }
+        catch (RuntimeException e) { }
+        // recursive vals are fine outside the REPL
+        assertEquals(1.414, Double.parseDouble(
+                second.eval(second.parseInput("sqrt_helper(2, 2)")).getValue().getValue()), 0.001);
+        assertNull(pool.tryAcquire(10, TimeUnit.MILLISECONDS));
+        pool.release(first);
+        first = pool.acquire();
+        try {
+            first.eval(first.parseInput("a"));
+            fail();
+        }
+        catch (RuntimeException e) { }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public final void testReadOnly() throws Exception {
+        Funl isolate = pool.acquire();
+        isolate.eval(isolate.parseInput("def square x = x end"));
+    }
+
+    @Test
+    public final void testRedefine() throws Exception {
+        Funl isolate = pool.acquire();
+        assertEquals("9.0", isolate.eval(isolate.parseInput("square(3)")).getValue().getValue());
+        pool.redefine("def square x = x * x * x end");
+        assertEquals("27.0", isolate.eval(isolate.parseInput("square(3)")).getValue().getValue());
+        assertEquals(1.414, Double.parseDouble(
+                isolate.eval(isolate.parseInput("sqrt_helper(2, 2)")).getValue().getValue()), 0.001);
+    }
+
+    @Test
+    public final void testWarmUp() throws Exception {
+        pool.setWarmUp(100, "square(2)", "sqrt_helper(2, 2)");
+        pool.prestart();
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    @Test
+    public final void testWarmUpOutsidePool() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        // the hook waits on another thread using the pool
+        pool.setWarmUp(isolate -> {
+            try {
+                executor.submit(() -> pool.getIdleCount()).get(5, TimeUnit.SECONDS);
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Funl isolate = pool.acquire();
+        assertEquals(1, pool.getInUseCount());
+        pool.release(isolate);
+        // a failed warm-up gives its permit back
+        pool.setWarmUp(i -> { throw new IllegalStateException("warm-up failed"); });
+        Funl other = pool.acquire();
+        try {
+            pool.acquire();
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("warm-up failed", e.getMessage());
+        }
+        assertEquals(1, pool.getInUseCount());
+        pool.setWarmUp(null);
+        assertNotNull(pool.tryAcquire(1, TimeUnit.SECONDS));
+        pool.release(other);
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testEviction() throws Exception {
+        pool = new FunlPool("def square x = x * x end", 2, 1);
+        Funl isolate = pool.acquire();
+        pool.release(isolate);
+        Thread.sleep(20);
+        assertNotSame(isolate, pool.acquire());
+        assertEquals(1, pool.getEvictedCount());
+    }
+}
@@ -0,0 +1,192 @@
+package evaluator;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class for a streaming stage that applies a one-parameter Funl
+ * function to every number of an unbounded input stream. The
+ * function is resolved once when the stage is built and then called
+ * directly for each record, without parsing any expression.
+ * <p>
+ * Streams are pulled: the output iterator only takes input as it is
+ * consumed itself, which propagates back-pressure to the source. A
+ * parallel stage spreads records over isolates of a FunlPool, keeps
+ * at most a bounded number of them in flight, and still returns
+ * results in input order.
+ * @version Oct 19, 2026
+ */
+public class FunlStage {
+    private final Funl funl;
+    private final FunlPool pool;
+    private final ExecutorService executor;
+    private final int bufferSize;
+    private final Tree<Token> function;
+    private final LongAdder processed = new LongAdder();
+    private volatile long startNanos = 0;
+
+    /**
+     * Constructor for a sequential stage.
+     * @param funl Evaluator holding the function; it must not be
+     * used by other threads while the stage runs.
+     * @param funcName Name of a function with one parameter.
+     */
+    public FunlStage(Funl funl, String funcName) {
+        this.funl = funl;
+        this.pool = null;
+        this.executor = null;
+        this.bufferSize = 1;
+        this.function = bind(funl.function(funcName), funcName);
+    }
+
+    /**
+     * Constructor for a parallel stage.
+     * @param pool Pool of isolates holding the function.
+     * @param funcName Name of a function with one parameter.
+     * @param executor Executor to run the function on.
+     * @param bufferSize Maximum number of records in flight.
+     */
+    public FunlStage(FunlPool pool, String funcName, ExecutorService executor, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        this.funl = null;
+        this.pool = pool;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.function = bind(pool.function(funcName), funcName);
+    }
+
+    /**
+     * Applies the function of this stage to a single number.
+     * Only meaningful for a sequential stage.
+     * @param x Input number.
+     * @return Output number.
+     */
+    public double apply(double x) {
+        if (funl == null)
+            throw new IllegalStateException("Not a sequential stage");
+        return apply(funl, x);
+    }
+
+    /**
+     * Applies the function of this stage to every number of a stream.
+     * @param input Stream of input numbers.
+     * @return Stream of output numbers, in input order.
+     */
+    public Iterator<Double> process(final Iterator<Double> input) {
+        if (funl != null) {
+            return new Iterator<Double>() {
+                @Override
+                public boolean hasNext() {
+                    return input.hasNext();
+                }
+
+                @Override
+                public Double next() {
+                    return apply(funl, input.next());
+                }
+            };
+        }
+        return new Iterator<Double>() {
+            private final ArrayDeque<Future<Double>> inFlight = new ArrayDeque<Future<Double>>();
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public Double next() {
+                fill();
+                if (inFlight.isEmpty())
+                    throw new NoSuchElementException();
+                try {
+                    return inFlight.removeFirst().get();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Runtime Exception: interrupted while streaming.");
+                }
+                catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+
+            /* takes input only while there is room in the buffer */
+            private void fill() {
+                while (inFlight.size() < bufferSize && input.hasNext()) {
+                    final double x = input.next();
+                    inFlight.addLast(executor.submit(() -> {
+                        Funl isolate = pool.acquire();
+                        try {
+                            return apply(isolate, x);
+                        }
+                        finally {
+                            pool.release(isolate);
+                        }
+                    }));
+                }
+            }
+        };
+    }
+
+    /**
+     * Gets the number of records processed so far.
+     * @return Number of records.
+     */
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    /**
+     * Gets the average throughput since the first record.
+     * @return Records processed per second.
+     */
+    public double getThroughput() {
+        long start = startNanos;
+        if (start == 0)
+            return 0;
+        long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0 : processed.sum() * 1e9 / elapsed;
+    }
+
+    /**
+     * Checks that a function takes one parameter.
+     * @param func Function definition.
+     * @param funcName Name of the function.
+     * @return The function definition.
+     */
+    private static Tree<Token> bind(Tree<Token> func, String funcName) {
+        if (func.getChild(1).getNumberOfChildren() != 1)
+            throw new IllegalArgumentException(
+                    "Function '" + funcName + "' must take exactly one parameter");
+        return func;
+    }
+
+    /**
+     * Applies the function of this stage on a given evaluator.
+     * @param evaluator Evaluator to call the function on.
+     * @param x Input number.
+     * @return Output number.
+     */
+    private double apply(Funl evaluator, double x) {
+        if (startNanos == 0)
+            startNanos = System.nanoTime();
+        Token res = evaluator.call(function, x).getValue();
+        if (res.getType() != TokenType.NUMBER)
+            throw new RuntimeException(
+                    "Runtime Exception: stage function evaluates to a function.");
+        // a number in an exact mode rounds to double once, from its exact value
+        double y = res instanceof Numeral ? ((Numeral) res).number : Double.parseDouble(res.getValue());
+        processed.increment();
+        return y;
+    }
+}
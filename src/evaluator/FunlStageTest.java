@@ -0,0 +1,103 @@
+package evaluator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for FunlStage
+ * @version Oct 19, 2026
+ */
+public class FunlStageTest {
+    private static final String PROGRAM =
+            "def square x = x * x end def add x y = x + y end";
+
+    @Test
+    public final void testSequential() {
+        Funl funl = new Funl();
+        funl.define(PROGRAM);
+        FunlStage stage = new FunlStage(funl, "square");
+        assertEquals(16.0, stage.apply(4), 0);
+        assertEquals(list(1, 4, 9), drain(stage.process(list(1, 2, 3).iterator())));
+        assertEquals(4, stage.getProcessedCount());
+        assertTrue(stage.getThroughput() > 0);
+    }
+
+    @Test
+    public final void testParallel() {
+        FunlPool pool = new FunlPool(PROGRAM, 3, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        FunlStage stage = new FunlStage(pool, "square", executor, 8);
+        List<Double> input = new ArrayList<Double>();
+        List<Double> expected = new ArrayList<Double>();
+        for (int i = 0; i < 1000; ++i) {
+            input.add((double) i);
+            expected.add((double) i * i);
+        }
+        assertEquals(expected, drain(stage.process(input.iterator())));
+        assertEquals(1000, stage.getProcessedCount());
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testBackPressure() {
+        FunlPool pool = new FunlPool(PROGRAM, 2, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        FunlStage stage = new FunlStage(pool, "square", executor, 4);
+        final int[] pulled = { 0 };
+        Iterator<Double> unbounded = new Iterator<Double>() {
+            public boolean hasNext() { return true; }
+            public Double next() { return (double) pulled[0]++; }
+        };
+        Iterator<Double> output = stage.process(unbounded);
+        for (int i = 0; i < 10; ++i)
+            assertEquals(i * i, output.next(), 0);
+        assertTrue(pulled[0] <= 10 + 4);
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testResults() {
+        Funl funl = new Funl();
+        funl.define(PROGRAM + " def third x = x / 3 end def pick x = if x then add else x end end");
+        funl.setNumericMode(NumericMode.EXACT);
+        assertEquals(1 / 3.0, new FunlStage(funl, "third").apply(1), 0);
+        assertEquals(0, new FunlStage(funl, "pick").apply(0), 0);
+        try {
+            new FunlStage(funl, "pick").apply(1);
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertEquals("Runtime Exception: stage function evaluates to a function.", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testArity() {
+        Funl funl = new Funl();
+        funl.define(PROGRAM);
+        new FunlStage(funl, "add");
+    }
+
+    /* private helpers */
+
+    private List<Double> list(double... values) {
+        List<Double> list = new ArrayList<Double>();
+        for (double value : values)
+            list.add(value);
+        return list;
+    }
+
+    private List<Double> drain(Iterator<Double> it) {
+        List<Double> list = new ArrayList<Double>();
+        while (it.hasNext())
+            list.add(it.next());
+        return list;
+    }
+}
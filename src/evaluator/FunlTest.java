@@ -2,6 +2,14 @@ package evaluator;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.ObjectName;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -14,6 +22,17 @@ public class FunlTest {
     Funl funl;
     Parser parser;
 
+    /* functions for the compact and compiled forms */
+    private static final String COMPILED = "def fact n = if n then n * fact(n - 1) else 1 end end " +
+            "def count n total = if n > 0 then count(n - 1, total + n) else total end end " +
+            "def ge x y = x >= y end def add x y = x + y end def identity x = x end " +
+            "def for first last apply combine = val init = apply(first), " +
+            "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end " +
+            "def pick c = val t = c * 2, if c > 1 and not c > 5 then t else add end end " +
+            "def ask = read \"n\" + hypot(3, 4) end def again x = val x = 1, x end " +
+            "def boom n = 1 + boom(n + 1) end def bad x = x(1) end def lost = lost + 1 end " +
+            "def sum n = for(1, n, identity, add) end";
+
     @Before
     public void setUp() throws Exception {
         funl = new Funl();
@@ -45,7 +64,723 @@ public class FunlTest {
         assertTrue(equalIgnoreTypes(Tree.parse("41.0"), funl.eval(get("add(3*9 + minus(10, 1), seq())"))));
     }
     
+    @Test
+    public final void testAllocations() {
+        // not an alias of +, so the call gets a frame
+        funl.define("def add x y = y + x end");
+        funl.eval(get("add(1, 2) * 3"));
+        assertEquals(2, funl.getAllocations().getFrames());
+        assertEquals(2, funl.getAllocations().getValues());
+        assertEquals(2, funl.getAllocations().getNodes());
+        funl.eval(get("1 + 2"));
+        assertEquals(0, funl.getAllocations().getFrames());
+        assertEquals(1, funl.getAllocations().getValues());
+        assertEquals(3, funl.getAllocations().getTotalValues());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public final void testAllocationLimit() {
+        funl.define("def add x y = x + y end");
+        funl.setAllocationLimit(5);
+        funl.eval(get("add(1, 2) * add(3, 4)"));
+    }
+
+    @Test
+    public final void testRead() {
+        funl.define("def sum2 = read \"a: \" + read \"b: \" end");
+        BatchInputProvider input = new BatchInputProvider(1, 2, 3, 4);
+        funl.setInputProvider(input);
+        assertTrue(equalIgnoreTypes(Tree.parse("3.0"), funl.eval(get("sum2()"))));
+        assertTrue(equalIgnoreTypes(Tree.parse("7.0"), funl.eval(get("sum2()"))));
+        assertEquals(0, input.remaining());
+        input.reset();
+        assertTrue(equalIgnoreTypes(Tree.parse("3.0"), funl.eval(get("sum2()"))));
+    }
+
+    @Test
+    public final void testReadAsync() throws Exception {
+        funl.define("def sum2 = read \"a: \" + read \"b: \" end");
+        AsyncInputProvider input = new AsyncInputProvider(5000);
+        funl.setInputProvider(input);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Tree<Token>> result = funl.evalAsync(get("sum2()"), executor);
+        input.offer(20);
+        input.offer(22);
+        assertTrue(equalIgnoreTypes(Tree.parse("42.0"), result.get()));
+        executor.shutdown();
+    }
+
+    @Test
+    public final void testRedefine() {
+        funl.define("def f = read \"x: \" + g() end def g = 1 end");
+        Funl isolate = funl.newIsolate();
+        long version = funl.getFunctionTable().getVersion();
+        // redefine g halfway through an evaluation of f
+        isolate.setInputProvider(prompt -> {
+            funl.redefine("def g = 100 end");
+            return 0;
+        });
+        assertTrue(equalIgnoreTypes(Tree.parse("1.0"), isolate.eval(isolate.parseInput("f()"))));
+        assertTrue(equalIgnoreTypes(Tree.parse("100.0"), isolate.eval(isolate.parseInput("g()"))));
+        assertEquals(version + 1, funl.getFunctionTable().getVersion());
+        assertEquals(2, funl.getFunctionTable().size());
+    }
+
+    @Test
+    public final void testProfiler() throws Exception {
+        funl.define("def fact n = if n - 1 then n * fact(n - 1) else 1 end end " +
+                "def twice x = fact(x) + fact(x) end");
+        Profiler profiler = new Profiler(true);
+        funl.setProfiler(profiler);
+        funl.eval(get("twice(5)"));
+        assertEquals(1, profiler.get("twice").getCalls());
+        assertEquals(10, profiler.get("fact").getCalls());
+        assertEquals(5, profiler.get("fact").getMaxDepth());
+        assertTrue(profiler.get("twice").getInclusiveNanos() >= profiler.get("fact").getInclusiveNanos());
+        assertEquals(profiler.get("twice").getInclusiveNanos(),
+                profiler.get("twice").getExclusiveNanos() + profiler.get("fact").getExclusiveNanos());
+        StringBuilder folded = new StringBuilder();
+        profiler.writeFoldedStacks(folded);
+        assertTrue(folded.toString().contains("twice;fact;fact;fact;fact;fact "));
+        funl.setProfiler(null);
+        funl.eval(get("twice(5)"));
+        assertEquals(1, profiler.get("twice").getCalls());
+    }
+
+    @Test
+    public final void testMetrics() throws Exception {
+        FunlMetrics metrics = new FunlMetrics();
+        funl.setMetrics(metrics);
+        funl.define("def fact n = if n - 1 then n * fact(n - 1) else 1 end end " +
+                "def loop n = loop(n) end");
+        funl.eval(get("fact(5)"));
+        funl.eval(get("fact(3)"));
+        try {
+            funl.eval(get("loop(1)"));
+            fail();
+        }
+        catch (RuntimeException e) { }
+        assertEquals(3, metrics.getEvaluations());
+        assertEquals(1, metrics.getFailedEvaluations());
+        assertEquals(1, metrics.getScopeDepthOverflows());
+        assertEquals(1, metrics.getDefines());
+        assertEquals(2, metrics.getFunctionTableSize());
+        assertTrue(metrics.getMaxScopeDepth() >= 5);
+        assertTrue(metrics.getLatency().getMax() > 0);
+        assertTrue(metrics.snapshot().contains("funl_evaluations_total 3\n"));
+        metrics.register("FunlTest");
+        try {
+            Object size = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName("evaluator:type=FunlMetrics,name=\"FunlTest\""), "FunctionTableSize");
+            assertEquals(2, size);
+        }
+        finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    public final void testTrace() {
+        funl.define("def fact n = if n - 1 then n * fact(n - 1) else 1 end end " +
+                "def apply f x = f(x) end def bad x = x(1) end");
+        TraceBuffer trace = new TraceBuffer(64);
+        funl.setTrace(trace);
+        funl.eval(get("apply(fact, 2)"));
+        assertEquals(
+                "-> apply(f=fact, x=2.0)\n" +
+                "  -> fact(n=2.0)\n" +
+                "    -> fact(n=1.0)\n" +
+                "    <- fact = 1.0\n" +
+                "  <- fact = 2.0\n" +
+                "<- apply = 2.0\n", trace.toString());
+        StringBuilder out = new StringBuilder();
+        funl.setTraceOnError(out);
+        try {
+            funl.eval(get("apply(bad, 3)"));
+            fail();
+        }
+        catch (RuntimeException e) { }
+        assertTrue(out.toString().endsWith(
+                "  -> bad(x=3.0)\n" +
+                "  !! bad aborted\n" +
+                "!! apply aborted\n"));
+        // the buffer wraps around instead of growing
+        funl.eval(get("fact(100)"));
+        assertEquals(64, trace.size());
+        assertEquals(300, trace.getEventCount());
+        assertTrue(trace.toString().startsWith("... 236 earlier events overwritten\n"));
+    }
+
+    @Test
+    public final void testCallSiteCache() {
+        funl.define("def square x = x * x end def identity x = x end " +
+                "def apply f x = f(x) end def twice x = square(square(x)) end");
+        Tree<Token> call = funl.function("apply").getChild(2).getChild(0);
+        CallSite site = (CallSite) call.getValue();
+        // function-valued parameters: one verified target per function
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "9.0")), funl.eval(get("apply(square, 3)")));
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "3.0")), funl.eval(get("apply(identity, 3)")));
+        funl.eval(get("apply(square, 4)"));
+        assertEquals(2, site.getTargetCount());
+        assertFalse(site.isMegamorphic());
+        funl.define("def a x = x end def b x = x end def c x = x end " +
+                "def apply f x = f(x) end def bad x y = x end");
+        call = funl.function("apply").getChild(2).getChild(0);
+        site = (CallSite) call.getValue();
+        for (String f : new String[] { "a", "b", "c", "a", "b" })
+            funl.eval(get("apply(" + f + ", 1)"));
+        assertEquals(3, site.getTargetCount());
+        try {
+            funl.eval(get("apply(bad, 1)"));
+            fail();
+        }
+        catch (RuntimeException e) { }
+        assertEquals(3, site.getTargetCount());
+        // function names: cached per snapshot of the function table
+        funl.define("def square x = x * x end def twice x = square(square(x)) end");
+        site = (CallSite) funl.function("twice").getChild(2).getChild(0).getValue();
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "16.0")), funl.eval(get("twice(2)")));
+        assertTrue(site.isCached(funl.getFunctionTable().snapshot().functions));
+        funl.redefine("def square x = x + x end");
+        assertFalse(site.isCached(funl.getFunctionTable().snapshot().functions));
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "8.0")), funl.eval(get("twice(2)")));
+    }
+
+    @Test
+    public final void testShapeGuards() {
+        funl.define("def inc x = x + 1 end def twice f x = f(x) + f(x) end " +
+                "def test f = if f then 1 else 0 end end def dec x = val y = x - 1, y * y + x end");
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "4.0")), funl.eval(get("twice(inc, 1)")));
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "7.0")), funl.eval(get("dec(3)")));
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.", 
+                message(funl, "twice(inc, inc)"));
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.", 
+                message(funl, "dec(inc)"));
+        assertEquals("Runtime Exception: condition part of an if expression evaluates to a function.", 
+                message(funl, "test(inc)"));
+    }
+
+    @Test
+    public final void testLoopFusion() {
+        String program = "def ge x y = if x - y then 1 else if y - x then 0 else 1 end end end " +
+                "def identity x = x end def square x = x * x end def add x y = x + y end " +
+                "def sub x y = x - y end def pair x y = x * 10 + y end def multiply x y = x * y end " +
+                "def for first last apply combine = val init = apply(first), " +
+                "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end " +
+                "def fact n = if n - 1 then n * fact(n - 1) else 1 end end " +
+                "def count n total = if n then count(n - 1, total + n) else total end end " +
+                "def forever n = if 0 then 0 else 1 + forever(n) end end";
+        funl.define(program);
+        Funl nested = new Funl();
+        nested.define(program);
+        nested.setLoopFusion(false);
+        // the same results as the recursion, at constant scope depth
+        for (String expr : new String[] { "fact(20)", "for(1, 20, identity, multiply)", 
+                "for(1, 100, square, add)", "for(1, 5, identity, sub)", "for(1, 4, identity, pair)", 
+                "count(100, 0)", "for(3, 1, identity, add)" }) {
+            assertEquals(expr, nested.eval(get(expr)), funl.eval(get(expr)));
+        }
+        assertEquals(funl.eval(get("for(1, 5, identity, sub)")), new Tree<Token>(new Token(TokenType.NUMBER, "3.0")));
+        assertEquals(funl.eval(get("for(1, 4, identity, pair)")), new Tree<Token>(new Token(TokenType.NUMBER, "64.0")));
+        // errors surface as the recursion would raise them
+        assertEquals(message(nested, "for(1, 3, identity, square)"), message(funl, "for(1, 3, identity, square)"));
+        assertEquals(message(nested, "for(1, 3, identity, 2)"), message(funl, "for(1, 3, identity, 2)"));
+        assertEquals(message(nested, "for(1, 3, square, identity)"), message(funl, "for(1, 3, square, identity)"));
+        // beyond the nested scope depth
+        assertTrue(message(nested, "for(1, 5000, square, add)").contains("depth"));
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "4.16791675E10")), 
+                funl.eval(get("for(1, 5000, square, add)")));
+        assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "1.2500025E11")), 
+                funl.eval(get("count(500000, 0)")));
+        assertEquals("Runtime Exception: exceeded maximum fold length of 1000000", message(funl, "forever(1)"));
+        // not fused while profiling
+        funl.setProfiler(new Profiler());
+        funl.eval(get("fact(5)"));
+        assertEquals(5, funl.getProfiler().get("fact").getCalls());
+    }
+
+    @Test
+    public final void testParallelFolds() throws Exception {
+        funl.define("def ge x y = if x - y then 1 else if y - x then 0 else 1 end end end " +
+                "def identity x = x end def square x = x * x end def add x y = x + y end " +
+                "def input x = read \"x?\" end def sub x y = x - y end " +
+                "def boom x = if x - 2500 then x + identity else x end end " +
+                "def for first last apply combine = val init = apply(first), " +
+                "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end " +
+                "def sum n = if n then n + sum(n - 1) else 0 end end");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            funl.setParallelFolds(executor, 4);
+            assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "3.3333833335E14")), 
+                    funl.eval(get("for(1, 100000, square, add)")));
+            // iterations on isolates are not counted here
+            assertTrue(funl.getAllocations().getFrames() < 100000);
+            assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "4.999995E11")), 
+                    funl.eval(get("sum(1000000 - 1)")));
+            // not associative: in order
+            assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "-5000.0")), 
+                    funl.eval(get("for(1, 10000, identity, sub)")));
+            // reads are rerun in order on the evaluator itself
+            double[] numbers = new double[3000];
+            java.util.Arrays.fill(numbers, 2);
+            funl.setInputProvider(new BatchInputProvider(numbers));
+            assertEquals(new Tree<Token>(new Token(TokenType.NUMBER, "6000.0")), 
+                    funl.eval(get("for(1, 3000, input, add)")));
+            // so are failures, to raise the error of the first one
+            assertEquals("Runtime Exception: arithmetic operand evaluates to a function.", 
+                    message(funl, "for(1, 5000, boom, add)"));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public final void testNumericModes() {
+        String program = "def fact n = if n - 1 then n * fact(n - 1) else 1 end end " +
+                "def eq x y = if x - y then 0 else if y - x then 0 else 1 end end end " +
+                "def count n total = if n then count(n - 1, total + n) else total end end";
+        funl.define(program);
+        assertEquals(number("1.5511210043330986E25"), funl.eval(get("fact(25)")));
+        assertEquals(number("1.0"), funl.eval(get("eq(1152921504606846977, 1152921504606846976)")));
+        // exact integers promote past longs
+        funl.setNumericMode(NumericMode.EXACT);
+        assertEquals(number("15511210043330985984000000"), funl.eval(get("fact(25)")));
+        assertEquals(number("15511210043330985984000000"), funl.eval(get("fact(25)")));
+        assertEquals(number("0"), funl.eval(get("eq(1152921504606846977, 1152921504606846976)")));
+        assertEquals(number("123456789012345678902"), funl.eval(get("123456789012345678901 + 1")));
+        assertEquals(number("2"), funl.eval(get("0.5 * 4")));
+        assertEquals(number("0.3"), funl.eval(get("0.1 + 0.2")));
+        // converted literals are values too
+        assertEquals(3, funl.getAllocations().getValues());
+        assertEquals(number("5000050000"), funl.eval(get("count(100000, 0)")));
+        assertEquals("Runtime Exception: division by zero.", message(funl, "1 / (1 - 1)"));
+        // decimals rounded to a MathContext
+        funl.setNumericMode(NumericMode.decimal(new java.math.MathContext(5)));
+        assertEquals(number("0.33333"), funl.eval(get("1 / 3")));
+        assertEquals(number("15511000000000000000000000"), funl.eval(get("fact(25)")));
+        funl.setNumericMode(NumericMode.DOUBLE);
+        assertEquals(number("0.30000000000000004"), funl.eval(get("0.1 + 0.2")));
+    }
+
+    @Test
+    public final void testLogicalOperators() {
+        funl.define("def boom = 1 + boom end def eq x y = x == y end def or x y = x or y end " +
+                "def not_eq x y = not x == y end def fib n = if n == 1 or n == 2 then 1 " +
+                "else fib(n - 1) + fib(n - 2) end end def a = 0 end def same a b = a == b end");
+        assertEquals(number("1.0"), funl.eval(get("2 >= 2 and 1 < 2 and 3 != 4")));
+        assertEquals(number("0.0"), funl.eval(get("2 > 2 or 1 <= 0 or 3 == 4")));
+        assertEquals(number("5.0"), funl.eval(get("0 or 5")));
+        assertEquals(number("-1.0"), funl.eval(get("(0 - 1) and 5")));
+        assertEquals(number("1.0"), funl.eval(get("not not 2")));
+        assertEquals(number("55.0"), funl.eval(get("fib(10)")));
+        // short-circuiting
+        assertEquals(number("1.0"), funl.eval(get("1 or boom()")));
+        assertEquals(number("0.0"), funl.eval(get("0 and boom()")));
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.",
+                message(funl, "0 or boom()"));
+        assertEquals("Runtime Exception: logical operand evaluates to a function.",
+                message(funl, "not boom"));
+        // aliases run without a scope, but still evaluate all arguments
+        assertEquals(number("1.0"), funl.eval(get("or(eq(3, 3), eq(3, 4))")));
+        assertEquals(0, funl.getAllocations().getFrames());
+        assertEquals(message(funl, "0 or boom()"), message(funl, "or(1, boom())"));
+        assertEquals(number("1.0"), funl.eval(get("not_eq(1, 2)")));
+        // unless a parameter is shadowed by a function, as a here
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.",
+                message(funl, "same(0, 0)"));
+    }
+
+    @Test
+    public final void testIntrinsics() {
+        funl.bindIntrinsics(Intrinsics.math().bind("twice", x -> 2 * x));
+        funl.define("def sqrt x = 0 end def add x y = x + y end def identity x = x end " +
+                "def ge x y = x >= y end def for first last apply combine = val init = apply(first), " +
+                "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end");
+        // bound intrinsics replace functions of the program
+        assertEquals(number(Math.sqrt(2) + ""), funl.eval(get("sqrt(2)")));
+        assertEquals(number("5.0"), funl.eval(get("hypot(3, twice(2))")));
+        assertEquals(0, funl.getAllocations().getFrames());
+        // as values
+        assertEquals(number("20.0"), funl.eval(get("for(1, 4, twice, add)")));
+        assertEquals(number("4.0"), funl.eval(get("for(1, 4, identity, max)")));
+        assertEquals("Runtime Exception: argument of 'abs' evaluates to a function.", 
+                message(funl, "abs(add)"));
+        // through the body while profiling
+        funl.setProfiler(new Profiler());
+        assertEquals(number("3.0"), funl.eval(get("max(abs(0 - 3), 2)")));
+        assertEquals(1, funl.getProfiler().get("abs").getCalls());
+        funl.setProfiler(null);
+        funl.redefine("def sqrt x = 0 end");
+        assertEquals(number("0.0"), funl.eval(get("sqrt(2)")));
+        try {
+            new Intrinsics().bind("if", Math::abs);
+            fail("keyword bound");
+        }
+        catch (IllegalArgumentException e) { }
+    }
+
+    @Test
+    public final void testCallByNeed() {
+        String program = "def boom = 1 + boom end def fst x y = x end def or x y = x or y end " +
+                "def pick c x = if c then x + x else 0 end end def fact n = if n then n * fact(n - 1) else 1 end end " +
+                "def count n total = if n then count(n - 1, total + n) else total end end " +
+                "def ge x y = x >= y end def add x y = x + y end def identity x = x end " +
+                "def for first last apply combine = val init = apply(first), " +
+                "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end";
+        funl.define(program);
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.", 
+                message(funl, "fst(1, boom())"));
+        funl.setCallByNeed(true);
+        // unused arguments are not evaluated
+        assertEquals(number("1.0"), funl.eval(get("fst(1, boom())")));
+        assertEquals(number("1.0"), funl.eval(get("or(1, boom())")));
+        assertEquals(number("1.0"), funl.eval(get("fst(fst(1, boom()), boom())")));
+        // and used ones at most once
+        funl.setInputProvider(new BatchInputProvider(new double[] { 5, 7 }));
+        assertEquals(number("0.0"), funl.eval(get("pick(0, read \"n\")")));
+        assertEquals(number("10.0"), funl.eval(get("pick(1, read \"n\")")));
+        assertEquals(number("5050.0"), funl.eval(get("for(1, 100, identity, add)")));
+        assertEquals(number("5.00005E9"), funl.eval(get("count(100000, 0)")));
+        // strict parameters get no thunks
+        assertEquals("[true, true]", strictness(funl, "count"));
+        assertEquals("[true, false]", strictness(funl, "pick"));
+        assertEquals("[true, true, true, false]", strictness(funl, "for"));
+        funl.eval(get("fact(10)"));
+        long values = funl.getAllocations().getValues();
+        funl.setCallByNeed(false);
+        funl.eval(get("fact(10)"));
+        assertEquals(funl.getAllocations().getValues(), values);
+    }
+
+    @Test
+    public final void testFlatProgram() {
+        funl.bindIntrinsics(new Intrinsics().bind("hypot", Math::hypot));
+        funl.define(COMPILED);
+        FlatProgram program = funl.compact();
+        assertEquals(14, program.size());
+        // the view gives the parsed trees
+        for (String funcName : new String[] { "fact", "for", "pick", "ask", "again", "hypot" })
+            assertEquals(funl.function(funcName), program.function(funcName).toTree());
+        FlatProgram.Node body = program.function("pick").getChild(2);
+        assertEquals("val", body.getChild(0).getValue().getValue());
+        assertEquals("t", body.getChild(0).getChild(0).getValue().getValue());
+        assertEquals(3, body.getChild(1).getNumberOfChildren());
+        // and calls the results and errors of Funl
+        String[][] calls = { { "fact", "10" }, { "count", "1000", "0" }, { "sum", "10" }, { "pick", "3" },
+                { "pick", "6" }, { "again", "2" }, { "bad", "2" }, { "lost" }, { "fact" } };
+        for (String[] call : calls) {
+            double[] args = new double[call.length - 1];
+            for (int i = 1; i < call.length; ++i)
+                args[i - 1] = Double.parseDouble(call[i]);
+            assertEquals(result(() -> funl.call(funl.function(call[0]), args)),
+                    result(() -> program.call(call[0], args)));
+        }
+        // tail calls do not nest
+        assertEquals(number("5.00005E9"), program.call("count", 100000, 0));
+        // other calls do, up to the depth limit or the end of the Java stack
+        assertTrue(result(() -> program.call("boom", 0)).contains(" nested scope depth of "));
+        assertEquals(number("12.0"), program.call(new BatchInputProvider(7), "ask"));
+    }
+
+    @Test
+    public final void testBytecode() throws Exception {
+        funl.bindIntrinsics(new Intrinsics().bind("hypot", Math::hypot));
+        funl.define(COMPILED);
+        Bytecode bytecode = Bytecode.compile(funl.compact());
+        // n - 1 and the comparison of the if are single instructions
+        assertTrue(bytecode.disassemble("fact").contains("SUBK"));
+        assertTrue(bytecode.disassemble("count").contains("JUMP_UNLESS"));
+        assertTrue(bytecode.disassemble("count").contains("TAIL_CALL"));
+        // and the results and errors are those of Funl
+        String[][] calls = { { "fact", "10" }, { "count", "1000", "0" }, { "sum", "10" }, { "pick", "3" },
+                { "again", "2" }, { "bad", "2" }, { "lost" }, { "fact" } };
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        bytecode.write(new java.io.DataOutputStream(out));
+        Bytecode read = Bytecode.read(new java.io.DataInputStream(
+                new java.io.ByteArrayInputStream(out.toByteArray())), new Intrinsics().bind("hypot", Math::hypot));
+        for (String[] call : calls) {
+            double[] args = new double[call.length - 1];
+            for (int i = 1; i < call.length; ++i)
+                args[i - 1] = Double.parseDouble(call[i]);
+            String expected = result(() -> funl.compact().call(call[0], args));
+            assertEquals(expected, result(() -> bytecode.call(call[0], args)));
+            assertEquals(expected, result(() -> read.call(call[0], args)));
+        }
+        assertEquals("add", bytecode.call("pick", 6).getValue().getValue());
+        // frames are not on the Java stack
+        assertEquals("Runtime Exception: exceeded maximum nested scope depth of 1000",
+                result(() -> bytecode.call("boom", 0)));
+        assertEquals(number("5.00005E9"), bytecode.call("count", 100000, 0));
+        assertEquals(number("12.0"), read.call(new BatchInputProvider(7), "ask"));
+    }
+
+    @Test
+    public final void testTieredExecution() {
+        FunlMetrics metrics = new FunlMetrics();
+        funl.setMetrics(metrics);
+        funl.setTierThreshold(3);
+        funl.define(COMPILED + " def apply f x = f(x) end def twice x = apply(fact, x) + fact(x) end");
+        for (int i = 0; i < 5; ++i)
+            assertEquals(number("240.0"), funl.eval(get("twice(5)")));
+        // twice is compiled on its third call, with apply and fact
+        assertTrue(metrics.getTierUps() >= 1);
+        assertTrue(metrics.getCompiledCalls() >= 2);
+        // loop iterations count as calls
+        long tierUps = metrics.getTierUps();
+        funl.eval(get("count(10, 0)"));
+        assertEquals(number("55.0"), funl.eval(get("count(10, 0)")));
+        assertEquals(tierUps + 1, metrics.getTierUps());
+        // apply gets a function, so it goes back to the tree interpreter for good
+        for (int i = 0; i < 10; ++i)
+            assertEquals(number("6.0"), funl.eval(get("apply(fact, 3)")));
+        assertEquals(Tier.MAX_DEOPTS, metrics.getDeoptimizations());
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.",
+                message(funl, "sum(fact)"));
+        assertTrue(metrics.snapshot().contains("funl_tier_ups_total "));
+        // redefined functions are compiled again
+        long calls = metrics.getCompiledCalls();
+        funl.redefine("def fact n = 1 end");
+        for (int i = 0; i < 4; ++i)
+            assertEquals(number("2.0"), funl.eval(get("twice(5)")));
+        assertTrue(metrics.getCompiledCalls() > calls);
+        funl.setTierThreshold(0);
+    }
+
+    @Test
+    public final void testSpecializingNodes() {
+        funl.define(COMPILED + " def inc x = x + 1 end def succ x = add(x, 1) end");
+        Operation op = (Operation) funl.function("inc").getChild(2).getChild(0).getValue();
+        assertEquals(Operation.UNINITIALIZED, op.state);
+        assertEquals(number("3.0"), funl.eval(get("inc(2)")));
+        assertEquals(Operation.NUMBERS, op.state);
+        assertEquals(number("4.0"), funl.eval(get("inc(3)")));
+        // a function operand generalizes the node for good
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.",
+                message(funl, "inc(fact)"));
+        assertEquals(Operation.GENERIC, op.state);
+        assertEquals(number("5.0"), funl.eval(get("inc(4)")));
+        // a direct call applies its alias until the functions change
+        CallSite site = (CallSite) funl.function("succ").getChild(2).getChild(0).getValue();
+        assertEquals(number("6.0"), funl.eval(get("succ(5)")));
+        assertEquals(CallSite.GLOBAL, site.binding);
+        Tree<Token> add = funl.function("add");
+        assertEquals(add, site.cachedGlobal(funl.functions));
+        assertTrue(site.cachedAlias(funl.functions) != null);
+        funl.redefine("def add x y = x * y + 0 end");
+        assertEquals(number("5.0"), funl.eval(get("succ(5)")));
+        assertEquals(funl.functions.get("add"), site.cachedGlobal(funl.functions));
+        assertEquals(null, site.cachedAlias(funl.functions));
+    }
+
+    @Test
+    public final void testSpecialization() {
+        funl.define(COMPILED + " def power x n = if n == 1 then x else x * power(x, n - 1) end end " +
+                "def cube x = power(x, 3) end def double x = x + x end " +
+                "def twice f x = f(f(x)) end def quad x = twice(double, x) end");
+        funl.setSpecializationBudget(64);
+        assertEquals(number("27.0"), funl.eval(get("cube(1 + 2)")));
+        // power on 3 is unrolled to x * (x * x)
+        Tree<Token> call = funl.function("cube").getChild(2).getChild(0);
+        CallSite site = (CallSite) call.getValue();
+        Tree<Token> residual = site.cachedResidual(funl.functions, call.getChild(1)).function;
+        assertEquals(1, residual.getChild(1).getNumberOfChildren());
+        assertFalse(residual.getChild(2).toString().contains("power"));
+        assertEquals(number("64.0"), funl.eval(get("cube(4)")));
+        // function names are constants too
+        assertEquals(number("12.0"), funl.eval(get("quad(1 + 2)")));
+        call = funl.function("quad").getChild(2).getChild(0);
+        site = (CallSite) call.getValue();
+        residual = site.cachedResidual(funl.functions, call.getChild(1)).function;
+        assertEquals(1, residual.getChild(1).getNumberOfChildren());
+        assertFalse(residual.getChild(2).toString().contains("f "));
+        // residuals fail the same way, and follow redefinitions
+        assertEquals("Runtime Exception: arithmetic operand evaluates to a function.",
+                message(funl, "power(fact, 2)"));
+        funl.redefine("def double x = x * 3 end");
+        assertEquals(number("27.0"), funl.eval(get("quad(1 + 2)")));
+        // a call passing only constants is computed in full
+        assertEquals(number("27.0"), funl.eval(get("cube(3)")));
+        try {
+            funl.setSpecializationBudget(-1);
+            fail();
+        }
+        catch (IllegalArgumentException e) { }
+        funl.setSpecializationBudget(0);
+    }
+
+    @Test
+    public final void testSpecializationConstants() {
+        funl.define("def sel c x = if c then x else 0 end end " +
+                "def pw x n = if n == 1 then x else x * pw(x, n - 1) end end");
+        funl.setSpecializationBudget(64);
+        // one call site passing other constants gets another residual
+        // input with a comma is a sequence
+        Tree<Token> sel = get("sel(1, 5)").getChild(0);
+        assertEquals(number("5.0"), funl.eval(sel));
+        sel.getChild(1).getChild(0).setValue(new Numeral(0, "0"));
+        assertEquals(number("0.0"), funl.eval(sel));
+        Tree<Token> pw = get("pw(2, 3)").getChild(0);
+        assertEquals(number("8.0"), funl.eval(pw));
+        pw.getChild(1).getChild(0).setValue(new Numeral(3, "3"));
+        pw.getChild(1).getChild(1).setValue(new Numeral(2, "2"));
+        assertEquals(number("9.0"), funl.eval(pw));
+        CallSite site = (CallSite) pw.getValue();
+        assertTrue(site.cachedResidual(funl.functions, pw.getChild(1)) != null);
+        assertEquals(null, site.cachedResidual(funl.functions, get("pw(2, 3)").getChild(0).getChild(1)));
+    }
+
+    @Test
+    public final void testCommonSubexpressions() {
+        funl.define(COMPILED + " def dist x y = if fact(x) - y > 1 then (fact(x) - y) * 2 else 0 end + fact(x) end " +
+                "def cold x = if x then fact(x) else 1 end + fact(x) end def twice = read \"n\" + read \"n\" end");
+        funl.setCommonSubexpressionElimination(true);
+        assertEquals(number("16.0"), funl.eval(get("dist(3, 1)")));
+        assertEquals(number("1.0"), funl.eval(get("dist(1, 1)")));
+        // fact(x) - y and fact(x) are evaluated once, in the condition
+        Tree<Token> dist = funl.function("dist");
+        String shared = ((Definition) dist.getValue()).getOptimized(dist, funl.functions).toString();
+        assertEquals(1, shared.split("call\\(fact").length - 1);
+        assertTrue(shared.contains("val($cse1 -(val($cse0 $call(fact"));
+        // nothing is hoisted out of a branch, and input is read every time
+        Tree<Token> cold = funl.function("cold");
+        assertSame(cold, ((Definition) cold.getValue()).getOptimized(cold, funl.functions));
+        Tree<Token> twice = funl.function("twice");
+        assertSame(twice, ((Definition) twice.getValue()).getOptimized(twice, funl.functions));
+        assertEquals(number("12.0"), funl.eval(get("cold(3)")));
+        funl.setCommonSubexpressionElimination(false);
+        assertEquals(number("16.0"), funl.eval(get("dist(3, 1)")));
+    }
+
+    @Test
+    public final void testTreeShaking() {
+        String pruned = TreeShaker.prune(COMPILED + " def sum n = for(1, n, fact, add) end",
+                java.util.Arrays.asList("sum", "pick"));
+        // functions passed as values are reached, and only the last definition is kept
+        assertEquals("def fact n = if n then n * fact(n - 1) else 1 end end " +
+                "def ge x y = x >= y end def add x y = x + y end " +
+                "def for first last apply combine = val init = apply(first), " +
+                "if ge(first, last) then init else combine(init, for((first + 1), last, apply, combine)) end end " +
+                "def pick c = val t = c * 2, if c > 1 and not c > 5 then t else add end end " +
+                "def sum n = for(1, n, fact, add) end", pruned);
+        funl.define(pruned);
+        assertEquals(number("9.0"), funl.eval(get("sum(3)")));
+        try {
+            TreeShaker.prune(COMPILED, java.util.Arrays.asList("missing"));
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Unknown entry point: missing", e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testLinking() {
+        funl.define("def twice f x = f(f(x)) end def inc x = x + 1 end def go x = twice(inc, x) end " +
+                "def lost x = missing(x) end def short x = inc(x, 1) end def stray x = y + x end def add x y = x + y end");
+        assertEquals(Arrays.asList("lost: cannot resolve 'missing' to a function name.",
+                "short: number of argument(s) not match for function 'inc'. Expected: 1, actual: 2",
+                "stray: cannot resolve 'y' to a variable or function name."), funl.link());
+        // proven calls and references are resolved before they run
+        Tree<Token> go = funl.function("go");
+        Tree<Token> call = go.getChild(2).getChild(0);
+        assertTrue(((CallSite) call.getValue()).isCached(funl.getFunctionTable().snapshot().functions));
+        Tree<Token> inc = call.getChild(1).getChild(0);
+        assertSame(funl.function("inc"), ((Reference) inc.getValue())
+                .linked(funl.getFunctionTable().snapshot().functions).function);
+        assertEquals(number("3.0"), funl.eval(get("go(1)")));
+        assertEquals("Runtime Exception: cannot resolve 'missing' to a function name.",
+                message(funl, "lost(1)"));
+        // calls through parameters are still checked when they run
+        assertEquals("Runtime Exception: number of argument(s) not match for function 'f'.\n" +
+                "Expected: 2, actual: 1", message(funl, "twice(add, 1)"));
+        // redefining the functions drops the links
+        funl.redefine("def inc x = x + 2 end");
+        assertEquals(number("5.0"), funl.eval(get("go(1)")));
+        assertEquals(3, funl.link().size());
+    }
+
+    @Test
+    public final void testParseCache() {
+        funl.define("def square x = x * x end");
+        ParseCache cache = new ParseCache(2, true);
+        funl.setParseCache(cache);
+        Tree<Token> first = get("square(2) + 1");
+        assertSame(first, get("square(2) + 1"));
+        // input differing in its literals shares the template
+        Tree<Token> other = get("square(3.5) + 1");
+        assertSame(first.getValue(), other.getValue());
+        assertSame(first.getChild(1), other.getChild(1));
+        // a copied call gets its own call site
+        assertTrue(first.getChild(0).getValue() != other.getChild(0).getValue());
+        assertEquals(number("13.25"), funl.eval(other));
+        assertEquals(number("5.0"), funl.eval(first));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        // digits in a string are not literals
+        funl.setInputProvider(new BatchInputProvider(1));
+        assertEquals(number("3.0"), funl.eval(get("read \"a2\" + 2")));
+        assertTrue(get("read \"a3\" + 2") != get("read \"a2\" + 2"));
+        assertEquals(2, cache.size());
+        // definitions are always parsed
+        assertTrue(get("def id x = x end") != get("def id x = x end"));
+        funl.setParseCache(null);
+        assertTrue(get("square(2) + 1") != first);
+        try {
+            new ParseCache(0, false);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Parse cache capacity must be positive", e.getMessage());
+        }
+    }
+
+    @Test
+    public final void testParseCacheSpecialization() {
+        funl.define("def sel c x = if c then x else 0 end end " +
+                "def pw x n = if n == 1 then x else x * pw(x, n - 1) end end");
+        funl.setSpecializationBudget(64);
+        funl.setParseCache(new ParseCache(16, true));
+        assertEquals(number("5.0"), funl.eval(get("sel(1, 5)")));
+        assertEquals(number("0.0"), funl.eval(get("sel(0, 5)")));
+        assertEquals(number("5.0"), funl.eval(get("sel(1, 5)")));
+        assertEquals(number("8.0"), funl.eval(get("pw(2, 3)")));
+        assertEquals(number("9.0"), funl.eval(get("pw(3, 2)")));
+        assertEquals(number("8.0"), funl.eval(get("pw(2, 3)")));
+        assertEquals(number("16.0"), funl.eval(get("pw(2, 3) * 2")));
+        assertEquals(number("18.0"), funl.eval(get("pw(3, 2) * 2")));
+    }
+
     /* private helpers */
+
+    private String result(java.util.function.Supplier<Tree<Token>> call) {
+        try {
+            return call.get().toString();
+        }
+        catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+    
+    private String strictness(Funl funl, String funcName) {
+        Tree<Token> func = funl.function(funcName);
+        return Arrays.toString(((Definition) func.getValue()).getStrictness(func, 
+                funl.getFunctionTable().snapshot().functions));
+    }
+    
+    private String message(Funl funl, String expr) {
+        try {
+            funl.eval(get(expr));
+            return null;
+        }
+        catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+    
+    private Tree<Token> number(String s) {
+        return new Tree<Token>(new Token(TokenType.NUMBER, s));
+    }
     
     private Tree<Token> get(String s) {
         return funl.parseInput(s);
@@ -0,0 +1,101 @@
+package evaluator;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class for a lock-free histogram of non-negative values, with one
+ * bucket per power of two. Recording is a couple of striped counter
+ * increments, so it may be called from many threads on hot paths;
+ * quantiles are approximate to within a factor of two.
+ * @version Oct 19, 2026
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor for Histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; ++i)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a value; negative values count as 0.
+     * @param value Value to be recorded.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        // bucket i holds values from 2^i to 2^(i+1) - 1, bucket 0 also holds 0
+        buckets[value == 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the number of values recorded.
+     * @return Number of values.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     * @return Mean value; 0 if none was recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     * @return Maximum value; 0 if none was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets an upper bound of the given quantile of the values recorded.
+     * @param q Quantile, between 0 and 1.
+     * @return Upper bound of the bucket holding the quantile, capped
+     * by the maximum value; 0 if none was recorded.
+     */
+    public long getQuantile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+            total += counts[i] = buckets[i].sum();
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+                return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Discards all values recorded.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,16 @@
+package evaluator;
+
+/**
+ * Interface for sources of the numbers consumed by Funl
+ * read expressions.
+ * @version Oct 19, 2026
+ */
+public interface InputProvider {
+    /**
+     * Reads the next number for a read expression.
+     * @param prompt Prompt string of the read expression.
+     * @return The number read.
+     * @throws RuntimeException If no number can be read.
+     */
+    double read(String prompt);
+}
@@ -0,0 +1,75 @@
+package evaluator;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Token of the body of a function implemented in Java. Its children
+ * are the parameters of the function, whose values it passes to the
+ * Java function.
+ * @version Oct 19, 2026
+ */
+class Intrinsic extends Token {
+    final String name;
+    final DoubleUnaryOperator unary;   // null if binary
+    final DoubleBinaryOperator binary; // null if unary
+
+    /**
+     * Constructor for a function of one number.
+     * @param name Funl name of the function.
+     * @param unary Java function.
+     */
+    Intrinsic(String name, DoubleUnaryOperator unary) {
+        super(TokenType.KEYWORD, "$native");
+        this.name = name;
+        this.unary = unary;
+        this.binary = null;
+    }
+
+    /**
+     * Constructor for a function of two numbers.
+     * @param name Funl name of the function.
+     * @param binary Java function.
+     */
+    Intrinsic(String name, DoubleBinaryOperator binary) {
+        super(TokenType.KEYWORD, "$native");
+        this.name = name;
+        this.unary = null;
+        this.binary = binary;
+    }
+
+    /**
+     * Applies the Java function.
+     * @param x First argument.
+     * @param y Second argument; ignored by a function of one number.
+     * @return Result.
+     */
+    double apply(double x, double y) {
+        return unary != null ? unary.applyAsDouble(x) : binary.applyAsDouble(x, y);
+    }
+
+    /**
+     * Builds the definition of the function, as if parsed from
+     * def name x = $native(x) end (or with parameters x y), marked as
+     * an alias of its body so that calls skip the scope.
+     * @return Tree of the function definition.
+     */
+    Tree<Token> definition() {
+        Tree<Token> params = new Tree<Token>(new Token(TokenType.KEYWORD, "$seq"));
+        Tree<Token> body = new Tree<Token>(this);
+        String[] names = unary != null ? new String[] { "x" } : new String[] { "x", "y" };
+        for (String param : names) {
+            params.addChild(new Tree<Token>(new Token(TokenType.NAME, param)));
+            body.addChild(new Tree<Token>(new Token(TokenType.NAME, param)));
+        }
+        Definition token = new Definition();
+        token.setAlias(body);
+        Tree<Token> def = new Tree<Token>(token);
+        def.addChild(new Tree<Token>(new Token(TokenType.NAME, name)));
+        def.addChild(params);
+        Tree<Token> seq = new Tree<Token>(new Token(TokenType.KEYWORD, "$seq"));
+        seq.addChild(body);
+        def.addChild(seq);
+        return def;
+    }
+}
@@ -0,0 +1,119 @@
+package evaluator;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Class for a registry of functions implemented in Java and bound to
+ * Funl names, such as Math.sqrt bound to sqrt. Bound to an evaluator
+ * with Funl.bindIntrinsics, they are called like any Funl function and
+ * can be passed as values, but run without a scope.
+ * @version Oct 19, 2026
+ */
+public final class Intrinsics {
+    private final LinkedHashMap<String, Tree<Token>> definitions = new LinkedHashMap<String, Tree<Token>>();
+
+    /**
+     * Binds a function of one number to a Funl name.
+     * @param name Funl name.
+     * @param function Java function.
+     * @return This registry.
+     */
+    public Intrinsics bind(String name, DoubleUnaryOperator function) {
+        checkName(name);
+        if (function == null)
+            throw new IllegalArgumentException("Intrinsic '" + name + "' must not be null");
+        definitions.put(name, new Intrinsic(name, function).definition());
+        return this;
+    }
+
+    /**
+     * Binds a function of two numbers to a Funl name.
+     * @param name Funl name.
+     * @param function Java function.
+     * @return This registry.
+     */
+    public Intrinsics bind(String name, DoubleBinaryOperator function) {
+        checkName(name);
+        if (function == null)
+            throw new IllegalArgumentException("Intrinsic '" + name + "' must not be null");
+        definitions.put(name, new Intrinsic(name, function).definition());
+        return this;
+    }
+
+    /**
+     * Adds all functions of another registry to this one.
+     * @param other Registry to be added.
+     * @return This registry.
+     */
+    public Intrinsics bindAll(Intrinsics other) {
+        definitions.putAll(other.definitions);
+        return this;
+    }
+
+    /**
+     * Creates a registry of the standard math functions: sqrt, cbrt,
+     * abs, exp, log, log10, sin, cos, tan, asin, acos, atan, floor,
+     * ceil, round and signum of one number, and pow, min, max, atan2
+     * and hypot of two numbers, all as in java.lang.Math.
+     * @return A new registry.
+     */
+    public static Intrinsics math() {
+        return new Intrinsics()
+                .bind("sqrt", Math::sqrt)
+                .bind("cbrt", Math::cbrt)
+                .bind("abs", (DoubleUnaryOperator) Math::abs)
+                .bind("exp", Math::exp)
+                .bind("log", Math::log)
+                .bind("log10", Math::log10)
+                .bind("sin", Math::sin)
+                .bind("cos", Math::cos)
+                .bind("tan", Math::tan)
+                .bind("asin", Math::asin)
+                .bind("acos", Math::acos)
+                .bind("atan", Math::atan)
+                .bind("floor", Math::floor)
+                .bind("ceil", Math::ceil)
+                .bind("round", Math::rint)
+                .bind("signum", (DoubleUnaryOperator) Math::signum)
+                .bind("pow", Math::pow)
+                .bind("min", (DoubleBinaryOperator) Math::min)
+                .bind("max", (DoubleBinaryOperator) Math::max)
+                .bind("atan2", Math::atan2)
+                .bind("hypot", Math::hypot);
+    }
+
+    /**
+     * Gets the definitions of the functions.
+     * @return Function definitions by name.
+     */
+    Map<String, Tree<Token>> definitions() {
+        return Collections.unmodifiableMap(definitions);
+    }
+
+    /**
+     * Gets the body of a function.
+     * @param name Name of the function.
+     * @return The token of the body, or null if no such function is bound.
+     */
+    Intrinsic get(String name) {
+        Tree<Token> def = definitions.get(name);
+        return def == null ? null : (Intrinsic) def.getChild(2).getChild(0).getValue();
+    }
+
+    /**
+     * Gets the number of functions.
+     * @return The number of functions.
+     */
+    public int size() {
+        return definitions.size();
+    }
+
+    private static void checkName(String name) {
+        if (name == null || !name.matches("[A-Za-z_][A-Za-z_0-9]*") || Tokenizer.isKeyword(name))
+            throw new IllegalArgumentException("Not a Funl name: " + name);
+    }
+}
@@ -0,0 +1,91 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Class for linking the functions of a snapshot of the function table.
+ * Every call to a function name and every name referenced as a value
+ * in their bodies is resolved once: a call whose function exists and
+ * takes as many parameters as it passes gets its inline cache filled,
+ * and a reference gets linked to its function, parameter or val, so
+ * that they run without looking up or checking names again until the
+ * functions are redefined. What cannot be resolved is reported instead
+ * of being found when it runs.
+ * <p>
+ * Calls through parameters and vals call whatever function value they
+ * are passed, so they are only checked when they run.
+ * @version Oct 19, 2026
+ */
+class Linker {
+    private final HashMap<String, Tree<Token>> functions;
+    private final List<String> problems = new ArrayList<String>();
+    private String funcName; // function being linked
+
+    private Linker(HashMap<String, Tree<Token>> functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Links the functions of a snapshot of the function table.
+     * @param functions Snapshot of the function table.
+     * @return The problems found, in the order of the function names;
+     * empty if every name resolves.
+     */
+    static List<String> link(HashMap<String, Tree<Token>> functions) {
+        Linker linker = new Linker(functions);
+        for (String name : new TreeSet<String>(functions.keySet()))
+            linker.linkFunction(name, functions.get(name));
+        return linker.problems;
+    }
+
+    private void linkFunction(String name, Tree<Token> def) {
+        if (def.getChild(2).getChild(0).getValue() instanceof Intrinsic)
+            return;
+        funcName = name;
+        HashSet<String> locals = new HashSet<String>();
+        Tree<Token> params = def.getChild(1);
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            locals.add(params.getChild(i).getValue().getValue());
+        Parser.collectVals(def.getChild(2), locals);
+        linkExpr(def.getChild(2), locals);
+    }
+
+    /**
+     * Links the calls and references of an expression.
+     * @param expr Expression in the function body.
+     * @param locals Names of the parameters and vals of the function.
+     */
+    private void linkExpr(Tree<Token> expr, HashSet<String> locals) {
+        Token token = expr.getValue();
+        if (token instanceof CallSite && ((CallSite) token).binding == CallSite.GLOBAL) {
+            String name = expr.getChild(0).getValue().getValue();
+            int argNum = expr.getChild(1).getNumberOfChildren();
+            Tree<Token> target = functions.get(name);
+            if (target == null)
+                problem("cannot resolve '" + name + "' to a function name.");
+            else if (target.getChild(1).getNumberOfChildren() != argNum)
+                problem("number of argument(s) not match for function '" + name + "'. " +
+                        "Expected: " + target.getChild(1).getNumberOfChildren() + ", actual: " + argNum);
+            else
+                ((CallSite) token).cacheGlobal(functions, target, Funl.aliasOf(target, functions));
+        }
+        else if (token instanceof Reference) {
+            // value references prefer functions to parameters and vals
+            Tree<Token> target = functions.get(token.getValue());
+            if (target != null || locals.contains(token.getValue()))
+                ((Reference) token).link(functions, target);
+            else
+                problem("cannot resolve '" + token.getValue() + "' to a variable or function name.");
+        }
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            linkExpr(expr.getChild(i), locals);
+    }
+
+    private void problem(String message) {
+        problems.add(funcName + ": " + message);
+    }
+}
@@ -0,0 +1,85 @@
+package evaluator;
+
+import java.math.BigDecimal;
+
+/**
+ * Token of a number, carrying the number itself besides its text,
+ * so that arithmetic and conditions read it without parsing. A
+ * number computed in an exact numeric mode also carries its exact
+ * value, and a literal the text it was written with.
+ * @version Oct 19, 2026
+ */
+class Numeral extends Token {
+    final double number;
+    final Number exact;    // Long, BigInteger or BigDecimal; null for a double
+    final String literal;  // source text of a literal; null for a value
+    /* the literal as converted by the latest exact numeric mode */
+    private volatile Conversion conversion;
+
+    /**
+     * Constructor for a double.
+     * @param number Number to be held.
+     */
+    Numeral(double number) {
+        super(TokenType.NUMBER, number + "");
+        this.number = number;
+        this.exact = null;
+        this.literal = null;
+    }
+
+    /**
+     * Constructor for a literal.
+     * @param number Value of the literal as a double.
+     * @param literal Source text of the literal.
+     */
+    Numeral(double number, String literal) {
+        super(TokenType.NUMBER, number + "");
+        this.number = number;
+        this.exact = null;
+        this.literal = literal;
+    }
+
+    /**
+     * Constructor for an exact number.
+     * @param exact Long, BigInteger or BigDecimal to be held.
+     */
+    Numeral(Number exact) {
+        super(TokenType.NUMBER, exact instanceof BigDecimal ?
+                ((BigDecimal) exact).toPlainString() : exact.toString());
+        this.number = exact.doubleValue();
+        this.exact = exact;
+        this.literal = null;
+    }
+
+    /**
+     * Gets this literal as converted by a numeric mode before.
+     * @param mode Numeric mode.
+     * @return The converted literal, or null if not converted by the mode.
+     */
+    Numeral getConverted(NumericMode mode) {
+        Conversion c = conversion;
+        return c != null && c.mode == mode ? c.value : null;
+    }
+
+    /**
+     * Remembers this literal as converted by a numeric mode.
+     * @param mode Numeric mode.
+     * @param value The converted literal.
+     */
+    void setConverted(NumericMode mode, Numeral value) {
+        conversion = new Conversion(mode, value);
+    }
+
+    /**
+     * A literal converted by a numeric mode.
+     */
+    private static final class Conversion {
+        final NumericMode mode;
+        final Numeral value;
+
+        Conversion(NumericMode mode, Numeral value) {
+            this.mode = mode;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package evaluator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Class for the numbers a Funl evaluator computes with. DOUBLE, the
+ * default, computes in doubles as Funl always did. An exact-integer
+ * mode computes in longs, promoting to BigInteger on overflow, so
+ * integer arithmetic never rounds; numbers with a fraction (from
+ * literals, reads or a division with a remainder) become BigDecimals
+ * rounded to its MathContext, and turn back into integers when their
+ * fraction vanishes. A decimal mode computes everything in BigDecimals
+ * rounded to its MathContext. Exact modes raise an error on division
+ * by zero, where doubles give an infinity.
+ * @version Oct 19, 2026
+ */
+public final class NumericMode {
+    private static final byte DOUBLE_KIND = 0;
+    private static final byte INTEGER_KIND = 1;
+    private static final byte DECIMAL_KIND = 2;
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Doubles.
+     */
+    public static final NumericMode DOUBLE = new NumericMode(DOUBLE_KIND, MathContext.DECIMAL64);
+
+    /**
+     * Exact integers, with fractions rounded to 34 digits.
+     */
+    public static final NumericMode EXACT = new NumericMode(INTEGER_KIND, MathContext.DECIMAL128);
+
+    private final byte kind;
+    private final MathContext context;
+
+    private NumericMode(byte kind, MathContext context) {
+        this.kind = kind;
+        this.context = context;
+    }
+
+    /**
+     * Creates an exact-integer mode.
+     * @param context Precision and rounding of fractions.
+     * @return The numeric mode.
+     */
+    public static NumericMode exact(MathContext context) {
+        if (context == null)
+            throw new IllegalArgumentException("MathContext must not be null");
+        return new NumericMode(INTEGER_KIND, context);
+    }
+
+    /**
+     * Creates a decimal mode.
+     * @param context Precision and rounding of every result.
+     * @return The numeric mode.
+     */
+    public static NumericMode decimal(MathContext context) {
+        if (context == null)
+            throw new IllegalArgumentException("MathContext must not be null");
+        return new NumericMode(DECIMAL_KIND, context);
+    }
+
+    /**
+     * Checks whether this mode computes in doubles.
+     * @return True for DOUBLE.
+     */
+    public boolean isDouble() {
+        return kind == DOUBLE_KIND;
+    }
+
+    /**
+     * Gets the precision and rounding of this mode.
+     * @return The MathContext.
+     */
+    public MathContext getMathContext() {
+        return context;
+    }
+
+    /**
+     * Converts a number token to this exact mode: a literal from its
+     * source text, a double from its shortest decimal form.
+     * @param token Number token.
+     * @return A token holding the exact number.
+     */
+    Numeral convert(Numeral token) {
+        if (token.exact != null && fits(token.exact))
+            return token;
+        if (token.literal != null) {
+            Numeral converted = token.getConverted(this);
+            if (converted == null) {
+                converted = new Numeral(normalize(new BigDecimal(token.literal)));
+                token.setConverted(this, converted);
+            }
+            return converted;
+        }
+        if (token.exact != null)
+            return new Numeral(normalize(decimal(token.exact)));
+        return valueOf(token.number);
+    }
+
+    /**
+     * Converts a double to this exact mode.
+     * @param d Number to be converted.
+     * @return A token holding the exact number.
+     */
+    Numeral valueOf(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            throw new RuntimeException("Runtime Exception: " + d + " is no exact number.");
+        if (kind == INTEGER_KIND && d == (long) d && Math.abs(d) < 0x1p53)
+            return new Numeral((Number) Long.valueOf((long) d));
+        return new Numeral(normalize(BigDecimal.valueOf(d)));
+    }
+
+    /**
+     * Applies an arithmetic operator or a comparison in this exact mode.
+     * @param op One of + - * / or a comparison.
+     * @param x Left operand.
+     * @param y Right operand.
+     * @return A token holding the result.
+     */
+    Numeral apply(char op, Numeral x, Numeral y) {
+        Number a = convert(x).exact;
+        Number b = convert(y).exact;
+        if (Operation.isComparison(op))
+            return truth(Operation.holds(op, compare(a, b)));
+        if (kind == INTEGER_KIND && a instanceof Long && b instanceof Long) {
+            Number result = apply(op, (long) (Long) a, (long) (Long) b);
+            if (result != null)
+                return new Numeral(result);
+        }
+        if (kind == INTEGER_KIND && !(a instanceof BigDecimal) && !(b instanceof BigDecimal)) {
+            Number result = apply(op, integer(a), integer(b));
+            if (result != null)
+                return new Numeral(result);
+        }
+        return new Numeral(normalize(apply(op, decimal(a), decimal(b))));
+    }
+
+    /**
+     * Gets the sign of a number token.
+     * @param token Number token.
+     * @return -1, 0 or 1.
+     */
+    int signum(Numeral token) {
+        Number n = convert(token).exact;
+        if (n instanceof Long)
+            return Long.signum((Long) n);
+        if (n instanceof BigInteger)
+            return ((BigInteger) n).signum();
+        return ((BigDecimal) n).signum();
+    }
+
+    /**
+     * Compares two exact numbers.
+     * @return Negative, zero or positive as a is less than, equal to
+     * or greater than b.
+     */
+    private static int compare(Number a, Number b) {
+        if (a instanceof Long && b instanceof Long)
+            return Long.compare((Long) a, (Long) b);
+        if (!(a instanceof BigDecimal) && !(b instanceof BigDecimal))
+            return integer(a).compareTo(integer(b));
+        return decimal(a).compareTo(decimal(b));
+    }
+
+    private Numeral truth(boolean b) {
+        return kind == DECIMAL_KIND ? new Numeral(b ? BigDecimal.ONE : BigDecimal.ZERO) :
+            new Numeral((Number) (b ? 1L : 0L));
+    }
+
+    /**
+     * Applies an operator to longs.
+     * @return The result, or null if it overflows or has a fraction.
+     */
+    private static Number apply(char op, long x, long y) {
+        try {
+            switch (op) {
+                case '+': return Math.addExact(x, y);
+                case '-': return Math.subtractExact(x, y);
+                case '*': return Math.multiplyExact(x, y);
+                default:
+                    if (y == 0)
+                        throw divisionByZero();
+                    if (x % y != 0 || (x == Long.MIN_VALUE && y == -1))
+                        return null;
+                    return x / y;
+            }
+        }
+        catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies an operator to integers.
+     * @return The result, or null if it has a fraction.
+     */
+    private static Number apply(char op, BigInteger x, BigInteger y) {
+        switch (op) {
+            case '+': return normalize(x.add(y));
+            case '-': return normalize(x.subtract(y));
+            case '*': return normalize(x.multiply(y));
+            default:
+                if (y.signum() == 0)
+                    throw divisionByZero();
+                BigInteger[] qr = x.divideAndRemainder(y);
+                return qr[1].signum() == 0 ? normalize(qr[0]) : null;
+        }
+    }
+
+    private BigDecimal apply(char op, BigDecimal x, BigDecimal y) {
+        switch (op) {
+            case '+': return x.add(y, context);
+            case '-': return x.subtract(y, context);
+            case '*': return x.multiply(y, context);
+            default:
+                if (y.signum() == 0)
+                    throw divisionByZero();
+                return x.divide(y, context);
+        }
+    }
+
+    /**
+     * Brings a number to its canonical form in this mode: a long if it
+     * is an integer small enough, a BigInteger if it is a larger
+     * integer, and a BigDecimal otherwise.
+     * @param d Number to be normalized.
+     * @return The canonical number.
+     */
+    private Number normalize(BigDecimal d) {
+        if (kind == DECIMAL_KIND)
+            return d.round(context);
+        if (d.signum() == 0)
+            return 0L;
+        BigDecimal stripped = d.stripTrailingZeros();
+        if (stripped.scale() <= 0)
+            return normalize(stripped.toBigIntegerExact());
+        return d.round(context);
+    }
+
+    private static Number normalize(BigInteger i) {
+        if (i.compareTo(LONG_MIN) >= 0 && i.compareTo(LONG_MAX) <= 0)
+            return i.longValue();
+        return i;
+    }
+
+    /**
+     * Checks whether an exact number is in the canonical form of this mode.
+     * @param n Exact number.
+     * @return True if the number needs no conversion.
+     */
+    private boolean fits(Number n) {
+        return kind == DECIMAL_KIND ? n instanceof BigDecimal : !(n instanceof BigDecimal) ||
+                ((BigDecimal) n).stripTrailingZeros().scale() > 0;
+    }
+
+    private static BigInteger integer(Number n) {
+        return n instanceof BigInteger ? (BigInteger) n : BigInteger.valueOf(n.longValue());
+    }
+
+    private static BigDecimal decimal(Number n) {
+        if (n instanceof BigDecimal)
+            return (BigDecimal) n;
+        if (n instanceof BigInteger)
+            return new BigDecimal((BigInteger) n);
+        return BigDecimal.valueOf(n.longValue());
+    }
+
+    private static RuntimeException divisionByZero() {
+        return new RuntimeException("Runtime Exception: division by zero.");
+    }
+
+    /**
+     * Returns the name of this mode.
+     * @return A representation of this mode.
+     */
+    @Override
+    public String toString() {
+        switch (kind) {
+            case DOUBLE_KIND: return "double";
+            case INTEGER_KIND: return "exact(" + context + ")";
+            default: return "decimal(" + context + ")";
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package evaluator;
+
+/**
+ * Token of an arithmetic (+ - * /), comparison (== != &lt; &gt; &lt;=
+ * &gt;=), logical (and or not) or if node, marking which of its
+ * operands (the condition of an if) need a runtime check that they
+ * evaluate to a number. Every operand is checked unless shape
+ * inference proves it a number.
+ * <p>
+ * An arithmetic or comparison node also specializes itself on its
+ * first execution: if both operands are double numbers it becomes a
+ * NUMBERS node, which computes on the doubles directly, and it turns
+ * GENERIC the first time that fails to hold.
+ * <p>
+ * Isolates sharing a node update its state without synchronization.
+ * An isolate that read UNINITIALIZED may still write NUMBERS after
+ * another one wrote GENERIC, specializing the node again. That is
+ * only slower: a NUMBERS node checks that both operands are doubles
+ * on every execution, and turns GENERIC again when they are not.
+ * @version Oct 19, 2026
+ */
+class Operation extends Token {
+    static final byte LEFT = 1;  // left operand, or condition
+    static final byte RIGHT = 2; // right operand
+
+    /* states of an arithmetic or comparison node */
+    static final byte UNINITIALIZED = 0; // not executed yet
+    static final byte NUMBERS = 1;       // has only seen double numbers
+    static final byte GENERIC = 2;       // handles any operands
+
+    /* operators besides + - * / */
+    static final char EQ = '=';
+    static final char NE = '\u2260';
+    static final char LT = '<';
+    static final char GT = '>';
+    static final char LE = '\u2264';
+    static final char GE = '\u2265';
+    static final char AND = '&';
+    static final char OR = '|';
+    static final char NOT = '!';
+
+    final char operator; // one of the operators, or 0 for if
+    byte guards = LEFT | RIGHT;
+    byte state = UNINITIALIZED; // racy between isolates; see above
+
+    /**
+     * Constructor for Operation.
+     * @param type Type of the token.
+     * @param value Operator, or keyword if.
+     */
+    Operation(TokenType type, String value) {
+        super(type, value);
+        operator = operator(value);
+    }
+
+    private static char operator(String value) {
+        switch (value) {
+            case "==": return EQ;
+            case "!=": return NE;
+            case "<=": return LE;
+            case ">=": return GE;
+            case "and": return AND;
+            case "or": return OR;
+            case "not": return NOT;
+            case "if": return 0;
+            default: return value.charAt(0);
+        }
+    }
+
+    /**
+     * Checks whether an operand needs a runtime check.
+     * @param operand LEFT or RIGHT.
+     * @return True if the operand may evaluate to a function.
+     */
+    boolean isGuarded(byte operand) {
+        return (guards & operand) != 0;
+    }
+
+    /**
+     * Checks whether this is a logical operation, which evaluates
+     * its right operand only if the left one does not decide it.
+     * @return True for and, or and not.
+     */
+    boolean isLogical() {
+        return operator == AND || operator == OR || operator == NOT;
+    }
+
+    /**
+     * Checks whether this is a comparison.
+     * @return True for == != &lt; &gt; &lt;= &gt;=.
+     */
+    boolean isComparison() {
+        return isComparison(operator);
+    }
+
+    /**
+     * Checks whether an operator is a comparison.
+     * @param op Operator.
+     * @return True for == != &lt; &gt; &lt;= &gt;=.
+     */
+    static boolean isComparison(char op) {
+        return op == EQ || op == NE || op == LT || op == GT || op == LE || op == GE;
+    }
+
+    /**
+     * Applies an arithmetic operator or a comparison.
+     * @param op One of + - * / or a comparison.
+     * @param x Left operand.
+     * @param y Right operand.
+     * @return Result; 1 or 0 for a comparison.
+     */
+    static double apply(char op, double x, double y) {
+        switch (op) {
+            case '+': return x + y;
+            case '-': return x - y;
+            case '*': return x * y;
+            case '/': return x / y;
+            case EQ: return x == y ? 1 : 0;
+            case NE: return x != y ? 1 : 0;
+            case LT: return x < y ? 1 : 0;
+            case GT: return x > y ? 1 : 0;
+            case LE: return x <= y ? 1 : 0;
+            default: return x >= y ? 1 : 0;
+        }
+    }
+
+    /**
+     * Decides a comparison from the sign of the difference of its operands.
+     * @param op A comparison.
+     * @param cmp Negative, zero or positive as the left operand is
+     * less than, equal to or greater than the right one.
+     * @return True if the comparison holds.
+     */
+    static boolean holds(char op, int cmp) {
+        switch (op) {
+            case EQ: return cmp == 0;
+            case NE: return cmp != 0;
+            case LT: return cmp < 0;
+            case GT: return cmp > 0;
+            case LE: return cmp <= 0;
+            default: return cmp >= 0;
+        }
+    }
+
+    /**
+     * Recognizes a function that is an alias of an operation: its body
+     * is a single arithmetic, comparison or logical operation on its
+     * parameters in order, as in def gt x y = x &gt; y end.
+     * @param def Tree of the function definition.
+     * @return The operation of the body, or null if the function is
+     * no alias.
+     */
+    static Tree<Token> alias(Tree<Token> def) {
+        Tree<Token> params = def.getChild(1);
+        Tree<Token> body = def.getChild(2);
+        if (body.getNumberOfChildren() != 1 || !(body.getChild(0).getValue() instanceof Operation))
+            return null;
+        Tree<Token> op = body.getChild(0);
+        if (((Operation) op.getValue()).operator == 0 ||
+                op.getNumberOfChildren() != params.getNumberOfChildren())
+            return null;
+        for (int i = 0; i < params.getNumberOfChildren(); ++i) {
+            Token operand = op.getChild(i).getValue();
+            if (operand.getType() != TokenType.NAME ||
+                    !operand.getValue().equals(params.getChild(i).getValue().getValue()))
+                return null;
+        }
+        if (params.getNumberOfChildren() == 2 &&
+                params.getChild(0).getValue().getValue().equals(params.getChild(1).getValue().getValue()))
+            return null;
+        return op;
+    }
+}
@@ -0,0 +1,224 @@
+package evaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Class for a bounded cache of parsed Funl input, from source text to
+ * tree, which any number of evaluators may share (e.g. all the isolates
+ * of a pool). Input parsed before gets the same tree back without being
+ * tokenized and parsed again, with the inline caches its call sites and
+ * operations filled when it ran.
+ * <p>
+ * With literal parameterization, input differing only in its numeric
+ * literals, as sqrt(2) and sqrt(3), shares one template: the tree of
+ * the first one parsed, in which later ones get their own numbers by
+ * copying only the nodes above them. A copied call gets a call site
+ * of its own, whose caches do not depend on the template's constants.
+ * Input whose digits cannot all be told to be literals from its text,
+ * e.g. digits in a string or a comment, is only cached by its exact
+ * text.
+ * <p>
+ * Once capacity entries are cached, adding one evicts an arbitrary
+ * other one.
+ * @version Oct 19, 2026
+ */
+public class ParseCache {
+    /**
+     * A tree parsed from a source text.
+     */
+    private static final class Entry {
+        final String source;
+        final Tree<Token> tree;
+        final boolean template; // if its literals may be replaced
+
+        Entry(String source, Tree<Token> tree, boolean template) {
+            this.source = source;
+            this.tree = tree;
+            this.template = template;
+        }
+    }
+
+    private final int capacity;
+    private final boolean parameterize;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor for ParseCache.
+     * @param capacity Largest number of trees cached.
+     * @param parameterize True to share trees between input differing
+     * only in its numeric literals.
+     * @throws IllegalArgumentException If capacity is not positive.
+     */
+    public ParseCache(int capacity, boolean parameterize) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Parse cache capacity must be positive");
+        this.capacity = capacity;
+        this.parameterize = parameterize;
+    }
+
+    /**
+     * Gets the tree of a source text, parsing it on a cache miss.
+     * @param source Source text.
+     * @param parser Parses a source text; may return null, which is
+     * not cached.
+     * @return The tree.
+     */
+    Tree<Token> get(String source, Function<String, Tree<Token>> parser) {
+        List<String> literals = parameterize ? new ArrayList<String>() : null;
+        String key = parameterize ? normalize(source, literals) : source;
+        Entry entry = entries.get(key);
+        if (entry != null && (entry.source.equals(source) || entry.template)) {
+            hits.increment();
+            return entry.source.equals(source) ?
+                    entry.tree : instantiate(entry.tree, literals, new int[1]);
+        }
+        misses.increment();
+        Tree<Token> tree = parser.apply(source);
+        if (tree == null)
+            return null;
+        if (entries.size() >= capacity && !entries.containsKey(key)) {
+            for (String evicted : entries.keySet()) {
+                entries.remove(evicted);
+                break;
+            }
+        }
+        entries.put(key, new Entry(source, tree, parameterize && matches(tree, literals)));
+        return tree;
+    }
+
+    /**
+     * Replaces the numeric literals of a source text by #.
+     * @param source Source text.
+     * @param literals List to add the literals to, in source order.
+     * @return The text with every literal replaced.
+     */
+    static String normalize(String source, List<String> literals) {
+        StringBuilder key = new StringBuilder(source.length());
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            // digits after a letter are part of a name
+            if (!isDigit(c) || i > 0 && isWordChar(source.charAt(i - 1))) {
+                key.append(c);
+                ++i;
+                continue;
+            }
+            int start = i;
+            while (i < source.length() && isDigit(source.charAt(i)))
+                ++i;
+            if (i < source.length() && source.charAt(i) == '.')
+                for (++i; i < source.length() && isDigit(source.charAt(i)); ++i);
+            literals.add(source.substring(start, i));
+            key.append('#');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Checks whether the numbers of a tree are exactly the literals
+     * found in its source text, in order.
+     */
+    private static boolean matches(Tree<Token> tree, List<String> literals) {
+        int[] next = new int[1];
+        return matches(tree, literals, next) && next[0] == literals.size();
+    }
+
+    private static boolean matches(Tree<Token> tree, List<String> literals, int[] next) {
+        Token token = tree.getValue();
+        if (token instanceof Numeral)
+            return next[0] < literals.size() && literals.get(next[0]++).equals(((Numeral) token).literal);
+        for (int i = 0; i < tree.getNumberOfChildren(); ++i)
+            if (!matches(tree.getChild(i), literals, next))
+                return false;
+        return true;
+    }
+
+    /**
+     * Puts literals in place of the numbers of a template, copying the
+     * nodes above the numbers that change.
+     * @param template Tree of the template.
+     * @param literals Literals, in source order.
+     * @param next Index of the next literal.
+     * @return The tree with the literals, sharing all other nodes and
+     * tokens with the template.
+     */
+    private static Tree<Token> instantiate(Tree<Token> template, List<String> literals, int[] next) {
+        Token token = template.getValue();
+        if (token instanceof Numeral) {
+            String literal = literals.get(next[0]++);
+            return literal.equals(((Numeral) token).literal) ? template : new Tree<Token>(numeral(literal));
+        }
+        Tree<Token> copy = null;
+        for (int i = 0; i < template.getNumberOfChildren(); ++i) {
+            Tree<Token> child = instantiate(template.getChild(i), literals, next);
+            if (copy == null && child != template.getChild(i)) {
+                copy = new Tree<Token>(token instanceof CallSite ? callSite((CallSite) token) : token);
+                for (int j = 0; j < i; ++j)
+                    copy.addChild(template.getChild(j));
+            }
+            if (copy != null)
+                copy.addChild(child);
+        }
+        return copy != null ? copy : template;
+    }
+
+    /**
+     * Creates a call site for a copy of a call, which passes other
+     * constants than the template and so keeps its own caches.
+     */
+    private static CallSite callSite(CallSite template) {
+        CallSite site = new CallSite();
+        site.binding = template.binding;
+        return site;
+    }
+
+    /**
+     * Creates the token of a literal, with the value the Tokenizer
+     * gives it.
+     */
+    private static Numeral numeral(String literal) {
+        // up to 15 characters, a literal is an exact integer over an exact
+        // power of ten, which Double.parseDouble rounds as the Tokenizer does
+        if (literal.length() <= 15)
+            return new Numeral(Double.parseDouble(literal), literal);
+        return (Numeral) new Tokenizer(literal).next();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || isDigit(c) || c >= 160;
+    }
+
+    /**
+     * Gets the number of trees cached.
+     * @return Number of trees.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of source texts found in the cache.
+     * @return Number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of source texts parsed.
+     * @return Number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -1,6 +1,7 @@
 package evaluator;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Stack;
 
 /**
@@ -40,7 +41,7 @@ public class Parser {
      */
     public boolean functionDefinition() {
         if (!keyword("def")) return false;
-        stack.push(new Tree<Token>(new Token(TokenType.KEYWORD, "def")));
+        stack.push(new Tree<Token>(new Definition()));
         if (!name()) error("No name after keyword 'def'");
         Tree<Token> param = new Tree<Token>(new Token(TokenType.KEYWORD, "$seq"));
         while (parameter()) {
@@ -51,9 +52,63 @@ public class Parser {
         if (!expressions()) error("No expressions after equal sign ('=')");
         if (!keyword("end")) error("Function definition ends without keyword 'end'");
         makeTree(4, 3, 2, 1);
+        analyze(stack.peek());
         return true;
     }
     
+    /**
+     * Runs the analyses of a function definition that its tokens
+     * carry: call site binding, shape inference and alias recognition.
+     * @param def Tree of the function definition.
+     */
+    static void analyze(Tree<Token> def) {
+        bindCallSites(def);
+        ((Definition) def.getValue()).setShapes(ShapeInference.infer(def));
+        ((Definition) def.getValue()).setAlias(Operation.alias(def));
+    }
+    
+    /**
+     * Marks each call site in a function definition as calling
+     * either a parameter or val of the function, or a function name.
+     * @param def Tree of the function definition.
+     */
+    private static void bindCallSites(Tree<Token> def) {
+        HashSet<String> locals = new HashSet<String>();
+        Tree<Token> params = def.getChild(1);
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            locals.add(params.getChild(i).getValue().getValue());
+        collectVals(def.getChild(2), locals);
+        bindCallSites(def.getChild(2), locals);
+    }
+    
+    /**
+     * Collects the names of all vals in an expression.
+     * @param expr Expression to be searched.
+     * @param names Set to add the names to.
+     */
+    static void collectVals(Tree<Token> expr, HashSet<String> names) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && 
+                expr.getValue().getValue().equals("val"))
+            names.add(expr.getChild(0).getValue().getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collectVals(expr.getChild(i), names);
+    }
+    
+    /**
+     * Marks the call sites in an expression.
+     * @param expr Expression to be searched.
+     * @param locals Names of parameters and vals.
+     */
+    private static void bindCallSites(Tree<Token> expr, HashSet<String> locals) {
+        if (expr.getValue() instanceof CallSite) {
+            String name = expr.getChild(0).getValue().getValue();
+            ((CallSite) expr.getValue()).binding = 
+                    locals.contains(name) ? CallSite.LOCAL : CallSite.GLOBAL;
+        }
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            bindCallSites(expr.getChild(i), locals);
+    }
+    
     /**
      * Parses a parameter.
      * @return True if parsing is successful, ie., input
@@ -88,7 +143,63 @@ public class Parser {
      * to be parsed has no Funl syntax errors; false otherwise.
      */
     public boolean expression() {
-        return valueDefinition() || addTerm();
+        return valueDefinition() || orTerm();
+    }
+    
+    /**
+     * Parses an or term; or is a keyword only between operands,
+     * so that functions may still be named or.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    private boolean orTerm() {
+        if (!andTerm()) return false;
+        while (logicalOperator("or")) {
+            if (!andTerm()) error("No expression after 'or'");
+            makeTree(2, 3, 1);
+        }
+        return true;
+    }
+    
+    /**
+     * Parses an and term; and is a keyword only between operands.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    private boolean andTerm() {
+        if (!notTerm()) return false;
+        while (logicalOperator("and")) {
+            if (!notTerm()) error("No expression after 'and'");
+            makeTree(2, 3, 1);
+        }
+        return true;
+    }
+    
+    /**
+     * Parses a not term.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    private boolean notTerm() {
+        if (!keyword("not")) return comparison();
+        stack.push(new Tree<Token>(new Operation(TokenType.KEYWORD, "not")));
+        if (!notTerm()) error("No expression after keyword 'not'");
+        makeTree(2, 1);
+        return true;
+    }
+    
+    /**
+     * Parses a comparison, or just an add term.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    private boolean comparison() {
+        if (!addTerm()) return false;
+        if (compareOperator()) {
+            if (!addTerm()) error("No term after comparison operator");
+            makeTree(2, 3, 1);
+        }
+        return true;
     }
     
     /**
@@ -157,7 +268,7 @@ public class Parser {
         if (!name()) return false;
         // function call
         if (symbol("(")) {
-            stack.push(new Tree<Token>(new Token(TokenType.KEYWORD, "$call")));
+            stack.push(new Tree<Token>(new CallSite()));
             if(!expressions())
                 stack.push(new Tree<Token>(new Token(TokenType.KEYWORD, "$seq")));
             if (!symbol(")")) 
@@ -165,6 +276,8 @@ public class Parser {
             makeTree(2, 3, 1);
             return true;
         }
+        // value reference
+        stack.push(new Tree<Token>(new Reference(stack.pop().getValue().getValue())));
         return true;
     }
     
@@ -175,7 +288,7 @@ public class Parser {
      */
     private boolean ifExpression() {
         if (!keyword("if")) return false;
-        stack.push(new Tree<Token>(new Token(TokenType.KEYWORD, "if")));
+        stack.push(new Tree<Token>(new Operation(TokenType.KEYWORD, "if")));
         if (!expressions()) error("No expressions after keyword 'if'");
         if (!keyword("then")) error("No keyword 'then' after expressions");
         if (!expressions()) error("No expressions after keyword 'then'");
@@ -220,6 +333,27 @@ public class Parser {
         return operater("+") || operater("-");
     }
     
+    /**
+     * Parses a comparison operator.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    public boolean compareOperator() {
+        return operater("==") || operater("!=") || operater("<") || operater(">") ||
+                operater("<=") || operater(">=");
+    }
+    
+    /**
+     * Parses a logical operator written as a name.
+     * @return True if parsing is successful, ie., input
+     * to be parsed has no Funl syntax errors; false otherwise.
+     */
+    private boolean logicalOperator(String op) {
+        if (!nextTokenMatches(TokenType.NAME, op)) return false;
+        stack.push(new Tree<Token>(new Operation(TokenType.KEYWORD, op)));
+        return true;
+    }
+    
     /**
      * Parses a multiply operator.
      * @return True if parsing is successful, ie., input
@@ -236,7 +370,7 @@ public class Parser {
      */
     private boolean operater(String op) {
         if (!symbol(op)) return false;
-        stack.push(new Tree<Token>(new Token(TokenType.SYMBOL, op)));
+        stack.push(new Tree<Token>(new Operation(TokenType.SYMBOL, op)));
         return true;
     }
     
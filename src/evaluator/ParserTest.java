@@ -40,6 +40,45 @@ public class ParserTest {
         shouldGive(parser.functionDefinition(), "def(foo $seq(x y) $seq(val(w *(x y)) val(z +(2.0 w)) /(y w)))");
     }
 
+    @Test
+    public final void testCallSiteBinding() {
+        use("def foo f x = val g = f, f(g(x), bar(x)) end");
+        assertTrue(parser.functionDefinition());
+        Tree<Token> body = parser.stack.peek().getChild(2);
+        Tree<Token> call = body.getChild(1);
+        assertEquals(CallSite.LOCAL, ((CallSite) call.getValue()).binding);
+        assertEquals(CallSite.LOCAL, ((CallSite) call.getChild(1).getChild(0).getValue()).binding);
+        assertEquals(CallSite.GLOBAL, ((CallSite) call.getChild(1).getChild(1).getValue()).binding);
+        use("foo(1)");
+        assertTrue(parser.expression());
+        assertEquals(CallSite.UNKNOWN, ((CallSite) parser.stack.peek().getValue()).binding);
+    }
+
+    @Test
+    public final void testShapeInference() {
+        use("def f x g = val y = x * 2, g(y), if y then x + y else g end end");
+        assertTrue(parser.functionDefinition());
+        Tree<Token> def = parser.stack.peek();
+        Definition token = (Definition) def.getValue();
+        assertEquals(ShapeInference.NUMBER, token.getShape("x"));
+        assertEquals(ShapeInference.NUMBER, token.getShape("y"));
+        assertEquals(ShapeInference.FUNCTION, token.getShape("g"));
+        Tree<Token> body = def.getChild(2);
+        Operation times = (Operation) body.getChild(0).getChild(1).getValue();
+        assertTrue(times.isGuarded(Operation.LEFT));
+        assertFalse(times.isGuarded(Operation.RIGHT));
+        Tree<Token> ifExpr = body.getChild(2);
+        assertFalse(((Operation) ifExpr.getValue()).isGuarded(Operation.LEFT));
+        Operation plus = (Operation) ifExpr.getChild(1).getChild(0).getValue();
+        assertFalse(plus.isGuarded(Operation.LEFT) || plus.isGuarded(Operation.RIGHT));
+        // only what both branches establish
+        use("def h a b = if a then b + 1 else 0 end end");
+        assertTrue(parser.functionDefinition());
+        token = (Definition) parser.stack.peek().getValue();
+        assertEquals(ShapeInference.NUMBER, token.getShape("a"));
+        assertEquals(ShapeInference.UNKNOWN, token.getShape("b"));
+    }
+
     @Test
     public final void testParameter() {
         use("param");
@@ -74,6 +113,24 @@ public class ParserTest {
         shouldGive(parser.expression(), "-(+(expr *(expr2 expr3))expr4)");
     }
 
+    @Test
+    public final void testLogicalExpression() {
+        use("a + 1 <= b * 2");
+        shouldGive(parser.expression(), "<=(+(a 1.0) *(b 2.0))");
+        use("a == b or not c != d and e >= f");
+        shouldGive(parser.expression(), "or(==(a b) and(not(!=(c d)) >=(e f)))");
+        use("a<b");
+        shouldGive(parser.expression(), "<(a b)");
+        use("or(a, b) or c");
+        shouldGive(parser.expression(), "or($call(or $seq(a b)) c)");
+        use("def gt x y = x > y end");
+        assertTrue(parser.functionDefinition());
+        assertNotNull(((Definition) parser.stack.peek().getValue()).getAlias());
+        use("def lt x y = y > x end");
+        assertTrue(parser.functionDefinition());
+        assertNull(((Definition) parser.stack.peek().getValue()).getAlias());
+    }
+
     @Test
     public final void testValueDefinition() {
         use("val foo = a");
@@ -0,0 +1,237 @@
+package evaluator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class for profiling Funl functions. When attached to an evaluator,
+ * it records for every user function its call count, inclusive and
+ * exclusive time, and maximum recursion depth, and optionally the
+ * time spent in each distinct call stack, exportable as folded
+ * stacks for flame graphs. A profiler serves one evaluator at a time.
+ * @version Oct 19, 2026
+ */
+public class Profiler {
+    /**
+     * Profile of a single function.
+     */
+    public static class Entry {
+        private final String name;
+        private long calls;
+        private long inclusiveNanos;
+        private long exclusiveNanos;
+        private int maxDepth;
+        private int active; // activations currently on the call stack
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the function.
+         * @return Function name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of calls of the function.
+         * @return Number of calls.
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * Gets the time spent in the function, including the functions
+         * it called; recursive activations are counted once.
+         * @return Inclusive time in nanoseconds.
+         */
+        public long getInclusiveNanos() {
+            return inclusiveNanos;
+        }
+
+        /**
+         * Gets the time spent in the function itself.
+         * @return Exclusive time in nanoseconds.
+         */
+        public long getExclusiveNanos() {
+            return exclusiveNanos;
+        }
+
+        /**
+         * Gets the maximum number of simultaneous activations.
+         * @return Maximum recursion depth.
+         */
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+    }
+
+    private final boolean foldedStacks;
+    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private final HashMap<String, long[]> folded = new HashMap<String, long[]>();
+    /* call stack */
+    private Entry[] stack = new Entry[64];
+    private long[] starts = new long[64];
+    private long[] childNanos = new long[64];
+    private int depth = 0;
+
+    /**
+     * Constructor for a Profiler recording per-function figures only.
+     */
+    public Profiler() {
+        this(false);
+    }
+
+    /**
+     * Constructor for Profiler.
+     * @param foldedStacks True to also record time per call stack.
+     */
+    public Profiler(boolean foldedStacks) {
+        this.foldedStacks = foldedStacks;
+    }
+
+    /**
+     * Records entering a function.
+     * @param funcName Name of the function.
+     */
+    void enter(String funcName) {
+        Entry entry = entries.get(funcName);
+        if (entry == null) {
+            entry = new Entry(funcName);
+            entries.put(funcName, entry);
+        }
+        ++entry.calls;
+        if (++entry.active > entry.maxDepth)
+            entry.maxDepth = entry.active;
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            starts = Arrays.copyOf(starts, depth * 2);
+            childNanos = Arrays.copyOf(childNanos, depth * 2);
+        }
+        stack[depth] = entry;
+        childNanos[depth] = 0;
+        starts[depth++] = System.nanoTime();
+    }
+
+    /**
+     * Records leaving the function entered last.
+     */
+    void exit() {
+        long now = System.nanoTime();
+        Entry entry = stack[--depth];
+        long elapsed = now - starts[depth];
+        long self = elapsed - childNanos[depth];
+        entry.exclusiveNanos += self;
+        if (--entry.active == 0)
+            entry.inclusiveNanos += elapsed;
+        if (depth > 0)
+            childNanos[depth - 1] += elapsed;
+        if (foldedStacks)
+            recordStack(self);
+        stack[depth] = null;
+    }
+
+    /**
+     * Adds time to the call stack ending with the function left last.
+     * @param nanos Time spent in that function itself.
+     */
+    private void recordStack(long nanos) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i <= depth; ++i) {
+            if (i > 0) sb.append(';');
+            sb.append(stack[i].name);
+        }
+        String key = sb.toString();
+        long[] total = folded.get(key);
+        if (total == null)
+            folded.put(key, new long[] { nanos });
+        else
+            total[0] += nanos;
+    }
+
+    /**
+     * Gets the profile of a function.
+     * @param funcName Name of the function.
+     * @return Profile of the function, or null if it was never called.
+     */
+    public Entry get(String funcName) {
+        return entries.get(funcName);
+    }
+
+    /**
+     * Gets the profiles of all functions called, most expensive
+     * (by exclusive time) first.
+     * @return List of profiles.
+     */
+    public List<Entry> getEntries() {
+        List<Entry> list = new ArrayList<Entry>(entries.values());
+        Collections.sort(list, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.exclusiveNanos, a.exclusiveNanos);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Writes the recorded call stacks in folded format, one
+     * "caller;callee time" line per stack with time in nanoseconds,
+     * as read by flame graph tools.
+     * @param out Destination of the folded stacks.
+     * @throws IOException If writing fails.
+     * @throws IllegalStateException If folded stacks are not recorded.
+     */
+    public void writeFoldedStacks(Appendable out) throws IOException {
+        if (!foldedStacks)
+            throw new IllegalStateException("Folded stacks are not recorded by this profiler");
+        List<String> keys = new ArrayList<String>(folded.keySet());
+        Collections.sort(keys);
+        for (String key : keys)
+            out.append(key).append(' ').append(Long.toString(folded.get(key)[0])).append('\n');
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        entries.clear();
+        folded.clear();
+        Arrays.fill(stack, null);
+        depth = 0;
+    }
+
+    /**
+     * Returns a table of the function profiles.
+     * @return A representation of this profiler.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-24s %10s %14s %14s %9s%n",
+                "function", "calls", "inclusive ms", "exclusive ms", "max depth"));
+        for (Entry e : getEntries())
+            sb.append(String.format("%-24s %10d %14.3f %14.3f %9d%n", e.name, e.calls,
+                    e.inclusiveNanos / 1e6, e.exclusiveNanos / 1e6, e.maxDepth));
+        return sb.toString();
+    }
+
+    /**
+     * Gets the folded stacks as a map from stack to nanoseconds.
+     * @return Map of folded stacks.
+     */
+    public Map<String, Long> getFoldedStacks() {
+        HashMap<String, Long> map = new HashMap<String, Long>();
+        for (Map.Entry<String, long[]> e : folded.entrySet())
+            map.put(e.getKey(), e.getValue()[0]);
+        return map;
+    }
+}
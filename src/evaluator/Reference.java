@@ -0,0 +1,62 @@
+package evaluator;
+
+import java.util.HashMap;
+
+/**
+ * Token of a name referenced as a value, carrying what the name was
+ * linked to for a snapshot of the function table: a function, which
+ * value references prefer, or a parameter or val, read from the scope
+ * without looking the name up in the functions again. The link is made
+ * by Linker for every reference in the functions defined, or by the
+ * first evaluation of the reference, and holds until functions are
+ * redefined.
+ * <p>
+ * References live in function trees shared by isolates; a link is an
+ * immutable object installed at once, so racing threads at worst miss
+ * it.
+ * @version Oct 19, 2026
+ */
+class Reference extends Token {
+    /**
+     * What a name resolves to in a snapshot of the function table.
+     */
+    static final class Link {
+        final HashMap<String, Tree<Token>> functions;
+        final Tree<Token> function; // null if a parameter or val
+
+        Link(HashMap<String, Tree<Token>> functions, Tree<Token> function) {
+            this.functions = functions;
+            this.function = function;
+        }
+    }
+
+    private Link link;
+
+    /**
+     * Constructor for Reference.
+     * @param name Name referenced.
+     */
+    Reference(String name) {
+        super(TokenType.NAME, name);
+    }
+
+    /**
+     * Gets what the name is linked to for a snapshot.
+     * @param functions Snapshot the reference is evaluated in.
+     * @return The link, or null if the name is not linked in it.
+     */
+    Link linked(HashMap<String, Tree<Token>> functions) {
+        Link l = link;
+        return l != null && l.functions == functions ? l : null;
+    }
+
+    /**
+     * Links the name for a snapshot of the function table.
+     * @param functions Snapshot the name was resolved in.
+     * @param function Function named, or null if the name is a
+     * parameter or val.
+     */
+    void link(HashMap<String, Tree<Token>> functions, Tree<Token> function) {
+        link = new Link(functions, function);
+    }
+}
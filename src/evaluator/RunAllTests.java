@@ -12,6 +12,8 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({ 
     FunlTest.class, 
+    FunlPoolTest.class, 
+    FunlStageTest.class, 
     ParserTest.class, 
     ParserTestDave.class,
     TreeTest.class })
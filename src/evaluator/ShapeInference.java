@@ -0,0 +1,163 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class for inferring, for a Funl function, which of its parameters
+ * and vals are definitely numbers, definitely functions, or unknown.
+ * The pass walks the body in evaluation order; a name becomes a number
+ * once it was an arithmetic operand or a condition, and a function
+ * once it was called, since evaluation would have stopped otherwise.
+ * Branches of an if keep only what both of them establish. Operands
+ * proven to be numbers lose their runtime check.
+ * @version Oct 19, 2026
+ */
+class ShapeInference {
+    /* shapes */
+    static final byte UNKNOWN = 0;
+    static final byte NUMBER = 1;
+    static final byte FUNCTION = 2;
+
+    private final HashMap<String, Byte> locals = new HashMap<String, Byte>();
+
+    private ShapeInference() { }
+
+    /**
+     * Infers the shapes in a function definition and removes the
+     * runtime checks of operands proven to be numbers.
+     * @param def Tree of the function definition.
+     * @return Shape of each parameter and val once the body is
+     * evaluated, by name.
+     */
+    static Map<String, Byte> infer(Tree<Token> def) {
+        ShapeInference inference = new ShapeInference();
+        Tree<Token> params = def.getChild(1);
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            inference.locals.put(params.getChild(i).getValue().getValue(), UNKNOWN);
+        inference.declareVals(def.getChild(2));
+        inference.shape(def.getChild(2));
+        return inference.locals;
+    }
+
+    /**
+     * Adds the vals of an expression to the locals, as unknown.
+     * @param expr Expression to be searched.
+     */
+    private void declareVals(Tree<Token> expr) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals("val"))
+            locals.put(expr.getChild(0).getValue().getValue(), UNKNOWN);
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            declareVals(expr.getChild(i));
+    }
+
+    /**
+     * Infers the shape of an expression, learning from it.
+     * @param expr Expression in the function body.
+     * @return Shape of the value of the expression.
+     */
+    private byte shape(Tree<Token> expr) {
+        Token token = expr.getValue();
+        String value = token.getValue();
+        switch (token.getType()) {
+            case NUMBER:
+                return NUMBER;
+            case NAME:
+                // any other name refers to a function
+                return locals.containsKey(value) ? locals.get(value) : FUNCTION;
+            default:
+                break;
+        }
+        if (value.equals("$seq")) {
+            byte shape = UNKNOWN;
+            for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+                shape = shape(expr.getChild(i));
+            return shape;
+        }
+        if (value.equals("val")) {
+            byte shape = shape(expr.getChild(1));
+            locals.put(expr.getChild(0).getValue().getValue(), shape);
+            return shape;
+        }
+        if (value.equals("$call")) {
+            // the callee is checked to be a function before the arguments are evaluated
+            String callee = expr.getChild(0).getValue().getValue();
+            if (locals.containsKey(callee))
+                locals.put(callee, FUNCTION);
+            shape(expr.getChild(1));
+            return UNKNOWN;
+        }
+        if (value.equals("read"))
+            return NUMBER;
+        if (token instanceof Operation && value.equals("if"))
+            return ifShape(expr, (Operation) token);
+        if (token instanceof Operation && ((Operation) token).isLogical())
+            return logicalShape(expr, (Operation) token);
+        if (token instanceof Operation) {
+            Operation op = (Operation) token;
+            byte left = shape(expr.getChild(0));
+            byte right = shape(expr.getChild(1));
+            check(op, Operation.LEFT, left, expr.getChild(0));
+            check(op, Operation.RIGHT, right, expr.getChild(1));
+            return NUMBER;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Infers the shape of an if expression.
+     * @param expr If expression.
+     * @param op Token of the if expression.
+     * @return Shape of the value of the expression.
+     */
+    private byte ifShape(Tree<Token> expr, Operation op) {
+        Tree<Token> cond = expr.getChild(0);
+        check(op, Operation.LEFT, shape(cond), cond.getChild(cond.getNumberOfChildren() - 1));
+        HashMap<String, Byte> before = new HashMap<String, Byte>(locals);
+        byte then = shape(expr.getChild(1));
+        HashMap<String, Byte> afterThen = new HashMap<String, Byte>(locals);
+        locals.clear();
+        locals.putAll(before);
+        byte otherwise = shape(expr.getChild(2));
+        // keep what holds after either branch
+        for (Map.Entry<String, Byte> e : locals.entrySet())
+            if (!e.getValue().equals(afterThen.get(e.getKey())))
+                e.setValue(UNKNOWN);
+        return then == otherwise ? then : UNKNOWN;
+    }
+
+    /**
+     * Infers the shape of a logical expression, whose right operand
+     * may not be evaluated.
+     * @param expr Logical expression.
+     * @param op Token of the logical expression.
+     * @return Shape of the value of the expression.
+     */
+    private byte logicalShape(Tree<Token> expr, Operation op) {
+        check(op, Operation.LEFT, shape(expr.getChild(0)), expr.getChild(0));
+        if (op.operator == Operation.NOT)
+            return NUMBER;
+        HashMap<String, Byte> before = new HashMap<String, Byte>(locals);
+        byte right = shape(expr.getChild(1));
+        locals.clear();
+        locals.putAll(before);
+        // either operand is the value
+        return right == NUMBER ? NUMBER : UNKNOWN;
+    }
+    
+    /**
+     * Removes the runtime check of an operand proven to be a number,
+     * or learns that the operand is a number once checked.
+     * @param op Token of the operation.
+     * @param operand LEFT or RIGHT.
+     * @param shape Shape of the operand.
+     * @param expr Operand (the last expression of a condition).
+     */
+    private void check(Operation op, byte operand, byte shape, Tree<Token> expr) {
+        if (shape == NUMBER)
+            op.guards &= ~operand;
+        else if (expr.getValue().getType() == TokenType.NAME &&
+                locals.containsKey(expr.getValue().getValue()))
+            locals.put(expr.getValue().getValue(), NUMBER);
+    }
+}
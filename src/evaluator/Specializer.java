@@ -0,0 +1,386 @@
+package evaluator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for specializing a Funl function on the arguments a call site
+ * passes as constants: numbers and function names. The residual
+ * function takes only the other arguments. The constants are put in
+ * for their parameters, and the body is simplified: operations,
+ * aliases, conditions and logical operators on numbers are computed,
+ * and calls whose arguments are all constants or locals are unrolled
+ * by putting in the body of the function called, until the residual
+ * has grown by a budget of nodes.
+ * <p>
+ * Only what evaluates the same in the residual is rewritten: a
+ * function is not specialized if a parameter is shadowed by a function
+ * or rebound by a val, and a body is unrolled only if it has no val
+ * and every name in it is a parameter or resolves to a function both
+ * where it is written and where it is put in. Unrolled calls take no
+ * scope, so they do not count towards the nested scope depth.
+ * @version Oct 19, 2026
+ */
+class Specializer {
+    private final Map<String, Tree<Token>> functions;
+    private final Set<String> locals; // parameters and vals of the residual
+    private int budget;               // nodes the residual may still grow by
+
+    private Specializer(Map<String, Tree<Token>> functions, Set<String> locals, int budget) {
+        this.functions = functions;
+        this.locals = locals;
+        this.budget = budget;
+    }
+
+    /**
+     * Specializes a function on constant arguments.
+     * @param def Tree of the function definition.
+     * @param constants For each parameter, the number or function name
+     * passed, or null if the argument is not constant.
+     * @param functions Functions global calls reach.
+     * @param budget Number of nodes the residual may grow by.
+     * @return Tree of the residual function, with its analyses done, or
+     * null if the function cannot be specialized on the constants.
+     */
+    static Tree<Token> specialize(Tree<Token> def, Tree<Token>[] constants,
+            Map<String, Tree<Token>> functions, int budget) {
+        Tree<Token> params = def.getChild(1);
+        Tree<Token> residualParams = new Tree<Token>(params.getValue());
+        Set<String> locals = localsOf(def);
+        locals.removeAll(names(params));
+        HashMap<String, Tree<Token>> bindings = new HashMap<String, Tree<Token>>();
+        for (int i = 0; i < constants.length; ++i) {
+            if (constants[i] != null)
+                bindings.put(params.getChild(i).getValue().getValue(), constants[i]);
+            else {
+                residualParams.addChild(new Tree<Token>(params.getChild(i).getValue()));
+                locals.add(params.getChild(i).getValue().getValue());
+            }
+        }
+        if (bindings.isEmpty() || !substitutable(def, bindings, locals, functions))
+            return null;
+        Specializer specializer = new Specializer(functions, locals, budget);
+        Tree<Token> body = specializer.simplify(copy(def.getChild(2), bindings));
+        if (!isSeq(body)) {
+            Tree<Token> seq = new Tree<Token>(new Token(TokenType.KEYWORD, "$seq"));
+            seq.addChild(body);
+            body = seq;
+        }
+        Tree<Token> residual = new Tree<Token>(new Definition());
+        residual.addChild(new Tree<Token>(def.getChild(0).getValue()));
+        residual.addChild(residualParams);
+        residual.addChild(body);
+        Parser.analyze(residual);
+        return residual;
+    }
+
+    /**
+     * Checks whether a function calls itself by name.
+     * @param def Tree of the function definition.
+     * @return True if its body has a call of its name.
+     */
+    static boolean recurs(Tree<Token> def) {
+        Set<String> called = new HashSet<String>();
+        collectCalls(def.getChild(2), called);
+        return called.contains(def.getChild(0).getValue().getValue());
+    }
+
+    /**
+     * Checks whether parameters of a function can be bound by putting
+     * in numbers and names for them.
+     * @param def Tree of the function definition.
+     * @param bindings Number or name put in for each bound parameter.
+     * @param locals Parameters and vals where the names are put in.
+     * @param functions Functions global calls reach.
+     * @return True if the body evaluates the same with the bindings
+     * put in.
+     */
+    private static boolean substitutable(Tree<Token> def, Map<String, Tree<Token>> bindings,
+            Set<String> locals, Map<String, Tree<Token>> functions) {
+        if (def.getChild(2).getChild(0).getValue() instanceof Intrinsic)
+            return false;
+        Set<String> params = names(def.getChild(1));
+        if (params.size() != def.getChild(1).getNumberOfChildren())
+            return false;
+        Set<String> vals = new HashSet<String>();
+        collectVals(def.getChild(2), vals);
+        for (String param : params)
+            // value references prefer functions; a val of the same name fails
+            if (functions.containsKey(param) || vals.contains(param))
+                return false;
+        Set<String> called = new HashSet<String>();
+        collectCalls(def.getChild(2), called);
+        for (Map.Entry<String, Tree<Token>> binding : bindings.entrySet()) {
+            Token token = binding.getValue().getValue();
+            if (token.getType() == TokenType.NUMBER && called.contains(binding.getKey()))
+                return false;
+            // calls prefer locals over the function put in
+            if (token.getType() == TokenType.NAME && called.contains(binding.getKey()) &&
+                    functions.containsKey(token.getValue()) && locals.contains(token.getValue()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a function can be unrolled into the residual:
+     * besides being substitutable, it has no val, and all of its names
+     * are parameters, or functions no local of the residual shadows
+     * in calls.
+     * @param def Tree of the function definition.
+     * @param bindings Argument put in for each parameter.
+     * @return True if the body may replace the call.
+     */
+    private boolean unrollable(Tree<Token> def, Map<String, Tree<Token>> bindings) {
+        if (!substitutable(def, bindings, locals, functions))
+            return false;
+        Set<String> vals = new HashSet<String>();
+        collectVals(def.getChild(2), vals);
+        if (!vals.isEmpty())
+            return false;
+        return resolvable(def.getChild(2), bindings.keySet());
+    }
+
+    private boolean resolvable(Tree<Token> expr, Set<String> params) {
+        Token token = expr.getValue();
+        if (token instanceof CallSite) {
+            String name = expr.getChild(0).getValue().getValue();
+            if (!params.contains(name) && (locals.contains(name) || !functions.containsKey(name)))
+                return false;
+            return resolvable(expr.getChild(1), params);
+        }
+        if (token.getType() == TokenType.NAME && !params.contains(token.getValue()) &&
+                !functions.containsKey(token.getValue()))
+            return false;
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (!resolvable(expr.getChild(i), params))
+                return false;
+        return true;
+    }
+
+    /**
+     * Simplifies an expression of the residual.
+     * @param expr Expression, owned by the residual.
+     * @return The expression, or what it simplifies to.
+     */
+    private Tree<Token> simplify(Tree<Token> expr) {
+        Token token = expr.getValue();
+        if (token instanceof CallSite)
+            return simplifyCall(expr);
+        if (isSeq(expr))
+            return simplifySeq(expr);
+        if (!(token instanceof Operation))
+            return simplifyChildren(expr, 0);
+        Operation op = (Operation) token;
+        if (op.operator == 0) {
+            Tree<Token> cond = simplify(expr.getChild(0));
+            if (isNumber(unwrap(cond)))
+                return unwrap(simplify(expr.getChild(number(unwrap(cond)) > 0 ? 1 : 2)));
+            return rebuild(expr, cond);
+        }
+        Tree<Token> left = unwrap(simplify(expr.getChild(0)));
+        if (op.operator == Operation.NOT)
+            return isNumber(left) ? numeral(number(left) > 0 ? 0 : 1) : rebuild(expr, left);
+        if (op.isLogical()) {
+            // x or y is x if x is true and y otherwise, and x and y is x if x is false
+            if (isNumber(left))
+                return (number(left) > 0) == (op.operator == Operation.OR) ?
+                        left : simplify(expr.getChild(1));
+            return rebuild(expr, left);
+        }
+        Tree<Token> right = unwrap(simplify(expr.getChild(1)));
+        if (isNumber(left) && isNumber(right))
+            return numeral(Operation.apply(op.operator, number(left), number(right)));
+        Tree<Token> result = new Tree<Token>(token);
+        result.addChild(left);
+        result.addChild(right);
+        return result;
+    }
+
+    /**
+     * Rebuilds an expression with its first child simplified and the
+     * others simplified in order.
+     */
+    private Tree<Token> rebuild(Tree<Token> expr, Tree<Token> first) {
+        Tree<Token> result = new Tree<Token>(expr.getValue());
+        result.addChild(first);
+        for (int i = 1; i < expr.getNumberOfChildren(); ++i)
+            result.addChild(simplify(expr.getChild(i)));
+        return result;
+    }
+
+    private Tree<Token> simplifyChildren(Tree<Token> expr, int from) {
+        Tree<Token> result = new Tree<Token>(expr.getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            result.addChild(i < from ? expr.getChild(i) : simplify(expr.getChild(i)));
+        return result;
+    }
+
+    /**
+     * Simplifies a sequence of expressions, dropping constants whose
+     * value is not used.
+     */
+    private Tree<Token> simplifySeq(Tree<Token> seq) {
+        Tree<Token> result = new Tree<Token>(seq.getValue());
+        int last = seq.getNumberOfChildren() - 1;
+        for (int i = 0; i <= last; ++i) {
+            Tree<Token> expr = simplify(seq.getChild(i));
+            if (i == last || !isConstant(expr))
+                result.addChild(expr);
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies a call: a call of an alias on numbers is computed,
+     * and a call of a function whose arguments are all constants or
+     * locals is unrolled within the budget.
+     */
+    private Tree<Token> simplifyCall(Tree<Token> expr) {
+        Tree<Token> args = simplifyChildren(expr.getChild(1), 0);
+        Tree<Token> call = new Tree<Token>(expr.getValue());
+        call.addChild(expr.getChild(0));
+        call.addChild(args);
+        String name = call.getChild(0).getValue().getValue();
+        Tree<Token> func = functions.get(name);
+        if (locals.contains(name) || func == null || !(func.getValue() instanceof Definition) ||
+                func.getChild(1).getNumberOfChildren() != args.getNumberOfChildren())
+            return call;
+        Tree<Token> alias = ((Definition) func.getValue()).getAlias();
+        if (alias != null && (alias.getValue() instanceof Intrinsic || !shadowed(func)))
+            return applyAlias(alias.getValue(), call);
+        HashMap<String, Tree<Token>> bindings = new HashMap<String, Tree<Token>>();
+        for (int i = 0; i < args.getNumberOfChildren(); ++i) {
+            Tree<Token> arg = args.getChild(i);
+            if (!isConstant(arg) && !(arg.getValue().getType() == TokenType.NAME &&
+                    locals.contains(arg.getValue().getValue())))
+                return call;
+            bindings.put(func.getChild(1).getChild(i).getValue().getValue(), arg);
+        }
+        int size = size(func.getChild(2));
+        if (size > budget || !unrollable(func, bindings))
+            return call;
+        budget -= size;
+        return unwrap(simplify(copy(func.getChild(2), bindings)));
+    }
+
+    /**
+     * Computes a call of an alias if all arguments are numbers.
+     */
+    private Tree<Token> applyAlias(Token alias, Tree<Token> call) {
+        Tree<Token> args = call.getChild(1);
+        for (int i = 0; i < args.getNumberOfChildren(); ++i)
+            if (!isNumber(args.getChild(i)))
+                return call;
+        double x = number(args.getChild(0));
+        double y = args.getNumberOfChildren() > 1 ? number(args.getChild(1)) : 0;
+        if (alias instanceof Intrinsic) {
+            try {
+                return numeral(((Intrinsic) alias).apply(x, y));
+            }
+            catch (RuntimeException e) {
+                // left to fail when the residual runs
+                return call;
+            }
+        }
+        Operation op = (Operation) alias;
+        if (op.operator == Operation.NOT)
+            return numeral(x > 0 ? 0 : 1);
+        if (op.isLogical())
+            return (x > 0) == (op.operator == Operation.OR) ? args.getChild(0) : args.getChild(1);
+        return numeral(Operation.apply(op.operator, x, y));
+    }
+
+    private boolean shadowed(Tree<Token> func) {
+        Tree<Token> params = func.getChild(1);
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            if (functions.containsKey(params.getChild(i).getValue().getValue()))
+                return true;
+        return false;
+    }
+
+    /**
+     * Copies an expression with new tokens for its operations and call
+     * sites, putting in numbers and names for parameters.
+     * @param expr Expression to be copied.
+     * @param bindings Number or name put in for each parameter.
+     * @return The copy.
+     */
+    private static Tree<Token> copy(Tree<Token> expr, Map<String, Tree<Token>> bindings) {
+        Token token = expr.getValue();
+        if (token.getType() == TokenType.NAME && bindings.containsKey(token.getValue()))
+            return new Tree<Token>(bindings.get(token.getValue()).getValue());
+        Tree<Token> copy;
+        if (token instanceof Operation)
+            copy = new Tree<Token>(new Operation(token.getType(), token.getValue()));
+        else if (token instanceof CallSite)
+            copy = new Tree<Token>(new CallSite());
+        else
+            copy = new Tree<Token>(token);
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            copy.addChild(copy(expr.getChild(i), bindings));
+        return copy;
+    }
+
+    private static Tree<Token> unwrap(Tree<Token> expr) {
+        return isSeq(expr) && expr.getNumberOfChildren() == 1 ? expr.getChild(0) : expr;
+    }
+
+    private static boolean isSeq(Tree<Token> expr) {
+        return expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals("$seq");
+    }
+
+    private static boolean isNumber(Tree<Token> expr) {
+        return expr.getValue() instanceof Numeral && expr.getNumberOfChildren() == 0;
+    }
+
+    /* a number, or a name that resolves to a function wherever it is */
+    private boolean isConstant(Tree<Token> expr) {
+        return isNumber(expr) || expr.getValue().getType() == TokenType.NAME &&
+                functions.containsKey(expr.getValue().getValue());
+    }
+
+    private static double number(Tree<Token> expr) {
+        return ((Numeral) expr.getValue()).number;
+    }
+
+    private static Tree<Token> numeral(double d) {
+        return new Tree<Token>(new Numeral(d));
+    }
+
+    private static int size(Tree<Token> expr) {
+        int size = 1;
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            size += size(expr.getChild(i));
+        return size;
+    }
+
+    private static Set<String> names(Tree<Token> params) {
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            names.add(params.getChild(i).getValue().getValue());
+        return names;
+    }
+
+    private static Set<String> localsOf(Tree<Token> def) {
+        Set<String> locals = names(def.getChild(1));
+        collectVals(def.getChild(2), locals);
+        return locals;
+    }
+
+    private static void collectVals(Tree<Token> expr, Set<String> names) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals("val"))
+            names.add(expr.getChild(0).getValue().getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collectVals(expr.getChild(i), names);
+    }
+
+    private static void collectCalls(Tree<Token> expr, Set<String> names) {
+        if (expr.getValue() instanceof CallSite)
+            names.add(expr.getChild(0).getValue().getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collectCalls(expr.getChild(i), names);
+    }
+}
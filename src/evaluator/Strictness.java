@@ -0,0 +1,129 @@
+package evaluator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for finding, for a Funl function, the parameters its body
+ * evaluates on every path, so that calls by need evaluate their
+ * arguments right away instead of binding thunks. A parameter is
+ * strict if it is an operand, a condition, the left operand of and or
+ * or, a callee, or an argument for a strict parameter of a function
+ * the call is known to reach; both branches of an if must use it. A
+ * recursive function is first assumed strict in all parameters, and
+ * the assumption is weakened until it holds.
+ * @version Oct 19, 2026
+ */
+class Strictness {
+    private final Map<String, Tree<Token>> functions;
+    // assumptions about the functions being analyzed
+    private final IdentityHashMap<Tree<Token>, boolean[]> assumed =
+            new IdentityHashMap<Tree<Token>, boolean[]>();
+
+    private Strictness(Map<String, Tree<Token>> functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Finds the strict parameters of a function.
+     * @param def Tree of the function definition.
+     * @param functions Functions global calls reach.
+     * @return Whether each parameter is strict, in order.
+     */
+    static boolean[] analyze(Tree<Token> def, Map<String, Tree<Token>> functions) {
+        return new Strictness(functions).of(def);
+    }
+
+    private boolean[] of(Tree<Token> def) {
+        boolean[] assumption = assumed.get(def);
+        if (assumption != null)
+            return assumption;
+        assumption = new boolean[def.getChild(1).getNumberOfChildren()];
+        Arrays.fill(assumption, true);
+        while (true) {
+            assumed.put(def, assumption);
+            boolean[] result = compute(def);
+            if (Arrays.equals(result, assumption))
+                break;
+            assumption = result;
+        }
+        assumed.remove(def);
+        return assumption;
+    }
+
+    private boolean[] compute(Tree<Token> def) {
+        Tree<Token> params = def.getChild(1);
+        HashSet<String> locals = new HashSet<String>();
+        for (int i = 0; i < params.getNumberOfChildren(); ++i)
+            locals.add(params.getChild(i).getValue().getValue());
+        HashSet<String> rebound = new HashSet<String>();
+        collectVals(def.getChild(2), rebound);
+        locals.addAll(rebound);
+        Set<String> used = strict(def.getChild(2), locals);
+        boolean[] strict = new boolean[params.getNumberOfChildren()];
+        for (int i = 0; i < strict.length; ++i) {
+            String param = params.getChild(i).getValue().getValue();
+            // a val of the same name hides the parameter
+            strict[i] = used.contains(param) && !rebound.contains(param);
+        }
+        return strict;
+    }
+
+    /**
+     * Finds the locals an expression evaluates on every path.
+     * @param expr Expression in the function body.
+     * @param locals Names of parameters and vals.
+     * @return Names of the locals evaluated.
+     */
+    private Set<String> strict(Tree<Token> expr, Set<String> locals) {
+        Token token = expr.getValue();
+        HashSet<String> used = new HashSet<String>();
+        if (token.getType() == TokenType.NAME) {
+            if (locals.contains(token.getValue()))
+                used.add(token.getValue());
+            return used;
+        }
+        if (token.getValue().equals("$call")) {
+            String callee = expr.getChild(0).getValue().getValue();
+            Tree<Token> args = expr.getChild(1);
+            boolean[] calleeStrict = null;
+            if (locals.contains(callee))
+                used.add(callee);
+            else {
+                Tree<Token> func = functions.get(callee);
+                if (func != null && func.getValue() instanceof Definition &&
+                        func.getChild(1).getNumberOfChildren() == args.getNumberOfChildren())
+                    calleeStrict = of(func);
+            }
+            for (int i = 0; calleeStrict != null && i < calleeStrict.length; ++i)
+                if (calleeStrict[i])
+                    used.addAll(strict(args.getChild(i), locals));
+            return used;
+        }
+        if (token instanceof Operation && ((Operation) token).operator == 0) {
+            used.addAll(strict(expr.getChild(0), locals));
+            Set<String> then = strict(expr.getChild(1), locals);
+            then.retainAll(strict(expr.getChild(2), locals));
+            used.addAll(then);
+            return used;
+        }
+        if (token instanceof Operation && ((Operation) token).isLogical())
+            return strict(expr.getChild(0), locals);
+        if (token.getValue().equals("val"))
+            return strict(expr.getChild(1), locals);
+        // sequences, arithmetic, comparisons and intrinsics evaluate all children
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            used.addAll(strict(expr.getChild(i), locals));
+        return used;
+    }
+
+    private static void collectVals(Tree<Token> expr, Set<String> names) {
+        if (expr.getValue().getType() == TokenType.KEYWORD && expr.getValue().getValue().equals("val"))
+            names.add(expr.getChild(0).getValue().getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collectVals(expr.getChild(i), names);
+    }
+}
@@ -0,0 +1,28 @@
+package evaluator;
+
+import java.util.HashMap;
+
+/**
+ * Token of an argument bound without being evaluated, when calls are
+ * by need. The argument is evaluated in a copy of the frame of the
+ * call the first time its parameter is used, and the value is kept for
+ * later uses. A thunk is never a value itself: fetching the parameter
+ * forces it.
+ * @version Oct 19, 2026
+ */
+class Thunk extends Token {
+    final Tree<Token> expr;
+    HashMap<String, Tree<Token>> frame; // frame of the call; null once forced
+    Tree<Token> value;                  // null until forced
+
+    /**
+     * Constructor for Thunk.
+     * @param expr Argument to be evaluated.
+     * @param frame Frame of the call.
+     */
+    Thunk(Tree<Token> expr, HashMap<String, Tree<Token>> frame) {
+        super(TokenType.KEYWORD, "$thunk");
+        this.expr = expr;
+        this.frame = frame;
+    }
+}
@@ -0,0 +1,88 @@
+package evaluator;
+
+import java.util.HashMap;
+
+/**
+ * Class for the optimized tier of a function that got hot: the
+ * function and every function it may reach, compiled to Bytecode
+ * against one snapshot of the function table. The compiled code
+ * speculates that every argument is a number; a call passing a
+ * function, or one the compiled code fails, goes back to the tree
+ * interpreter, and after MAX_DEOPTS such failures the function is
+ * deoptimized for good, until the functions change.
+ * <p>
+ * Only functions whose reach has no read expression are compiled, so
+ * that a failed call can be evaluated again by the tree interpreter
+ * without taking input twice.
+ * @version Oct 19, 2026
+ */
+class Tier {
+    static final int MAX_DEOPTS = 3;
+
+    final HashMap<String, Tree<Token>> functions; // snapshot compiled against
+    final Bytecode code;                          // null if interpreted
+    final int index;                              // of the function in code
+    private volatile int deopts = 0;
+
+    private Tier(HashMap<String, Tree<Token>> functions, Bytecode code, int index) {
+        this.functions = functions;
+        this.code = code;
+        this.index = index;
+    }
+
+    /**
+     * Creates the tier of a function that stays interpreted.
+     * @param functions Snapshot of the function table.
+     * @return The tier.
+     */
+    static Tier interpreted(HashMap<String, Tree<Token>> functions) {
+        return new Tier(functions, null, -1);
+    }
+
+    /**
+     * Compiles a function and the functions it may reach.
+     * @param func Function definition.
+     * @param functions Snapshot of the function table.
+     * @return The tier; interpreted if the function reaches a read.
+     */
+    static Tier compile(Tree<Token> func, HashMap<String, Tree<Token>> functions) {
+        HashMap<String, Tree<Token>> reach = new HashMap<String, Tree<Token>>();
+        String funcName = func.getChild(0).getValue().getValue();
+        reach.put(funcName, func);
+        if (!collect(func.getChild(2), functions, reach))
+            return interpreted(functions);
+        Bytecode code = Bytecode.compile(FlatProgram.of(reach));
+        return new Tier(functions, code, code.functionIndex(funcName));
+    }
+
+    /**
+     * Collects the functions an expression may reach by name.
+     * @return False if a read expression is reached.
+     */
+    private static boolean collect(Tree<Token> expr, HashMap<String, Tree<Token>> functions,
+            HashMap<String, Tree<Token>> reach) {
+        Token token = expr.getValue();
+        if (token.getType() == TokenType.KEYWORD && token.getValue().equals("read"))
+            return false;
+        if (token.getType() == TokenType.NAME && !reach.containsKey(token.getValue())) {
+            Tree<Token> func = functions.get(token.getValue());
+            if (func != null) {
+                reach.put(token.getValue(), func);
+                if (!collect(func.getChild(2), functions, reach))
+                    return false;
+            }
+        }
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            if (!collect(expr.getChild(i), functions, reach))
+                return false;
+        return true;
+    }
+
+    /**
+     * Records a call that went back to the tree interpreter.
+     * @return True if the function is to be deoptimized for good.
+     */
+    boolean deopt() {
+        return ++deopts >= MAX_DEOPTS;
+    }
+}
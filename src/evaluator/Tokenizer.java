@@ -1,5 +1,6 @@
 package evaluator;
 
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StreamTokenizer;
@@ -13,11 +14,14 @@ import java.io.StringReader;
  */
 public class Tokenizer {
     private StreamTokenizer tokenizer;
+    private RecordingReader source;
     private Token lastToken = null;
+    private boolean pushedBack = false;
+    private int lookahead = -1; // characters read before a token looked ahead at
     private final Token EOL = new Token(TokenType.EOL, "\n");
     private final Token EOI = new Token(TokenType.EOI, "");
     private static String[] keywords =
-        ("def val if else then end read").split(" ");
+        ("def val if else then end read not").split(" ");
 
     /**
      * Creates a Tokenizer with an input source.
@@ -25,7 +29,8 @@ public class Tokenizer {
      * @param reader The input source to be tokenized.
      */
     public Tokenizer(Reader reader) {
-        tokenizer = new StreamTokenizer(reader);
+        source = new RecordingReader(reader);
+        tokenizer = new StreamTokenizer(source);
         tokenizer.whitespaceChars((char) 0, (char) 31);
         tokenizer.eolIsSignificant(true);
         tokenizer.ordinaryChars('!', '/');
@@ -57,7 +62,13 @@ public class Tokenizer {
     public Token next() {
         int tokenType;
 
+        if (pushedBack) {
+            pushedBack = false;
+            return lastToken;
+        }
         try {
+            int mark = lookahead >= 0 ? lookahead : source.length();
+            lookahead = -1;
             tokenType = tokenizer.nextToken();
 
             switch (tokenType) {
@@ -74,7 +85,7 @@ public class Tokenizer {
                     break;
 
                 case StreamTokenizer.TT_NUMBER:
-                    lastToken = new Token(TokenType.NUMBER, tokenizer.nval + "");
+                    lastToken = number(mark);
                     break;
 
                 case StreamTokenizer.TT_EOL:
@@ -84,6 +95,12 @@ public class Tokenizer {
                 case StreamTokenizer.TT_EOF:
                     lastToken = EOI;
                     break;
+                case '=':
+                case '!':
+                case '<':
+                case '>':
+                    lastToken = new Token(TokenType.SYMBOL, comparison((char) tokenType));
+                    break;
                 default:
                     lastToken = new Token(TokenType.SYMBOL, "" + (char) tokenType);
                     break;
@@ -109,12 +126,109 @@ public class Tokenizer {
         return false;
     }
 
+    /**
+     * Checks whether a word is a keyword, and so cannot be a name.
+     * @param word Word to be checked.
+     * @return True if the word is a keyword.
+     */
+    static boolean isKeyword(String word) {
+        for (String keyword : keywords)
+            if (keyword.equals(word))
+                return true;
+        return false;
+    }
+
+    /**
+     * Gets the offset in the input just past the last word or number
+     * read, which the StreamTokenizer read one character beyond.
+     * @return Number of characters up to the end of the word.
+     */
+    int wordEnd() {
+        return source.atEnd ? source.length() : source.length() - 1;
+    }
+
     /**
      * "Puts back" the Token that was most recently returned, so that it will
      * be returned again on the next call to next().
      */
     public void pushBack() {
+        pushedBack = true;
+    }
+    
+    /**
+     * Reads the rest of a two-character comparison (== != &lt;= &gt;=)
+     * if an equal sign follows the character just read.
+     * @param c Character just read.
+     * @return Text of the symbol.
+     * @throws IOException If the input source fails.
+     */
+    private String comparison(char c) throws IOException {
+        int mark = source.length();
+        if (tokenizer.nextToken() == '=' && source.length() == mark + 1)
+            return c + "=";
         tokenizer.pushBack();
+        lookahead = mark;
+        return "" + c;
+    }
+    
+    /**
+     * Creates the token of a number, keeping the exact text of the
+     * literal besides its value as a double.
+     * @param mark Number of characters read before the number.
+     * @return The token of the number.
+     */
+    private Token number(int mark) {
+        return new Numeral(tokenizer.nval, source.number(mark));
+    }
+    
+    /**
+     * Reader recording the characters read, so that the text of a
+     * number can be recovered after the StreamTokenizer parsed it.
+     */
+    private static class RecordingReader extends FilterReader {
+        private final StringBuilder read = new StringBuilder();
+        private boolean atEnd = false;
+        
+        RecordingReader(Reader in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c < 0) atEnd = true;
+            else read.append((char) c);
+            return c;
+        }
+        
+        int length() {
+            return read.length();
+        }
+        
+        /**
+         * Gets the text of the number just parsed: the digits and dot
+         * read since the previous token, up to the character the
+         * StreamTokenizer read past the number.
+         * @param mark Number of characters read before the number;
+         * the number may start with the last of them, read past the
+         * previous token.
+         * @return Text of the number.
+         */
+        String number(int mark) {
+            int end = atEnd ? read.length() : read.length() - 1;
+            int start = end;
+            int from = Math.max(mark - 1, 0);
+            boolean dot = false;
+            while (start > from) {
+                char c = read.charAt(start - 1);
+                if (c == '.' && !dot) dot = true;
+                else if (c < '0' || c > '9') break;
+                --start;
+            }
+            // the text starts with a digit
+            while (read.charAt(start) == '.') ++start;
+            return read.substring(start, end);
+        }
     }
     
     public static void main(String[] args) {///////////////////////
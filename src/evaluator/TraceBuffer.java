@@ -0,0 +1,192 @@
+package evaluator;
+
+import java.io.IOException;
+
+/**
+ * Class for a fixed-size ring buffer of Funl execution events: function
+ * calls with their arguments, returns with their values, and calls
+ * aborted by an error. All storage is allocated up front and events
+ * only store references, so recording allocates nothing; once full,
+ * the oldest events are overwritten. The buffer is cleared whenever
+ * the evaluator it is attached to starts a new evaluation.
+ * @version Oct 19, 2026
+ */
+public class TraceBuffer {
+    /* event kinds */
+    private static final byte CALL = 0;
+    private static final byte ARG = 1;
+    private static final byte RETURN = 2;
+    private static final byte ERROR = 3;
+
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] depths;
+    private final String[] names;
+    private final Object[] values;
+    private long count = 0;
+
+    /**
+     * Constructor for TraceBuffer.
+     * @param capacity Number of events retained, rounded up to a
+     * power of two.
+     */
+    public TraceBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30))
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mask = size - 1;
+        kinds = new byte[size];
+        depths = new int[size];
+        names = new String[size];
+        values = new Object[size];
+    }
+
+    /**
+     * Records a function call.
+     * @param funcName Name of the function.
+     * @param depth Scope depth of the call.
+     */
+    void call(String funcName, int depth) {
+        add(CALL, depth, funcName, null);
+    }
+
+    /**
+     * Records an argument of the function call recorded last.
+     * @param paramName Name of the parameter.
+     * @param value Value of the argument.
+     */
+    void arg(String paramName, Tree<Token> value) {
+        add(ARG, 0, paramName, value);
+    }
+
+    /**
+     * Records a function returning.
+     * @param funcName Name of the function.
+     * @param value Return value.
+     * @param depth Scope depth of the call.
+     */
+    void ret(String funcName, Tree<Token> value, int depth) {
+        add(RETURN, depth, funcName, value);
+    }
+
+    /**
+     * Records a function aborted by an error.
+     * @param funcName Name of the function.
+     * @param depth Scope depth of the call.
+     */
+    void error(String funcName, int depth) {
+        add(ERROR, depth, funcName, null);
+    }
+
+    private void add(byte kind, int depth, String name, Object value) {
+        int i = (int) (count++ & mask);
+        kinds[i] = kind;
+        depths[i] = depth;
+        names[i] = name;
+        values[i] = value;
+    }
+
+    /**
+     * Discards all events.
+     */
+    void reset() {
+        count = 0;
+    }
+
+    /**
+     * Gets the number of events recorded since the buffer was
+     * cleared, including those overwritten.
+     * @return Number of events.
+     */
+    public long getEventCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of events retained.
+     * @return Number of events in the buffer.
+     */
+    public int size() {
+        return (int) Math.min(count, mask + 1);
+    }
+
+    /**
+     * Gets the maximum number of events retained.
+     * @return Capacity of the buffer.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Writes the retained events, oldest first, one call or return
+     * per line, indented by scope depth.
+     * @param out Destination of the dump.
+     * @throws IOException If writing fails.
+     */
+    public void dump(Appendable out) throws IOException {
+        long first = count - size();
+        if (first > 0)
+            out.append("... ").append(Long.toString(first)).append(" earlier events overwritten\n");
+        boolean inCall = false;
+        for (long n = first; n < count; ++n) {
+            int i = (int) (n & mask);
+            if (kinds[i] == ARG) {
+                if (inCall) {
+                    out.append(kinds[(i - 1) & mask] == CALL ? "" : ", ");
+                    out.append(names[i]).append('=').append(format(values[i]));
+                }
+                continue;
+            }
+            if (inCall) out.append(")\n");
+            inCall = false;
+            indent(out, depths[i]);
+            switch (kinds[i]) {
+                case CALL:
+                    out.append("-> ").append(names[i]).append('(');
+                    inCall = true;
+                    break;
+                case RETURN:
+                    out.append("<- ").append(names[i]).append(" = ").append(format(values[i])).append('\n');
+                    break;
+                default:
+                    out.append("!! ").append(names[i]).append(" aborted\n");
+                    break;
+            }
+        }
+        if (inCall) out.append(")\n");
+    }
+
+    /**
+     * Returns the dump of the retained events.
+     * @return A representation of this buffer.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            dump(sb);
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return sb.toString();
+    }
+
+    private static void indent(Appendable out, int depth) throws IOException {
+        for (int i = 1; i < depth; ++i)
+            out.append("  ");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String format(Object value) {
+        Tree<Token> tree = (Tree<Token>) value;
+        if (tree == null)
+            return "?";
+        // show functions by name
+        if (tree.getValue().getValue().equals("def") && tree.getNumberOfChildren() == 3)
+            return tree.getChild(0).getValue().getValue();
+        return tree.getValue().getValue();
+    }
+}
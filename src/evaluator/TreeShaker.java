@@ -0,0 +1,107 @@
+package evaluator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class for pruning a Funl program to the functions its entry points
+ * may reach (tree shaking), so that a deployment defines only those.
+ * A function reaches every function whose name occurs in its body,
+ * called or passed as a value, as square and add in
+ * for(1, n, square, add). Names of parameters are kept too, since a
+ * value reference prefers a function of the same name.
+ * @version Oct 19, 2026
+ */
+public final class TreeShaker {
+    private TreeShaker() { }
+
+    /**
+     * Prunes a program to the functions its entry points reach.
+     * @param program Funl program, as passed to Funl.define.
+     * @param entryPoints Names of the functions to be kept callable.
+     * @return Source text of the reachable functions, in the order of
+     * the program, as written there; also a program Funl.define takes.
+     */
+    public static String prune(String program, Collection<String> entryPoints) {
+        Parser parser = new Parser(program);
+        LinkedHashMap<String, String> sources = new LinkedHashMap<String, String>();
+        int start = 0;
+        while (parser.functionDefinition()) {
+            Tree<Token> def = parser.stack.pop();
+            String name = def.getChild(0).getValue().getValue();
+            int end = parser.tokenizer.wordEnd();
+            // a later definition replaces an earlier one, as in Parser.program()
+            sources.remove(name);
+            sources.put(name, program.substring(start, end).trim());
+            parser.functions.put(name, def);
+            start = end;
+        }
+        Set<String> reachable = reachable(parser.functions, entryPoints);
+        StringBuilder pruned = new StringBuilder();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            if (!reachable.contains(source.getKey()))
+                continue;
+            if (pruned.length() > 0)
+                pruned.append(' ');
+            pruned.append(source.getValue());
+        }
+        return pruned.toString();
+    }
+
+    /**
+     * Finds the functions entry points may reach.
+     * @param functions Functions of the program, by name.
+     * @param entryPoints Names of the functions to be kept callable.
+     * @return Names of the reachable functions, entry points first.
+     * @throws IllegalArgumentException If an entry point is no function.
+     */
+    static Set<String> reachable(Map<String, Tree<Token>> functions, Collection<String> entryPoints) {
+        LinkedHashSet<String> reached = new LinkedHashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+        for (String entry : entryPoints) {
+            if (!functions.containsKey(entry))
+                throw new IllegalArgumentException("Unknown entry point: " + entry);
+            if (reached.add(entry))
+                pending.push(entry);
+        }
+        while (!pending.isEmpty()) {
+            Tree<Token> def = functions.get(pending.pop());
+            collect(def.getChild(2), functions, reached, pending);
+        }
+        return reached;
+    }
+
+    private static void collect(Tree<Token> expr, Map<String, Tree<Token>> functions,
+            Set<String> reached, Deque<String> pending) {
+        Token token = expr.getValue();
+        if (token.getType() == TokenType.NAME && functions.containsKey(token.getValue()) &&
+                reached.add(token.getValue()))
+            pending.push(token.getValue());
+        for (int i = 0; i < expr.getNumberOfChildren(); ++i)
+            collect(expr.getChild(i), functions, reached, pending);
+    }
+
+    /**
+     * Prints a program file pruned to the given entry points.
+     * @param args File name, then the names of the entry points.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TreeShaker <program file> <entry point>...");
+            return;
+        }
+        String program = new String(Files.readAllBytes(Paths.get(args[0])), "UTF-8")
+                .replace(System.lineSeparator(), " ").replace('\n', ' ');
+        System.out.println(prune(program, Arrays.asList(args).subList(1, args.length)));
+    }
+}